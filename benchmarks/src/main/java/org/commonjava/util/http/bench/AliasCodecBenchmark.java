@@ -0,0 +1,76 @@
+package org.commonjava.util.http.bench;
+
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.http.auth.AuthScope;
+import org.commonjava.util.http.ssl.AliasCodec;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Alias encoding / decoding done on every key and trust manager lookup. Run with {@code -prof gc} to see allocation
+ * per call. The concat / regex variants are the code {@link AliasCodec} replaced, kept as a baseline.
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.NANOSECONDS )
+@Warmup( iterations = 5, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+public class AliasCodecBenchmark
+{
+
+    private static final String AUTH_SCOPE_ALIAS_PATTERN = ".+::(.+):(\\d+)";
+
+    private final AuthScope scope = new AuthScope( "repo.example.com", 443 );
+
+    private final String alias = AliasCodec.encode( "repo.example.com", 443, true );
+
+    @Benchmark
+    public String encodeScope()
+    {
+        return AliasCodec.encode( scope, true );
+    }
+
+    @Benchmark
+    public String encodeHostPort()
+    {
+        return AliasCodec.encode( "repo.example.com", 443, false );
+    }
+
+    @Benchmark
+    public AuthScope decode()
+    {
+        return AliasCodec.decode( alias );
+    }
+
+    @Benchmark
+    public String concatEncodeScope()
+    {
+        return AliasCodec.CLIENT_PREFIX + scope.getHost() + ":" + scope.getPort();
+    }
+
+    @Benchmark
+    public AuthScope regexDecode()
+    {
+        final Matcher m = Pattern.compile( AUTH_SCOPE_ALIAS_PATTERN )
+                                 .matcher( alias );
+        if ( m.matches() )
+        {
+            final Integer port = Integer.parseInt( m.group( 2 ) );
+            return new AuthScope( m.group( 1 ), port );
+        }
+
+        return null;
+    }
+
+}
@@ -0,0 +1,141 @@
+package org.commonjava.util.http.bench;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.security.KeyStore;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.http.auth.AuthScope;
+import org.commonjava.util.http.ssl.SSLUtils;
+import org.commonjava.util.http.ssl.threadlocal.SSLKeyCert;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import com.sun.net.httpserver.HttpsConfigurator;
+import com.sun.net.httpserver.HttpsServer;
+
+/**
+ * PEM fixtures and embedded servers shared by the benchmarks. The fixtures under {@code /pem} were generated once for
+ * benchmarking only: a CA, a server key / certificate for localhost signed by it (also as certificate alone), a client
+ * key / certificate, and a 41-certificate trust bundle.
+ */
+public final class BenchmarkSupport
+{
+
+    public static final String KEY_PASSWORD = "benchmark";
+
+    public static final byte[] RESPONSE_BODY = new byte[1024];
+
+    private BenchmarkSupport()
+    {
+    }
+
+    public static String pem( final String name )
+        throws IOException
+    {
+        final InputStream in = BenchmarkSupport.class.getResourceAsStream( "/pem/" + name );
+        if ( in == null )
+        {
+            throw new IOException( "Missing benchmark fixture: /pem/" + name );
+        }
+
+        try
+        {
+            return IOUtils.toString( in, "UTF-8" );
+        }
+        finally
+        {
+            IOUtils.closeQuietly( in );
+        }
+    }
+
+    /**
+     * Client key / certificate for the given scope, trusting the embedded server's certificate for the same scope.
+     */
+    public static Map<AuthScope, SSLKeyCert> clientKeyCerts( final AuthScope scope )
+        throws IOException
+    {
+        return Collections.singletonMap( scope, new SSLKeyCert( pem( "client-keycert.pem" ), KEY_PASSWORD,
+                                                                pem( "server-cert.pem" ) ) );
+    }
+
+    public static SSLContext serverContext()
+        throws Exception
+    {
+        final KeyStore ks = SSLUtils.newKeyStore();
+        SSLUtils.readKeyAndCert( new AuthScope( "localhost", AuthScope.ANY_PORT ), pem( "server-keycert.pem" ),
+                                 KEY_PASSWORD, ks );
+
+        final KeyManagerFactory kmf = KeyManagerFactory.getInstance( KeyManagerFactory.getDefaultAlgorithm() );
+        kmf.init( ks, KEY_PASSWORD.toCharArray() );
+
+        final SSLContext ctx = SSLContext.getInstance( "TLS" );
+        ctx.init( kmf.getKeyManagers(), null, null );
+
+        return ctx;
+    }
+
+    /**
+     * Start a server on an ephemeral localhost port that answers every request with {@link #RESPONSE_BODY}.
+     */
+    public static HttpServer startServer( final boolean https, final int threads )
+        throws Exception
+    {
+        final InetSocketAddress address = new InetSocketAddress( "localhost", 0 );
+
+        HttpServer server;
+        if ( https )
+        {
+            final HttpsServer httpsServer = HttpsServer.create( address, 512 );
+            httpsServer.setHttpsConfigurator( new HttpsConfigurator( serverContext() ) );
+            server = httpsServer;
+        }
+        else
+        {
+            server = HttpServer.create( address, 512 );
+        }
+
+        final ExecutorService executor = Executors.newFixedThreadPool( threads );
+        server.setExecutor( executor );
+        server.createContext( "/", new HttpHandler()
+        {
+            @Override
+            public void handle( final HttpExchange exchange )
+                throws IOException
+            {
+                IOUtils.toByteArray( exchange.getRequestBody() );
+                exchange.sendResponseHeaders( 200, RESPONSE_BODY.length );
+
+                final OutputStream out = exchange.getResponseBody();
+                out.write( RESPONSE_BODY );
+                out.close();
+            }
+        } );
+
+        server.start();
+
+        return server;
+    }
+
+    public static void stopServer( final HttpServer server )
+    {
+        server.stop( 0 );
+
+        final Object executor = server.getExecutor();
+        if ( executor instanceof ExecutorService )
+        {
+            ( (ExecutorService) executor ).shutdownNow();
+        }
+    }
+
+}
@@ -0,0 +1,39 @@
+package org.commonjava.util.http.bench;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.commonjava.util.http.ssl.path.CertificateIndex;
+
+/**
+ * Command-line wrapper for {@link CertificateIndex#write(File)}: writes the index of each given certificate directory,
+ * e.g. <code>target/classes/ssl/server</code> before packaging.
+ *
+ * <pre>
+ * java -cp benchmarks/target/benchmarks.jar org.commonjava.util.http.bench.CertificateIndexTool &lt;cert-dir&gt;...
+ * </pre>
+ */
+public final class CertificateIndexTool
+{
+
+    private CertificateIndexTool()
+    {
+    }
+
+    public static void main( final String[] args )
+        throws IOException
+    {
+        if ( args.length < 1 )
+        {
+            System.err.println( "Usage: CertificateIndexTool <certificate-directory>..." );
+            System.exit( 1 );
+        }
+
+        for ( final String arg : args )
+        {
+            final File index = CertificateIndex.write( new File( arg ) );
+            System.out.println( "Wrote: " + index );
+        }
+    }
+
+}
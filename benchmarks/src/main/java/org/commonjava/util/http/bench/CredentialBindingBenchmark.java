@@ -0,0 +1,80 @@
+package org.commonjava.util.http.bench;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.auth.AuthScope;
+import org.commonjava.util.http.ssl.threadlocal.CredentialBundle;
+import org.commonjava.util.http.ssl.threadlocal.SSLKeyCert;
+import org.commonjava.util.http.ssl.threadlocal.ThreadLocalCredentialsProvider;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Per-request cost of {@link ThreadLocalCredentialsProvider#bindKeyCerts(Map)}, with the bundle cache warm, against
+ * parsing the same PEMs from scratch.
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MICROSECONDS )
+@Warmup( iterations = 5, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+public class CredentialBindingBenchmark
+{
+
+    private ThreadLocalCredentialsProvider credProvider;
+
+    private Map<AuthScope, SSLKeyCert> keycerts;
+
+    @Setup
+    public void setup()
+        throws Exception
+    {
+        credProvider = new ThreadLocalCredentialsProvider();
+        keycerts = BenchmarkSupport.clientKeyCerts( new AuthScope( "repo.example.com", 443 ) );
+    }
+
+    @TearDown
+    public void tearDown()
+    {
+        credProvider.getBundleCache()
+                    .clear();
+    }
+
+    @Benchmark
+    public ThreadLocalCredentialsProvider bindKeyCerts()
+        throws Exception
+    {
+        credProvider.bindKeyCerts( keycerts );
+        credProvider.clear();
+
+        return credProvider;
+    }
+
+    @Benchmark
+    @Threads( 8 )
+    public ThreadLocalCredentialsProvider bindKeyCertsContended()
+        throws Exception
+    {
+        return bindKeyCerts();
+    }
+
+    @Benchmark
+    public CredentialBundle buildUncached()
+        throws Exception
+    {
+        return CredentialBundle.build( keycerts );
+    }
+
+}
@@ -0,0 +1,134 @@
+package org.commonjava.util.http.bench;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.auth.AuthScope;
+import org.apache.http.client.ResponseHandler;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.conn.ssl.SSLSocketFactory;
+import org.apache.http.util.EntityUtils;
+import org.commonjava.util.http.client.ConnectionPoolConfig;
+import org.commonjava.util.http.client.DefaultClientConfigurator;
+import org.commonjava.util.http.client.HTTPClient;
+import org.commonjava.util.http.ssl.SSLManager;
+import org.commonjava.util.http.ssl.threadlocal.ThreadLocalCredentialsProvider;
+import org.commonjava.util.http.ssl.threadlocal.ThreadLocalSSLProvider;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * {@link HTTPClient#execute(org.apache.http.client.methods.HttpUriRequest, ResponseHandler)} throughput from 16
+ * threads against an embedded server, for several pool sizes. Pools smaller than the thread count show lease
+ * contention.
+ */
+@BenchmarkMode( Mode.Throughput )
+@OutputTimeUnit( TimeUnit.SECONDS )
+@Warmup( iterations = 5, time = 2 )
+@Measurement( iterations = 5, time = 2 )
+@Fork( 1 )
+@Threads( 16 )
+public class ExecuteBenchmark
+{
+
+    private static final ResponseHandler<byte[]> BODY = new ResponseHandler<byte[]>()
+    {
+        @Override
+        public byte[] handleResponse( final HttpResponse response )
+            throws IOException
+        {
+            return EntityUtils.toByteArray( response.getEntity() );
+        }
+    };
+
+    @State( Scope.Benchmark )
+    public static class Client
+    {
+        @Param( { "2", "8", "32" } )
+        int poolSize;
+
+        @Param( { "false", "true" } )
+        boolean https;
+
+        HttpServer server;
+
+        AuthScope scope;
+
+        String url;
+
+        ThreadLocalCredentialsProvider credProvider;
+
+        HTTPClient client;
+
+        @Setup
+        public void setup()
+            throws Exception
+        {
+            server = BenchmarkSupport.startServer( https, 32 );
+
+            final int port = server.getAddress()
+                                   .getPort();
+            scope = new AuthScope( "localhost", port );
+            url = ( https ? "https" : "http" ) + "://localhost:" + port + "/";
+
+            credProvider = new ThreadLocalCredentialsProvider();
+            final SSLManager sslManager =
+                new SSLManager( new ThreadLocalSSLProvider( credProvider, SSLSocketFactory.STRICT_HOSTNAME_VERIFIER ) );
+
+            client =
+                new HTTPClient( sslManager,
+                                new DefaultClientConfigurator( new ConnectionPoolConfig( poolSize, poolSize ) ) );
+        }
+
+        @TearDown
+        public void tearDown()
+        {
+            client.shutdown();
+            BenchmarkSupport.stopServer( server );
+        }
+    }
+
+    @State( Scope.Thread )
+    public static class Bound
+    {
+        @Setup( Level.Trial )
+        public void setup( final Client client )
+            throws Exception
+        {
+            client.credProvider.bindKeyCerts( BenchmarkSupport.clientKeyCerts( client.scope ) );
+        }
+
+        @TearDown( Level.Trial )
+        public void tearDown( final Client client )
+        {
+            client.credProvider.clear();
+        }
+    }
+
+    @Benchmark
+    public byte[] execute( final Client client, final Bound bound )
+        throws Exception
+    {
+        final HttpGet get = new HttpGet( client.url );
+        get.getParams()
+           .setParameter( HTTPClient.AUTH_SCOPE_PARAM, client.scope );
+
+        return client.client.execute( get, BODY );
+    }
+
+}
@@ -0,0 +1,123 @@
+package org.commonjava.util.http.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.SSLSocketFactory;
+
+import org.apache.http.auth.AuthScope;
+import org.commonjava.util.http.ssl.SSLManager;
+import org.commonjava.util.http.ssl.threadlocal.ThreadLocalCredentialsProvider;
+import org.commonjava.util.http.ssl.threadlocal.ThreadLocalSSLProvider;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * TLS handshakes against an embedded HTTPS server, using the thread-local key / trust managers with the server
+ * certificate bound as trusted. The full variant invalidates each session so nothing is resumed.
+ */
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MICROSECONDS )
+@Warmup( iterations = 5, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+public class HandshakeBenchmark
+{
+
+    @State( Scope.Benchmark )
+    public static class Server
+    {
+        HttpServer server;
+
+        int port;
+
+        ThreadLocalCredentialsProvider credProvider;
+
+        SSLSocketFactory socketFactory;
+
+        @Setup
+        public void setup()
+            throws Exception
+        {
+            server = BenchmarkSupport.startServer( true, 16 );
+            port = server.getAddress()
+                         .getPort();
+
+            credProvider = new ThreadLocalCredentialsProvider();
+            final SSLManager sslManager =
+                new SSLManager( new ThreadLocalSSLProvider( credProvider,
+                                                            org.apache.http.conn.ssl.SSLSocketFactory.STRICT_HOSTNAME_VERIFIER ) );
+
+            socketFactory = sslManager.getSSLContext()
+                                      .getSocketFactory();
+        }
+
+        @TearDown
+        public void tearDown()
+        {
+            BenchmarkSupport.stopServer( server );
+        }
+    }
+
+    @State( Scope.Thread )
+    public static class Bound
+    {
+        @Setup( Level.Trial )
+        public void setup( final Server server )
+            throws Exception
+        {
+            server.credProvider.bindKeyCerts( BenchmarkSupport.clientKeyCerts( new AuthScope( "localhost",
+                                                                                              server.port ) ) );
+        }
+
+        @TearDown( Level.Trial )
+        public void tearDown( final Server server )
+        {
+            server.credProvider.clear();
+        }
+    }
+
+    @Benchmark
+    public SSLSocket fullHandshake( final Server server, final Bound bound )
+        throws Exception
+    {
+        final SSLSocket socket = handshake( server );
+        socket.getSession()
+              .invalidate();
+        socket.close();
+
+        return socket;
+    }
+
+    @Benchmark
+    public SSLSocket resumedHandshake( final Server server, final Bound bound )
+        throws Exception
+    {
+        final SSLSocket socket = handshake( server );
+        socket.close();
+
+        return socket;
+    }
+
+    private SSLSocket handshake( final Server server )
+        throws Exception
+    {
+        final SSLSocket socket = (SSLSocket) server.socketFactory.createSocket( "localhost", server.port );
+        socket.startHandshake();
+
+        return socket;
+    }
+
+}
@@ -0,0 +1,65 @@
+package org.commonjava.util.http.bench;
+
+import java.security.KeyStore;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.auth.AuthScope;
+import org.commonjava.util.http.ssl.SSLUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of turning PEM text into keystore entries: a client key plus certificate, and a 41-certificate trust bundle.
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MICROSECONDS )
+@Warmup( iterations = 5, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+public class PemParsingBenchmark
+{
+
+    private final AuthScope scope = new AuthScope( "repo.example.com", 443 );
+
+    private String keyCert;
+
+    private String trustBundle;
+
+    @Setup
+    public void setup()
+        throws Exception
+    {
+        keyCert = BenchmarkSupport.pem( "client-keycert.pem" );
+        trustBundle = BenchmarkSupport.pem( "trust-bundle.pem" );
+    }
+
+    @Benchmark
+    public KeyStore readKeyAndCert()
+        throws Exception
+    {
+        final KeyStore ks = SSLUtils.newKeyStore();
+        SSLUtils.readKeyAndCert( scope, keyCert, BenchmarkSupport.KEY_PASSWORD, ks );
+
+        return ks;
+    }
+
+    @Benchmark
+    public KeyStore readCerts()
+        throws Exception
+    {
+        final KeyStore ks = SSLUtils.newKeyStore();
+        SSLUtils.readCerts( scope, trustBundle, ks );
+
+        return ks;
+    }
+
+}
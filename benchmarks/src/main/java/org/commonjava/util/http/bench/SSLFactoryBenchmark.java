@@ -0,0 +1,98 @@
+package org.commonjava.util.http.bench;
+
+import java.net.Socket;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.auth.AuthScope;
+import org.apache.http.conn.ssl.SSLSocketFactory;
+import org.apache.http.params.BasicHttpParams;
+import org.apache.http.params.HttpParams;
+import org.commonjava.util.http.client.HTTPClient;
+import org.commonjava.util.http.ssl.threadlocal.ThreadLocalCredentialsProvider;
+import org.commonjava.util.http.ssl.threadlocal.ThreadLocalSSLSocketFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Socket creation through {@link ThreadLocalSSLSocketFactory} with client credentials bound, which looks up (or
+ * builds) the per-credential SSL factory on every call. The contended variant runs the same lookup from 8 threads
+ * sharing one factory; it only says something about lock contention when run on a machine with several cores.
+ */
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MICROSECONDS )
+@Warmup( iterations = 5, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+public class SSLFactoryBenchmark
+{
+
+    @State( Scope.Benchmark )
+    public static class Shared
+    {
+        final AuthScope scope = new AuthScope( "repo.example.com", 443 );
+
+        ThreadLocalCredentialsProvider credProvider;
+
+        ThreadLocalSSLSocketFactory factory;
+
+        @Setup
+        public void setup()
+            throws Exception
+        {
+            credProvider = new ThreadLocalCredentialsProvider();
+            factory = new ThreadLocalSSLSocketFactory( credProvider, SSLSocketFactory.STRICT_HOSTNAME_VERIFIER );
+        }
+    }
+
+    @State( Scope.Thread )
+    public static class Bound
+    {
+        HttpParams params;
+
+        @Setup( Level.Trial )
+        public void setup( final Shared shared )
+            throws Exception
+        {
+            shared.credProvider.bindKeyCerts( BenchmarkSupport.clientKeyCerts( shared.scope ) );
+
+            params = new BasicHttpParams();
+            params.setParameter( HTTPClient.AUTH_SCOPE_PARAM, shared.scope );
+        }
+
+        @TearDown( Level.Trial )
+        public void tearDown( final Shared shared )
+        {
+            shared.credProvider.clear();
+        }
+    }
+
+    @Benchmark
+    public Socket createSocket( final Shared shared, final Bound bound )
+        throws Exception
+    {
+        final Socket socket = shared.factory.createSocket( bound.params );
+        socket.close();
+
+        return socket;
+    }
+
+    @Benchmark
+    @Threads( 8 )
+    public Socket createSocketContended( final Shared shared, final Bound bound )
+        throws Exception
+    {
+        return createSocket( shared, bound );
+    }
+
+}
@@ -0,0 +1,101 @@
+package org.commonjava.util.http.bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.http.conn.ssl.SSLSocketFactory;
+import org.commonjava.util.http.ssl.SSLManager;
+import org.commonjava.util.http.ssl.path.PathSSLProvider;
+import org.commonjava.util.http.ssl.path.PathSSLResourceLoader;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cold start of path-based SSL: building a fresh loader, provider and {@link SSLManager} over a trust directory of
+ * per-host PEM files, then {@link SSLManager#setupSSL()}.
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.SingleShotTime )
+@OutputTimeUnit( TimeUnit.MILLISECONDS )
+@Warmup( iterations = 5 )
+@Measurement( iterations = 20 )
+@Fork( 3 )
+public class StartupBenchmark
+{
+
+    @Param( { "10", "100", "500" } )
+    int fileCount;
+
+    private File dir;
+
+    @Setup
+    public void setup()
+        throws IOException
+    {
+        dir = File.createTempFile( "trust-", ".dir" );
+        dir.delete();
+
+        final File serverDir = new File( dir, "server" );
+        serverDir.mkdirs();
+
+        final List<String> certs = splitCerts( BenchmarkSupport.pem( "trust-bundle.pem" ) );
+        for ( int i = 0; i < fileCount; i++ )
+        {
+            FileUtils.writeStringToFile( new File( serverDir, "host" + i + ".example.com_443" ),
+                                         certs.get( i % certs.size() ), "UTF-8" );
+        }
+    }
+
+    @TearDown
+    public void tearDown()
+        throws IOException
+    {
+        FileUtils.deleteDirectory( dir );
+    }
+
+    @Benchmark
+    public javax.net.ssl.SSLSocketFactory setupSSL()
+        throws Exception
+    {
+        final PathSSLResourceLoader loader = new PathSSLResourceLoader( dir.getPath() );
+        final SSLManager sslManager =
+            new SSLManager( new PathSSLProvider( loader, SSLSocketFactory.BROWSER_COMPATIBLE_HOSTNAME_VERIFIER ) );
+
+        sslManager.setupSSL();
+
+        return sslManager.getSSLContext()
+                         .getSocketFactory();
+    }
+
+    private static List<String> splitCerts( final String bundle )
+    {
+        final String end = "-----END CERTIFICATE-----";
+        final List<String> certs = new ArrayList<String>();
+
+        int start = 0;
+        int idx;
+        while ( ( idx = bundle.indexOf( end, start ) ) > -1 )
+        {
+            certs.add( bundle.substring( start, idx + end.length() )
+                             .trim() + "\n" );
+            start = idx + end.length();
+        }
+
+        return certs;
+    }
+
+}
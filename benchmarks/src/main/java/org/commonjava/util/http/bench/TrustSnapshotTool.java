@@ -0,0 +1,40 @@
+package org.commonjava.util.http.bench;
+
+import java.io.File;
+
+import org.commonjava.util.http.HTTPException;
+import org.commonjava.util.http.ssl.path.PathSSLResourceLoader;
+import org.commonjava.util.http.ssl.path.TrustSnapshot;
+
+/**
+ * Command-line wrapper for {@link PathSSLResourceLoader#writeTrustSnapshot()}: compiles the {@link TrustSnapshot} of
+ * each given ssl path.
+ *
+ * <pre>
+ * java -cp benchmarks/target/benchmarks.jar org.commonjava.util.http.bench.TrustSnapshotTool &lt;ssl-path&gt;...
+ * </pre>
+ */
+public final class TrustSnapshotTool
+{
+
+    private TrustSnapshotTool()
+    {
+    }
+
+    public static void main( final String[] args )
+        throws HTTPException
+    {
+        if ( args.length < 1 )
+        {
+            System.err.println( "Usage: TrustSnapshotTool <ssl-path>..." );
+            System.exit( 1 );
+        }
+
+        for ( final String arg : args )
+        {
+            final File snapshot = new PathSSLResourceLoader( arg ).writeTrustSnapshot();
+            System.out.println( "Wrote: " + snapshot );
+        }
+    }
+
+}
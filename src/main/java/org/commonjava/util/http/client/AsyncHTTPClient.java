@@ -0,0 +1,323 @@
+package org.commonjava.util.http.client;
+
+import static org.commonjava.util.http.ssl.threadlocal.ThreadLocalCredentialsProvider.DEFAULT_BUNDLE_CACHE_SIZE;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.auth.AuthScope;
+import org.apache.http.auth.Credentials;
+import org.apache.http.client.ResponseHandler;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.config.Lookup;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.impl.client.BasicCredentialsProvider;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.impl.nio.client.HttpAsyncClients;
+import org.apache.http.nio.conn.NoopIOSessionStrategy;
+import org.apache.http.nio.conn.SchemeIOSessionStrategy;
+import org.apache.http.nio.conn.ssl.SSLIOSessionStrategy;
+import org.apache.http.protocol.BasicHttpContext;
+import org.apache.http.protocol.HttpContext;
+import org.commonjava.util.http.HTTPException;
+import org.commonjava.util.http.ssl.AliasCodec;
+import org.commonjava.util.http.ssl.BoundedCache;
+import org.commonjava.util.http.ssl.SSLManager;
+import org.commonjava.util.http.ssl.SSLUtils;
+import org.commonjava.util.http.ssl.threadlocal.CredentialBundle;
+import org.commonjava.util.http.ssl.threadlocal.ThreadLocalCredentialsProvider;
+import org.commonjava.util.logging.Logger;
+
+/**
+ * Non-blocking counterpart to {@link HTTPClient}, running on the HttpCore NIO reactor so in-flight requests don't pin
+ * a thread each. TLS uses the {@link javax.net.ssl.SSLContext} built from the configured
+ * {@link org.commonjava.util.http.ssl.SSLProvider}.
+ * <p>
+ * Requests complete on reactor threads, so thread-bound state is captured when a request is submitted: the caller's
+ * bound credentials travel with the request in its {@link HttpContext}. If a {@link CredentialBundle} is bound, new
+ * connections for the request handshake with that bundle's client key and trusted certificates (see
+ * {@link CredentialBundle#newSSLContext(AuthScope)}), and the pool state token is the one {@link HTTPClient} uses for
+ * the same key, so pooled connections are only reused by requests presenting the same certificate.
+ */
+@ApplicationScoped
+public class AsyncHTTPClient
+{
+
+    /**
+     * Context attribute the NIO connection manager reads a per-request scheme / session strategy registry from.
+     */
+    static final String SESSION_STRATEGY_REGISTRY = "http.ioSession-factory-registry";
+
+    private final Logger logger = new Logger( getClass() );
+
+    private final BoundedCache<String, Lookup<SchemeIOSessionStrategy>> sessionStrategies =
+        new BoundedCache<String, Lookup<SchemeIOSessionStrategy>>( DEFAULT_BUNDLE_CACHE_SIZE, 1, TimeUnit.HOURS );
+
+    @Inject
+    private SSLManager sslManager;
+
+    @Inject
+    private ThreadLocalCredentialsProvider credProvider;
+
+    private ConnectionPoolConfig poolConfig;
+
+    private CloseableHttpAsyncClient client;
+
+    public AsyncHTTPClient()
+    {
+    }
+
+    public AsyncHTTPClient( final SSLManager sslManager, final ThreadLocalCredentialsProvider credProvider,
+                            final ConnectionPoolConfig poolConfig )
+        throws HTTPException
+    {
+        this.sslManager = sslManager;
+        this.credProvider = credProvider;
+        this.poolConfig = poolConfig;
+
+        init();
+    }
+
+    @PostConstruct
+    public void init()
+        throws HTTPException
+    {
+        if ( poolConfig == null )
+        {
+            poolConfig = new ConnectionPoolConfig();
+        }
+
+        final SSLIOSessionStrategy sslStrategy =
+            new SSLIOSessionStrategy( sslManager.getSSLContext(), SSLIOSessionStrategy.getDefaultHostnameVerifier() );
+
+        client =
+            HttpAsyncClients.custom()
+                            .setSSLStrategy( sslStrategy )
+                            .setMaxConnTotal( poolConfig.getMaxTotal() )
+                            .setMaxConnPerRoute( poolConfig.getDefaultMaxPerRoute() )
+                            .build();
+
+        client.start();
+    }
+
+    @PreDestroy
+    public void shutdown()
+    {
+        try
+        {
+            client.close();
+        }
+        catch ( final IOException e )
+        {
+            logger.error( "Failed to shut down async HTTP client: %s", e, e.getMessage() );
+        }
+    }
+
+    public CompletableFuture<HttpResponse> execute( final HttpUriRequest request )
+    {
+        return execute( request, new BasicHttpContext() );
+    }
+
+    public CompletableFuture<HttpResponse> execute( final HttpUriRequest request, final HttpContext context )
+    {
+        final CompletableFuture<HttpResponse> result = new CompletableFuture<HttpResponse>();
+
+        final HttpContext ctx;
+        try
+        {
+            ctx = bindCallerState( request, context );
+        }
+        catch ( final HTTPException e )
+        {
+            result.completeExceptionally( e );
+            return result;
+        }
+
+        final Future<HttpResponse> future = client.execute( request, ctx, new FutureCallback<HttpResponse>()
+        {
+            @Override
+            public void completed( final HttpResponse response )
+            {
+                result.complete( response );
+            }
+
+            @Override
+            public void failed( final Exception e )
+            {
+                result.completeExceptionally( e );
+            }
+
+            @Override
+            public void cancelled()
+            {
+                result.cancel( false );
+            }
+        } );
+
+        result.whenComplete( new BiConsumer<HttpResponse, Throwable>()
+        {
+            @Override
+            public void accept( final HttpResponse response, final Throwable error )
+            {
+                if ( result.isCancelled() )
+                {
+                    future.cancel( true );
+                }
+            }
+        } );
+
+        return result;
+    }
+
+    /**
+     * Execute the request and apply the handler to the buffered response. The handler runs on a reactor thread, so it
+     * must not block.
+     */
+    public <T> CompletableFuture<T> execute( final HttpUriRequest request,
+                                             final ResponseHandler<? extends T> responseHandler )
+    {
+        return execute( request, new BasicHttpContext(), responseHandler );
+    }
+
+    public <T> CompletableFuture<T> execute( final HttpUriRequest request, final HttpContext context,
+                                             final ResponseHandler<? extends T> responseHandler )
+    {
+        return execute( request, context ).thenApply( new Function<HttpResponse, T>()
+        {
+            @Override
+            public T apply( final HttpResponse response )
+            {
+                try
+                {
+                    return responseHandler.handleResponse( response );
+                }
+                catch ( final IOException e )
+                {
+                    throw new ResponseHandlingException( e );
+                }
+            }
+        } );
+    }
+
+    /**
+     * Copy the calling thread's bound credentials, TLS session strategy and pool state token into the request context,
+     * since the request will complete on a reactor thread where nothing is bound.
+     */
+    private HttpContext bindCallerState( final HttpUriRequest request, final HttpContext context )
+        throws HTTPException
+    {
+        if ( credProvider == null )
+        {
+            return context;
+        }
+
+        final HttpClientContext ctx = HttpClientContext.adapt( context );
+        if ( ctx.getCredentialsProvider() == null )
+        {
+            final BasicCredentialsProvider creds = new BasicCredentialsProvider();
+            final Map<AuthScope, Credentials> bound = credProvider.getBoundCredentials();
+            if ( bound != null )
+            {
+                for ( final Map.Entry<AuthScope, Credentials> entry : bound.entrySet() )
+                {
+                    creds.setCredentials( entry.getKey(), entry.getValue() );
+                }
+            }
+
+            ctx.setCredentialsProvider( creds );
+        }
+
+        final AuthScope scope = HTTPClient.getAuthScope( request );
+        final CredentialBundle bundle = credProvider.getCredentialBundle();
+        if ( bundle == null || scope == null )
+        {
+            return ctx;
+        }
+
+        if ( ctx.getAttribute( SESSION_STRATEGY_REGISTRY ) == null )
+        {
+            ctx.setAttribute( SESSION_STRATEGY_REGISTRY, getSessionStrategies( bundle, scope ) );
+        }
+
+        // non-null exactly when the strategy above offers a client key for the scope
+        if ( ctx.getUserToken() == null )
+        {
+            final Object token = credProvider.getConnectionStateToken( scope );
+            if ( token != null )
+            {
+                ctx.setUserToken( token );
+            }
+        }
+
+        return ctx;
+    }
+
+    private Lookup<SchemeIOSessionStrategy> getSessionStrategies( final CredentialBundle bundle, final AuthScope scope )
+        throws HTTPException
+    {
+        final String key = bundle.getStoreFingerprint() + "|" + AliasCodec.encode( scope, true ) + "|"
+            + SSLUtils.fingerprint( bundle.getKeyPassword( scope ) );
+
+        try
+        {
+            return sessionStrategies.get( key, new Callable<Lookup<SchemeIOSessionStrategy>>()
+            {
+                @Override
+                public Lookup<SchemeIOSessionStrategy> call()
+                    throws HTTPException
+                {
+                    final SSLIOSessionStrategy ssl =
+                        new SSLIOSessionStrategy( bundle.newSSLContext( scope ),
+                                                  SSLIOSessionStrategy.getDefaultHostnameVerifier() );
+
+                    return RegistryBuilder.<SchemeIOSessionStrategy> create()
+                                          .register( "http", NoopIOSessionStrategy.INSTANCE )
+                                          .register( "https", ssl )
+                                          .build();
+                }
+            } );
+        }
+        catch ( final ExecutionException e )
+        {
+            final Throwable cause = e.getCause();
+            if ( cause instanceof HTTPException )
+            {
+                throw (HTTPException) cause;
+            }
+
+            throw new HTTPException( "Failed to initialize SSL connection for: %s. Reason: %s", cause, scope,
+                                     cause.getMessage() );
+        }
+    }
+
+    /**
+     * Unchecked wrapper for {@link IOException}s thrown by a {@link ResponseHandler}; it surfaces as the cause of the
+     * {@link java.util.concurrent.CompletionException} completing the future.
+     */
+    public static final class ResponseHandlingException
+        extends RuntimeException
+    {
+        private static final long serialVersionUID = 1L;
+
+        ResponseHandlingException( final IOException cause )
+        {
+            super( cause.getMessage(), cause );
+        }
+    }
+
+}
@@ -0,0 +1,64 @@
+package org.commonjava.util.http.client;
+
+import java.security.cert.Certificate;
+
+import javax.net.ssl.SSLSession;
+
+import org.apache.http.client.UserTokenHandler;
+import org.apache.http.conn.HttpRoutedConnection;
+import org.apache.http.impl.client.DefaultUserTokenHandler;
+import org.apache.http.protocol.ExecutionContext;
+import org.apache.http.protocol.HttpContext;
+import org.commonjava.util.http.ssl.threadlocal.ThreadLocalCredentialsProvider;
+
+/**
+ * Tags pooled connections that authenticated with a thread-bound client certificate with the state token of the
+ * {@link org.commonjava.util.http.ssl.threadlocal.CredentialBundle} that supplied it, so the pool only hands them to
+ * requests bound to the same credentials. Connections without a client certificate get no token (unless the default
+ * handler assigns one for connection-based auth), so any thread can reuse them.
+ */
+public class ClientCertUserTokenHandler
+    implements UserTokenHandler
+{
+
+    private final ThreadLocalCredentialsProvider credProvider;
+
+    private final UserTokenHandler fallback;
+
+    public ClientCertUserTokenHandler( final ThreadLocalCredentialsProvider credProvider )
+    {
+        this( credProvider, new DefaultUserTokenHandler() );
+    }
+
+    public ClientCertUserTokenHandler( final ThreadLocalCredentialsProvider credProvider,
+                                       final UserTokenHandler fallback )
+    {
+        this.credProvider = credProvider;
+        this.fallback = fallback;
+    }
+
+    @Override
+    public Object getUserToken( final HttpContext context )
+    {
+        final Object conn = context.getAttribute( ExecutionContext.HTTP_CONNECTION );
+        if ( credProvider != null && conn instanceof HttpRoutedConnection )
+        {
+            final SSLSession session = ( (HttpRoutedConnection) conn ).getSSLSession();
+            if ( session != null )
+            {
+                final Certificate[] local = session.getLocalCertificates();
+                if ( local != null && local.length > 0 )
+                {
+                    final Object token = credProvider.getConnectionStateToken();
+                    if ( token != null )
+                    {
+                        return token;
+                    }
+                }
+            }
+        }
+
+        return fallback.getUserToken( context );
+    }
+
+}
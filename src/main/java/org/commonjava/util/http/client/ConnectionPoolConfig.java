@@ -0,0 +1,128 @@
+package org.commonjava.util.http.client;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.http.HttpHost;
+import org.apache.http.conn.params.ConnPerRoute;
+import org.apache.http.conn.routing.HttpRoute;
+
+/**
+ * Connection pool limits applied by {@link DefaultClientConfigurator}: the total connection limit, the default limit
+ * per route, and per-host overrides of that default. Hosts without an override always resolve to the current default
+ * (see {@link #getMaxForRoute(HttpRoute)}), so removing an override never pins a host to an old default.
+ */
+@SuppressWarnings( "deprecation" )
+public class ConnectionPoolConfig
+    implements ConnPerRoute
+{
+
+    public static final int DEFAULT_MAX_TOTAL = 20;
+
+    public static final int DEFAULT_MAX_PER_ROUTE = 10;
+
+    private int maxTotal = DEFAULT_MAX_TOTAL;
+
+    private int defaultMaxPerRoute = DEFAULT_MAX_PER_ROUTE;
+
+    private final Map<HttpHost, Integer> maxPerHost = new LinkedHashMap<HttpHost, Integer>();
+
+    public ConnectionPoolConfig()
+    {
+    }
+
+    public ConnectionPoolConfig( final int maxTotal, final int defaultMaxPerRoute )
+    {
+        setMaxTotal( maxTotal );
+        setDefaultMaxPerRoute( defaultMaxPerRoute );
+    }
+
+    public synchronized int getMaxTotal()
+    {
+        return maxTotal;
+    }
+
+    public synchronized ConnectionPoolConfig setMaxTotal( final int maxTotal )
+    {
+        checkPositive( maxTotal, "max-total" );
+        this.maxTotal = maxTotal;
+        return this;
+    }
+
+    public synchronized int getDefaultMaxPerRoute()
+    {
+        return defaultMaxPerRoute;
+    }
+
+    public synchronized ConnectionPoolConfig setDefaultMaxPerRoute( final int defaultMaxPerRoute )
+    {
+        checkPositive( defaultMaxPerRoute, "default max-per-route" );
+        this.defaultMaxPerRoute = defaultMaxPerRoute;
+        return this;
+    }
+
+    /**
+     * Override the per-route limit for connections to the given host. Ports left unspecified (-1) are normalized to
+     * the scheme default, so <code>https://host</code> and <code>https://host:443</code> share one override.
+     */
+    public synchronized ConnectionPoolConfig setMaxPerHost( final HttpHost host, final int max )
+    {
+        checkPositive( max, "max-per-host" );
+        maxPerHost.put( normalize( host ), max );
+        return this;
+    }
+
+    public synchronized ConnectionPoolConfig removeMaxPerHost( final HttpHost host )
+    {
+        maxPerHost.remove( normalize( host ) );
+        return this;
+    }
+
+    public synchronized Integer getMaxPerHost( final HttpHost host )
+    {
+        return maxPerHost.get( normalize( host ) );
+    }
+
+    public synchronized Map<HttpHost, Integer> getMaxPerHost()
+    {
+        return Collections.unmodifiableMap( new LinkedHashMap<HttpHost, Integer>( maxPerHost ) );
+    }
+
+    /**
+     * Limit for the route's target host: its override if one is set, otherwise the default per-route limit.
+     */
+    @Override
+    public synchronized int getMaxForRoute( final HttpRoute route )
+    {
+        final Integer max = maxPerHost.get( normalize( route.getTargetHost() ) );
+        return max == null ? defaultMaxPerRoute : max;
+    }
+
+    static HttpHost normalize( final HttpHost host )
+    {
+        if ( host.getPort() > -1 )
+        {
+            return host;
+        }
+
+        final int port = "https".equalsIgnoreCase( host.getSchemeName() ) ? 443 : 80;
+        return new HttpHost( host.getHostName(), port, host.getSchemeName() );
+    }
+
+    private static void checkPositive( final int value, final String name )
+    {
+        if ( value < 1 )
+        {
+            throw new IllegalArgumentException( "Connection pool " + name + " must be at least 1, was: " + value );
+        }
+    }
+
+    @Override
+    public synchronized String toString()
+    {
+        return "ConnectionPoolConfig [maxTotal=" + maxTotal + ", defaultMaxPerRoute=" + defaultMaxPerRoute
+            + ", maxPerHost=" + maxPerHost + "]";
+    }
+
+}
@@ -1,18 +1,53 @@
 package org.commonjava.util.http.client;
 
+import java.util.Map;
+
+import org.apache.hc.client5.http.config.TlsConfig;
+import org.apache.hc.client5.http.impl.async.HttpAsyncClientBuilder;
+import org.apache.hc.client5.http.impl.nio.PoolingAsyncClientConnectionManager;
+import org.apache.hc.client5.http.impl.nio.PoolingAsyncClientConnectionManagerBuilder;
+import org.apache.hc.client5.http.nio.AsyncClientConnectionManager;
+import org.apache.hc.client5.http.ssl.ClientTlsStrategyBuilder;
+import org.apache.hc.core5.http.nio.ssl.TlsStrategy;
+import org.apache.hc.core5.http2.HttpVersionPolicy;
+import org.apache.http.HttpHost;
 import org.apache.http.conn.ClientConnectionManager;
+import org.apache.http.conn.routing.HttpRoute;
 import org.apache.http.conn.scheme.Scheme;
 import org.apache.http.conn.scheme.SchemeRegistry;
 import org.apache.http.conn.ssl.SSLSocketFactory;
 import org.apache.http.impl.client.AbstractHttpClient;
 import org.apache.http.impl.conn.PoolingClientConnectionManager;
 import org.commonjava.util.http.HTTPException;
+import org.commonjava.util.http.metrics.HTTPMetrics;
+import org.commonjava.util.http.metrics.MeteredConnectionManager;
+import org.commonjava.util.http.metrics.MeteredSocketFactory;
 import org.commonjava.util.http.ssl.SSLManager;
 
 public class DefaultClientConfigurator
-    implements ClientConfigurator
+    implements Http2ClientConfigurator
 {
 
+    private final ConnectionPoolConfig poolConfig;
+
+    private volatile PoolingClientConnectionManager connectionManager;
+
+    private volatile PoolingAsyncClientConnectionManager http2ConnectionManager;
+
+    private boolean http2Enabled;
+
+    private volatile HTTPMetrics metrics;
+
+    public DefaultClientConfigurator()
+    {
+        this( new ConnectionPoolConfig() );
+    }
+
+    public DefaultClientConfigurator( final ConnectionPoolConfig poolConfig )
+    {
+        this.poolConfig = poolConfig;
+    }
+
     @Override
     public void configure( final AbstractHttpClient client )
         throws HTTPException
@@ -24,21 +59,205 @@ public class DefaultClientConfigurator
     public ClientConnectionManager createConnectionManager( final SSLManager sslManager )
         throws HTTPException
     {
-        final PoolingClientConnectionManager ccm = new PoolingClientConnectionManager();
+        final HTTPMetrics metrics = this.metrics;
+        final PoolingClientConnectionManager ccm =
+            metrics == null ? new PoolingClientConnectionManager() : new MeteredConnectionManager( metrics );
         configureConnectionManager( ccm );
 
         final SSLSocketFactory socketFactory = sslManager.getSSLSocketFactory();
         final SchemeRegistry registry = ccm.getSchemeRegistry();
 
         // TODO: Allow configuration of ssl ports? How do we detect those, or should we allow them to be added on the fly?
-        registry.register( new Scheme( "https", 443, socketFactory ) );
+        registry.register( new Scheme( "https", 443, metrics == null ? socketFactory
+                        : new MeteredSocketFactory( socketFactory, metrics ) ) );
+
+        connectionManager = ccm;
 
         return ccm;
     }
 
+    @Override
+    public boolean isHttp2Enabled()
+    {
+        return http2Enabled;
+    }
+
+    /**
+     * Send requests over the HTTP/2-capable transport (off by default). Takes effect when the {@link HTTPClient} is
+     * initialized.
+     */
+    public DefaultClientConfigurator setHttp2Enabled( final boolean http2Enabled )
+    {
+        this.http2Enabled = http2Enabled;
+        return this;
+    }
+
+    /**
+     * Pooling connection manager that negotiates h2 via ALPN, using the {@link SSLManager}'s context, with the same
+     * limits as the HTTP/1.1 pool.
+     */
+    @Override
+    public AsyncClientConnectionManager createHttp2ConnectionManager( final SSLManager sslManager )
+        throws HTTPException
+    {
+        final TlsStrategy tlsStrategy = ClientTlsStrategyBuilder.create()
+                                                                .setSslContext( sslManager.getSSLContext() )
+                                                                .build();
+
+        final TlsConfig tlsConfig = TlsConfig.custom()
+                                             .setVersionPolicy( HttpVersionPolicy.NEGOTIATE )
+                                             .build();
+
+        final PoolingAsyncClientConnectionManagerBuilder builder = PoolingAsyncClientConnectionManagerBuilder.create();
+        builder.setTlsStrategy( tlsStrategy );
+        builder.setDefaultTlsConfig( tlsConfig );
+        builder.setMaxConnTotal( poolConfig.getMaxTotal() );
+        builder.setMaxConnPerRoute( poolConfig.getDefaultMaxPerRoute() );
+
+        final PoolingAsyncClientConnectionManager cm = builder.build();
+        for ( final Map.Entry<HttpHost, Integer> entry : poolConfig.getMaxPerHost()
+                                                                   .entrySet() )
+        {
+            cm.setMaxPerRoute( http2RouteFor( entry.getKey() ), entry.getValue() );
+        }
+
+        http2ConnectionManager = cm;
+
+        return cm;
+    }
+
+    @Override
+    public void configureHttp2( final HttpAsyncClientBuilder builder )
+        throws HTTPException
+    {
+        // NOP
+    }
+
     protected void configureConnectionManager( final PoolingClientConnectionManager ccm )
     {
-        ccm.setMaxTotal( 20 );
+        ccm.setMaxTotal( poolConfig.getMaxTotal() );
+        ccm.setDefaultMaxPerRoute( poolConfig.getDefaultMaxPerRoute() );
+
+        for ( final Map.Entry<HttpHost, Integer> entry : poolConfig.getMaxPerHost()
+                                                                   .entrySet() )
+        {
+            ccm.setMaxPerRoute( routeFor( entry.getKey() ), entry.getValue() );
+        }
+    }
+
+    /**
+     * Report lease waits and TLS connection setup times from connection managers created after this call.
+     */
+    public void setMetrics( final HTTPMetrics metrics )
+    {
+        this.metrics = metrics;
+    }
+
+    public HTTPMetrics getMetrics()
+    {
+        return metrics;
+    }
+
+    public ConnectionPoolConfig getPoolConfig()
+    {
+        return poolConfig;
+    }
+
+    /**
+     * Resize the total connection limit, both in the config and in the most recently created connection manager.
+     */
+    public void setMaxTotal( final int maxTotal )
+    {
+        poolConfig.setMaxTotal( maxTotal );
+
+        final PoolingClientConnectionManager ccm = connectionManager;
+        if ( ccm != null )
+        {
+            ccm.setMaxTotal( maxTotal );
+        }
+
+        final PoolingAsyncClientConnectionManager h2cm = http2ConnectionManager;
+        if ( h2cm != null )
+        {
+            h2cm.setMaxTotal( maxTotal );
+        }
+    }
+
+    public void setDefaultMaxPerRoute( final int max )
+    {
+        poolConfig.setDefaultMaxPerRoute( max );
+
+        final PoolingClientConnectionManager ccm = connectionManager;
+        if ( ccm != null )
+        {
+            ccm.setDefaultMaxPerRoute( max );
+        }
+
+        final PoolingAsyncClientConnectionManager h2cm = http2ConnectionManager;
+        if ( h2cm != null )
+        {
+            h2cm.setDefaultMaxPerRoute( max );
+        }
+    }
+
+    public void setMaxPerHost( final HttpHost host, final int max )
+    {
+        poolConfig.setMaxPerHost( host, max );
+
+        final PoolingClientConnectionManager ccm = connectionManager;
+        if ( ccm != null )
+        {
+            ccm.setMaxPerRoute( routeFor( host ), max );
+        }
+
+        final PoolingAsyncClientConnectionManager h2cm = http2ConnectionManager;
+        if ( h2cm != null )
+        {
+            h2cm.setMaxPerRoute( http2RouteFor( host ), max );
+        }
+    }
+
+    /**
+     * Drop a per-host override; the host falls back to the default per-route limit, including later changes to it.
+     */
+    public void removeMaxPerHost( final HttpHost host )
+    {
+        poolConfig.removeMaxPerHost( host );
+
+        // a negative limit removes the pool's own override for the route
+        final PoolingClientConnectionManager ccm = connectionManager;
+        if ( ccm != null )
+        {
+            ccm.setMaxPerRoute( routeFor( host ), -1 );
+        }
+
+        final PoolingAsyncClientConnectionManager h2cm = http2ConnectionManager;
+        if ( h2cm != null )
+        {
+            h2cm.setMaxPerRoute( http2RouteFor( host ), -1 );
+        }
+    }
+
+    /**
+     * Direct (non-proxied) route to the given host, as planned by the default route planner.
+     */
+    protected HttpRoute routeFor( final HttpHost host )
+    {
+        final HttpHost target = ConnectionPoolConfig.normalize( host );
+        return new HttpRoute( target, null, "https".equalsIgnoreCase( target.getSchemeName() ) );
+    }
+
+    /**
+     * The same route as {@link #routeFor(HttpHost)}, in the HTTP/2 pool's terms.
+     */
+    protected org.apache.hc.client5.http.HttpRoute http2RouteFor( final HttpHost host )
+    {
+        final HttpHost target = ConnectionPoolConfig.normalize( host );
+        final org.apache.hc.core5.http.HttpHost h2Target =
+            new org.apache.hc.core5.http.HttpHost( target.getSchemeName(), target.getHostName(), target.getPort() );
+
+        return new org.apache.hc.client5.http.HttpRoute( h2Target, null,
+                                                         "https".equalsIgnoreCase( target.getSchemeName() ) );
     }
 
 }
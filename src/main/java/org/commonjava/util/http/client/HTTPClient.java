@@ -1,6 +1,8 @@
 package org.commonjava.util.http.client;
 
 import java.io.IOException;
+import java.net.URI;
+import java.util.HashMap;
 import java.util.Map;
 import java.util.concurrent.TimeUnit;
 
@@ -16,13 +18,28 @@ import org.apache.http.client.ClientProtocolException;
 import org.apache.http.client.HttpClient;
 import org.apache.http.client.ResponseHandler;
 import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.client.protocol.ClientContext;
+import org.apache.http.conn.ClientConnectionManager;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.conn.ssl.SSLSocketFactory;
 import org.apache.http.impl.client.AbstractHttpClient;
 import org.apache.http.impl.client.DefaultHttpClient;
+import org.apache.http.impl.conn.PoolingClientConnectionManager;
 import org.apache.http.params.BasicHttpParams;
+import org.apache.http.protocol.BasicHttpContext;
 import org.apache.http.protocol.HttpContext;
+import org.apache.http.util.EntityUtils;
 import org.commonjava.util.http.HTTPException;
+import org.commonjava.util.http.metrics.HTTPMetrics;
+import org.commonjava.util.http.metrics.InMemoryHTTPMetrics;
+import org.commonjava.util.http.metrics.MetricsSnapshot;
+import org.commonjava.util.http.metrics.PoolSnapshot;
 import org.commonjava.util.http.ssl.SSLManager;
+import org.commonjava.util.http.ssl.threadlocal.CredentialContext;
+import org.commonjava.util.http.ssl.threadlocal.SSLFactoryCache;
+import org.commonjava.util.http.ssl.threadlocal.SSLKeyCert;
 import org.commonjava.util.http.ssl.threadlocal.ThreadLocalCredentialsProvider;
+import org.commonjava.util.http.ssl.threadlocal.ThreadLocalSSLSocketFactory;
 
 @ApplicationScoped
 public class HTTPClient
@@ -30,6 +47,12 @@ public class HTTPClient
 
     public static final String AUTH_SCOPE_PARAM = "HTTP::authscope";
 
+    /**
+     * Context attribute holding the user token this client last left in the context, so later requests can tell it
+     * apart from a token the caller set.
+     */
+    static final String STATE_TOKEN_ATTR = "HTTP::statetoken";
+
     private HttpClient client;
 
     @Inject
@@ -41,15 +64,50 @@ public class HTTPClient
     @Inject
     private ThreadLocalCredentialsProvider credProvider;
 
+    private volatile Http2Transport http2;
+
+    private HTTPMetrics metrics;
+
+    private SSLFactoryCache factoryCache;
+
+    private IdleConnectionReaper reaper;
+
+    private long reapIntervalMillis = IdleConnectionReaper.DEFAULT_INTERVAL_MILLIS;
+
+    private long idleTimeoutMillis = IdleConnectionReaper.DEFAULT_IDLE_TIMEOUT_MILLIS;
+
     public HTTPClient()
     {
     }
 
     public HTTPClient( final SSLManager sslManager, final ClientConfigurator configurator )
         throws HTTPException
+    {
+        this( sslManager, configurator, null );
+    }
+
+    /**
+     * @param metrics receives pool and TLS timings, e.g. an {@link InMemoryHTTPMetrics}; null (the default) to leave
+     *        connections and trust managers unwrapped.
+     */
+    public HTTPClient( final SSLManager sslManager, final ClientConfigurator configurator, final HTTPMetrics metrics )
+        throws HTTPException
+    {
+        this( sslManager, configurator, null, metrics );
+    }
+
+    /**
+     * @param credProvider the provider the SSL manager binds credentials through, so pooled connections are only
+     *        reused by requests carrying the same client certificate; null to share connections regardless.
+     */
+    public HTTPClient( final SSLManager sslManager, final ClientConfigurator configurator,
+                       final ThreadLocalCredentialsProvider credProvider, final HTTPMetrics metrics )
+        throws HTTPException
     {
         this.sslManager = sslManager;
         this.configurator = configurator;
+        this.credProvider = credProvider;
+        this.metrics = metrics;
 
         init();
     }
@@ -63,13 +121,107 @@ public class HTTPClient
             configurator = new DefaultClientConfigurator();
         }
 
+        if ( metrics != null && configurator instanceof DefaultClientConfigurator
+            && ( (DefaultClientConfigurator) configurator ).getMetrics() == null )
+        {
+            ( (DefaultClientConfigurator) configurator ).setMetrics( metrics );
+        }
+
+        if ( sslManager != null )
+        {
+            if ( metrics != null && sslManager.getMetrics() == null )
+            {
+                sslManager.setMetrics( metrics );
+            }
+
+            final SSLSocketFactory factory = sslManager.getSSLSocketFactory();
+            if ( factory instanceof ThreadLocalSSLSocketFactory )
+            {
+                factoryCache = ( (ThreadLocalSSLSocketFactory) factory ).getFactoryCache();
+            }
+        }
+
         final AbstractHttpClient hc =
             new DefaultHttpClient( configurator.createConnectionManager( sslManager ), new BasicHttpParams() );
 
         configurator.configure( hc );
         hc.setCredentialsProvider( credProvider );
+        hc.setUserTokenHandler( new ClientCertUserTokenHandler( credProvider ) );
 
         client = hc;
+
+        reaper =
+            new IdleConnectionReaper( hc.getConnectionManager(), reapIntervalMillis, idleTimeoutMillis,
+                                      TimeUnit.MILLISECONDS ).start();
+
+        if ( configurator instanceof Http2ClientConfigurator
+            && ( (Http2ClientConfigurator) configurator ).isHttp2Enabled() )
+        {
+            http2 =
+                new Http2Transport( sslManager, (Http2ClientConfigurator) configurator, credProvider, hc.getParams(),
+                                    idleTimeoutMillis );
+        }
+    }
+
+    public HTTPMetrics getMetrics()
+    {
+        return metrics;
+    }
+
+    /**
+     * Current metrics: lease waits, TLS setup and trust-check timings, plus pool occupancy (in total and for every
+     * route that has leased a connection) and SSL factory cache counters read now. Pending leases on a route whose
+     * leased count equals its max indicate pool starvation. Without {@link HTTPMetrics} only the total pool and cache
+     * counters are filled in.
+     */
+    public MetricsSnapshot getMetricsSnapshot()
+    {
+        MetricsSnapshot snapshot = metrics == null ? new InMemoryHTTPMetrics().snapshot() : metrics.snapshot();
+
+        final ClientConnectionManager ccm = client.getConnectionManager();
+        if ( ccm instanceof PoolingClientConnectionManager )
+        {
+            final PoolingClientConnectionManager pool = (PoolingClientConnectionManager) ccm;
+            final Map<HttpRoute, PoolSnapshot> routes = new HashMap<HttpRoute, PoolSnapshot>();
+            for ( final HttpRoute route : snapshot.getLeaseWaits()
+                                                  .keySet() )
+            {
+                routes.put( route, new PoolSnapshot( pool.getStats( route ) ) );
+            }
+
+            snapshot = snapshot.withPools( new PoolSnapshot( pool.getTotalStats() ), routes );
+        }
+
+        if ( factoryCache != null )
+        {
+            snapshot = snapshot.withFactoryCache( factoryCache.getHits(), factoryCache.getMisses() );
+        }
+
+        return snapshot;
+    }
+
+    /**
+     * Whether requests go over the HTTP/2-capable transport (see {@link Http2ClientConfigurator}).
+     */
+    public boolean isHttp2Enabled()
+    {
+        return http2 != null;
+    }
+
+    /**
+     * Set how often the background reaper evicts expired connections, and how long a pooled connection may sit idle
+     * before it is closed. Takes effect immediately if the client is already initialized.
+     */
+    public synchronized void setIdleConnectionReaping( final long interval, final long idleTimeout,
+                                                       final TimeUnit unit )
+    {
+        reapIntervalMillis = unit.toMillis( interval );
+        idleTimeoutMillis = unit.toMillis( idleTimeout );
+
+        if ( reaper != null )
+        {
+            reaper.setSchedule( interval, idleTimeout, unit );
+        }
     }
 
     public HttpClient getClient()
@@ -77,39 +229,222 @@ public class HTTPClient
         return client;
     }
 
-    @PreDestroy
+    /**
+     * Evict expired and idle connections right now, rather than waiting for the background reaper.
+     */
     public void closeConnection()
     {
         client.getConnectionManager()
               .closeExpiredConnections();
 
         client.getConnectionManager()
-              .closeIdleConnections( 2, TimeUnit.SECONDS );
+              .closeIdleConnections( idleTimeoutMillis, TimeUnit.MILLISECONDS );
+
+        if ( http2 != null )
+        {
+            http2.closeIdleConnections( idleTimeoutMillis, TimeUnit.MILLISECONDS );
+        }
+    }
+
+    @PreDestroy
+    public synchronized void shutdown()
+    {
+        if ( reaper != null )
+        {
+            reaper.shutdown();
+            reaper = null;
+        }
+
+        if ( http2 != null )
+        {
+            http2.close();
+            http2 = null;
+        }
+
+        client.getConnectionManager()
+              .shutdown();
     }
 
+    /**
+     * Goes over HTTP/2 when it is enabled and the request can use it (see {@link #http2For(HttpUriRequest)}).
+     */
     public HttpResponse execute( final HttpUriRequest request )
         throws IOException, ClientProtocolException
     {
-        return client.execute( request );
+        final Http2Transport h2 = http2For( request );
+        if ( h2 != null )
+        {
+            return h2.execute( request );
+        }
+
+        return execute( request, new BasicHttpContext() );
     }
 
+    /**
+     * Always uses the HTTP/1.1 transport, since the HTTP/2 transport can't honour a caller's context.
+     */
     public HttpResponse execute( final HttpUriRequest request, final HttpContext context )
         throws IOException, ClientProtocolException
     {
-        return client.execute( request, context );
+        final boolean managed = applyStateToken( request, context );
+        try
+        {
+            return client.execute( request, context );
+        }
+        finally
+        {
+            if ( managed )
+            {
+                keepStateToken( context );
+            }
+        }
     }
 
+    /**
+     * Goes over HTTP/2 when it is enabled and the request can use it (see {@link #http2For(HttpUriRequest)}). The
+     * response entity is consumed once the handler returns.
+     */
     public <T> T execute( final HttpUriRequest request, final ResponseHandler<? extends T> responseHandler )
         throws IOException, ClientProtocolException
     {
-        return client.execute( request, responseHandler );
+        final Http2Transport h2 = http2For( request );
+        if ( h2 == null )
+        {
+            return execute( request, responseHandler, new BasicHttpContext() );
+        }
+
+        final HttpResponse response = h2.execute( request );
+        final T result;
+        try
+        {
+            result = responseHandler.handleResponse( response );
+        }
+        catch ( final IOException e )
+        {
+            EntityUtils.consumeQuietly( response.getEntity() );
+            throw e;
+        }
+        catch ( final RuntimeException e )
+        {
+            EntityUtils.consumeQuietly( response.getEntity() );
+            throw e;
+        }
+
+        EntityUtils.consume( response.getEntity() );
+        return result;
     }
 
+    /**
+     * Always uses the HTTP/1.1 transport, since the HTTP/2 transport can't honour a caller's context.
+     */
     public <T> T execute( final HttpUriRequest request, final ResponseHandler<? extends T> responseHandler,
                           final HttpContext context )
         throws IOException, ClientProtocolException
     {
-        return client.execute( request, responseHandler, context );
+        final boolean managed = applyStateToken( request, context );
+        try
+        {
+            return client.execute( request, responseHandler, context );
+        }
+        finally
+        {
+            if ( managed )
+            {
+                keepStateToken( context );
+            }
+        }
+    }
+
+    /**
+     * The HTTP/2 transport, if enabled and usable for this request. Requests made while a client certificate or trust
+     * bundle is bound to the thread need per-connection TLS state, and requests with params other than the auth scope
+     * and timeouts need the HTTP/1.1 client's handling, so both stay on HTTP/1.1.
+     */
+    private Http2Transport http2For( final HttpUriRequest request )
+    {
+        final Http2Transport h2 = http2;
+        if ( h2 == null || ( credProvider != null && credProvider.getCredentialBundle() != null )
+            || !Http2Transport.supports( request ) )
+        {
+            return null;
+        }
+
+        return h2;
+    }
+
+    /**
+     * Ask the pool for connections carrying the same client identity as the current thread's bound credentials (see
+     * {@link ClientCertUserTokenHandler}). The token is recomputed for every request, since HttpClient writes the
+     * connection's token back into the context and a reused context may since have been bound to other credentials.
+     * Callers that set their own user token are left alone.
+     *
+     * @return true if the token is this client's to manage, false if the caller set it
+     */
+    boolean applyStateToken( final HttpUriRequest request, final HttpContext context )
+    {
+        if ( credProvider == null )
+        {
+            return false;
+        }
+
+        final Object current = context.getAttribute( ClientContext.USER_TOKEN );
+        if ( current != null && current != context.getAttribute( STATE_TOKEN_ATTR ) )
+        {
+            return false;
+        }
+
+        final Object token = credProvider.getConnectionStateToken( getAuthScope( request ) );
+        if ( token == null )
+        {
+            context.removeAttribute( ClientContext.USER_TOKEN );
+        }
+        else
+        {
+            context.setAttribute( ClientContext.USER_TOKEN, token );
+        }
+
+        return true;
+    }
+
+    /**
+     * Remember whatever token HttpClient left in the context after a request whose token this client managed, so it
+     * is replaced rather than treated as the caller's on the next request.
+     */
+    void keepStateToken( final HttpContext context )
+    {
+        final Object token = context.getAttribute( ClientContext.USER_TOKEN );
+        if ( token == null )
+        {
+            context.removeAttribute( STATE_TOKEN_ATTR );
+        }
+        else
+        {
+            context.setAttribute( STATE_TOKEN_ATTR, token );
+        }
+    }
+
+    static AuthScope getAuthScope( final HttpUriRequest request )
+    {
+        final Object param = request.getParams()
+                                    .getParameter( AUTH_SCOPE_PARAM );
+        if ( param instanceof AuthScope )
+        {
+            return (AuthScope) param;
+        }
+
+        final URI uri = request.getURI();
+        if ( uri == null || uri.getHost() == null )
+        {
+            return null;
+        }
+
+        int port = uri.getPort();
+        if ( port < 0 )
+        {
+            port = "https".equalsIgnoreCase( uri.getScheme() ) ? 443 : 80;
+        }
+
+        return new AuthScope( uri.getHost(), port );
     }
 
     public void dispose( final HttpUriRequest request )
@@ -117,8 +452,6 @@ public class HTTPClient
         credProvider.clear();
 
         request.abort();
-
-        closeConnection();
     }
 
     public void bind( final Map<AuthScope, Credentials> creds )
@@ -131,4 +464,23 @@ public class HTTPClient
         credProvider.bind( scope, creds );
     }
 
+    /**
+     * Run the action with these credentials bound, releasing them afterwards even if the action fails. Unlike
+     * {@link #bind(Map)} / {@link #dispose(HttpUriRequest)} nothing is left behind on pooled or virtual threads.
+     */
+    public <T, E extends Exception> T callWithCredentials( final CredentialContext ctx,
+                                                           final CredentialContext.Action<T, E> action )
+        throws E
+    {
+        return credProvider.callWith( ctx, action );
+    }
+
+    public <T, E extends Exception> T callWithCredentials( final Map<AuthScope, Credentials> creds,
+                                                           final Map<AuthScope, SSLKeyCert> keycerts,
+                                                           final CredentialContext.Action<T, E> action )
+        throws HTTPException, E
+    {
+        return credProvider.callWith( credProvider.newContext( creds, keycerts ), action );
+    }
+
 }
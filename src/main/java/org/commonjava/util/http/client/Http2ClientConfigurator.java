@@ -0,0 +1,25 @@
+package org.commonjava.util.http.client;
+
+import org.apache.hc.client5.http.impl.async.HttpAsyncClientBuilder;
+import org.apache.hc.client5.http.nio.AsyncClientConnectionManager;
+import org.commonjava.util.http.HTTPException;
+import org.commonjava.util.http.ssl.SSLManager;
+
+/**
+ * {@link ClientConfigurator} that can also supply an HTTP/2-capable transport. When {@link #isHttp2Enabled()} returns
+ * true, {@link HTTPClient} sends requests over HttpClient 5, negotiating HTTP/2 via ALPN and multiplexing concurrent
+ * requests to the same host over one TLS connection; hosts that don't offer h2 are served over HTTP/1.1.
+ */
+public interface Http2ClientConfigurator
+    extends ClientConfigurator
+{
+
+    boolean isHttp2Enabled();
+
+    AsyncClientConnectionManager createHttp2ConnectionManager( SSLManager sslManager )
+        throws HTTPException;
+
+    void configureHttp2( HttpAsyncClientBuilder builder )
+        throws HTTPException;
+
+}
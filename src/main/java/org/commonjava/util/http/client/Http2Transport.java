@@ -0,0 +1,526 @@
+package org.commonjava.util.http.client;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.SocketTimeoutException;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.apache.hc.client5.http.auth.UsernamePasswordCredentials;
+import org.apache.hc.client5.http.config.RequestConfig;
+import org.apache.hc.client5.http.impl.async.CloseableHttpAsyncClient;
+import org.apache.hc.client5.http.impl.async.HttpAsyncClientBuilder;
+import org.apache.hc.client5.http.impl.async.HttpAsyncClients;
+import org.apache.hc.client5.http.nio.AsyncClientConnectionManager;
+import org.apache.hc.client5.http.protocol.HttpClientContext;
+import org.apache.hc.core5.concurrent.FutureCallback;
+import org.apache.hc.core5.http.ContentType;
+import org.apache.hc.core5.http.EntityDetails;
+import org.apache.hc.core5.http.message.BasicHttpRequest;
+import org.apache.hc.core5.http.nio.AsyncEntityProducer;
+import org.apache.hc.core5.http.nio.AsyncRequestProducer;
+import org.apache.hc.core5.http.nio.AsyncResponseConsumer;
+import org.apache.hc.core5.http.nio.CapacityChannel;
+import org.apache.hc.core5.http.nio.support.BasicRequestProducer;
+import org.apache.hc.core5.http.nio.support.classic.AbstractClassicEntityProducer;
+import org.apache.hc.core5.http.nio.support.classic.SharedInputBuffer;
+import org.apache.hc.core5.io.CloseMode;
+import org.apache.hc.core5.pool.ConnPoolControl;
+import org.apache.hc.core5.util.TimeValue;
+import org.apache.hc.core5.util.Timeout;
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpEntityEnclosingRequest;
+import org.apache.http.HttpResponse;
+import org.apache.http.ProtocolVersion;
+import org.apache.http.auth.AuthScope;
+import org.apache.http.auth.Credentials;
+import org.apache.http.client.methods.HttpExecutionAware;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.concurrent.Cancellable;
+import org.apache.http.entity.BasicHttpEntity;
+import org.apache.http.impl.client.BasicCredentialsProvider;
+import org.apache.http.message.BasicHttpResponse;
+import org.apache.http.params.CoreConnectionPNames;
+import org.apache.http.params.DefaultedHttpParams;
+import org.apache.http.params.HttpConnectionParams;
+import org.apache.http.params.HttpParams;
+import org.apache.http.params.HttpParamsNames;
+import org.commonjava.util.http.HTTPException;
+import org.commonjava.util.http.ssl.SSLManager;
+import org.commonjava.util.http.ssl.threadlocal.CredentialContext;
+import org.commonjava.util.http.ssl.threadlocal.ThreadLocalCredentialsProvider;
+
+/**
+ * HTTP/2 transport behind {@link HTTPClient}, used when the {@link Http2ClientConfigurator} enables it. Requests and
+ * responses are translated to and from the HttpClient 4.x API, so callers don't see the difference. Bodies are
+ * streamed in both directions: the response is returned once its head arrives, and the server can only send as much
+ * of the body as fits in a small buffer ahead of the caller's reads.
+ * <p>
+ * TLS (including ALPN) uses the {@link SSLManager}'s context. Handshakes run on the reactor threads and a multiplexed
+ * connection is shared by all callers, so thread-bound client certificates and trust can't be used here;
+ * {@link HTTPClient} sends requests that need them over HTTP/1.1 (see {@link #supports(HttpUriRequest)}). Bound HTTP
+ * credentials are captured when the request is submitted. Connect and socket timeouts come from the request's params,
+ * falling back to the HTTP/1.1 client's.
+ */
+final class Http2Transport
+{
+
+    /**
+     * Connect and socket timeout used where the params leave them unlimited (0), so no request waits forever.
+     */
+    static final long DEFAULT_TIMEOUT_MILLIS = TimeUnit.MINUTES.toMillis( 3 );
+
+    private static final int BUFFER_SIZE = 8192;
+
+    /**
+     * Request params this transport honours. Requests carrying any other param go over HTTP/1.1.
+     */
+    private static final Set<String> SUPPORTED_PARAMS =
+        new HashSet<String>( Arrays.asList( HTTPClient.AUTH_SCOPE_PARAM, CoreConnectionPNames.CONNECTION_TIMEOUT,
+                                            CoreConnectionPNames.SO_TIMEOUT ) );
+
+    private static final Set<String> CONNECTION_HEADERS = new HashSet<String>();
+
+    static
+    {
+        for ( final String name : new String[] { "connection", "keep-alive", "proxy-connection", "transfer-encoding",
+            "upgrade", "host", "content-length", "te" } )
+        {
+            CONNECTION_HEADERS.add( name );
+        }
+    }
+
+    private final ThreadLocalCredentialsProvider credProvider;
+
+    private final HttpParams defaults;
+
+    private final AsyncClientConnectionManager connectionManager;
+
+    private final CloseableHttpAsyncClient client;
+
+    private final ExecutorService bodyWriters;
+
+    /**
+     * @param defaults params of the HTTP/1.1 client, read on every request for the timeouts requests don't set.
+     */
+    Http2Transport( final SSLManager sslManager, final Http2ClientConfigurator configurator,
+                    final ThreadLocalCredentialsProvider credProvider, final HttpParams defaults,
+                    final long idleTimeoutMillis )
+        throws HTTPException
+    {
+        this.credProvider = credProvider;
+        this.defaults = defaults;
+        this.connectionManager = configurator.createHttp2ConnectionManager( sslManager );
+        this.bodyWriters = Executors.newCachedThreadPool( new ThreadFactory()
+        {
+            @Override
+            public Thread newThread( final Runnable r )
+            {
+                final Thread t = new Thread( r, "http2-request-body" );
+                t.setDaemon( true );
+                return t;
+            }
+        } );
+
+        final HttpAsyncClientBuilder builder =
+            HttpAsyncClients.custom()
+                            .setConnectionManager( connectionManager )
+                            .evictExpiredConnections()
+                            .evictIdleConnections( TimeValue.ofMilliseconds( idleTimeoutMillis ) );
+
+        configurator.configureHttp2( builder );
+
+        client = builder.build();
+        client.start();
+    }
+
+    /**
+     * Whether the request can use this transport: its params (if any) are limited to the auth scope and timeouts.
+     */
+    static boolean supports( final HttpUriRequest request )
+    {
+        final HttpParams params = request.getParams();
+        if ( !( params instanceof HttpParamsNames ) )
+        {
+            return false;
+        }
+
+        final Set<String> names;
+        try
+        {
+            names = ( (HttpParamsNames) params ).getNames();
+        }
+        catch ( final UnsupportedOperationException e )
+        {
+            // AbstractHttpParams subclasses that can't list their names
+            return false;
+        }
+
+        for ( final String name : names )
+        {
+            if ( !SUPPORTED_PARAMS.contains( name ) )
+            {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Send the request and wait (at most the connect plus socket timeout) for the response head. The caller must
+     * consume or close the response entity, as with HttpClient 4.x.
+     */
+    @SuppressWarnings( "deprecation" )
+    HttpResponse execute( final HttpUriRequest request )
+        throws IOException
+    {
+        final HttpParams params = new DefaultedHttpParams( request.getParams(), defaults );
+        final long connectTimeout = timeout( HttpConnectionParams.getConnectionTimeout( params ) );
+        final long socketTimeout = timeout( HttpConnectionParams.getSoTimeout( params ) );
+
+        final HttpClientContext context = HttpClientContext.create();
+        context.setRequestConfig( RequestConfig.custom()
+                                               .setConnectTimeout( Timeout.ofMilliseconds( connectTimeout ) )
+                                               .setResponseTimeout( Timeout.ofMilliseconds( socketTimeout ) )
+                                               .build() );
+
+        if ( credProvider != null )
+        {
+            context.setCredentialsProvider( toCredentialsProvider( credProvider.getContext() ) );
+        }
+
+        final StreamingResponseConsumer consumer = new StreamingResponseConsumer( request.getURI() );
+        final Future<HttpResponse> future = client.execute( toRequestProducer( request ), consumer, context, null );
+
+        if ( request instanceof HttpExecutionAware )
+        {
+            ( (HttpExecutionAware) request ).setCancellable( new Cancellable()
+            {
+                @Override
+                public boolean cancel()
+                {
+                    consumer.abort();
+                    return future.cancel( true );
+                }
+            } );
+        }
+
+        try
+        {
+            return future.get( connectTimeout + socketTimeout, TimeUnit.MILLISECONDS );
+        }
+        catch ( final InterruptedException e )
+        {
+            future.cancel( true );
+            Thread.currentThread()
+                  .interrupt();
+
+            throw new InterruptedIOException( "Interrupted waiting for response from: " + request.getURI() );
+        }
+        catch ( final TimeoutException e )
+        {
+            future.cancel( true );
+
+            throw new SocketTimeoutException( "Timed out waiting for response from: " + request.getURI() );
+        }
+        catch ( final ExecutionException e )
+        {
+            final Throwable cause = e.getCause();
+            if ( cause instanceof IOException )
+            {
+                throw (IOException) cause;
+            }
+
+            throw new IOException( "Request to " + request.getURI() + " failed: " + cause.getMessage(), cause );
+        }
+    }
+
+    void closeIdleConnections( final long idleTimeout, final TimeUnit unit )
+    {
+        if ( connectionManager instanceof ConnPoolControl )
+        {
+            ( (ConnPoolControl<?>) connectionManager ).closeExpired();
+            ( (ConnPoolControl<?>) connectionManager ).closeIdle( TimeValue.of( idleTimeout, unit ) );
+        }
+    }
+
+    void close()
+    {
+        client.close( CloseMode.GRACEFUL );
+        bodyWriters.shutdown();
+    }
+
+    private static long timeout( final int millis )
+    {
+        return millis > 0 ? millis : DEFAULT_TIMEOUT_MILLIS;
+    }
+
+    private AsyncRequestProducer toRequestProducer( final HttpUriRequest request )
+    {
+        final BasicHttpRequest result = new BasicHttpRequest( request.getMethod(), request.getURI() );
+        for ( final Header header : request.getAllHeaders() )
+        {
+            if ( !CONNECTION_HEADERS.contains( header.getName()
+                                                     .toLowerCase( Locale.ROOT ) ) )
+            {
+                result.addHeader( header.getName(), header.getValue() );
+            }
+        }
+
+        AsyncEntityProducer body = null;
+        if ( request instanceof HttpEntityEnclosingRequest )
+        {
+            final HttpEntity entity = ( (HttpEntityEnclosingRequest) request ).getEntity();
+            if ( entity != null )
+            {
+                final Header type = entity.getContentType();
+                final ContentType contentType =
+                    type == null ? ContentType.APPLICATION_OCTET_STREAM : ContentType.parse( type.getValue() );
+
+                body = new AbstractClassicEntityProducer( BUFFER_SIZE, contentType, bodyWriters )
+                {
+                    @Override
+                    protected void produceData( final ContentType contentType, final OutputStream out )
+                        throws IOException
+                    {
+                        entity.writeTo( out );
+                    }
+                };
+            }
+        }
+
+        return new BasicRequestProducer( result, body );
+    }
+
+    private static HttpResponse toHttpResponse( final org.apache.hc.core5.http.HttpResponse response )
+    {
+        final org.apache.hc.core5.http.ProtocolVersion version = response.getVersion();
+        final ProtocolVersion protocol =
+            version == null ? new ProtocolVersion( "HTTP", 1, 1 ) : new ProtocolVersion( version.getProtocol(),
+                                                                                        version.getMajor(),
+                                                                                        version.getMinor() );
+
+        final BasicHttpResponse result =
+            new BasicHttpResponse( protocol, response.getCode(), response.getReasonPhrase() );
+
+        for ( final org.apache.hc.core5.http.Header header : response.getHeaders() )
+        {
+            result.addHeader( header.getName(), header.getValue() );
+        }
+
+        return result;
+    }
+
+    /**
+     * Snapshot of the caller's bound credentials, matched the same way HttpClient 4.x matches them.
+     */
+    private static org.apache.hc.client5.http.auth.CredentialsProvider toCredentialsProvider(
+        final CredentialContext ctx )
+    {
+        final BasicCredentialsProvider snapshot = new BasicCredentialsProvider();
+        final Map<AuthScope, Credentials> creds = ctx.getCredentials();
+        if ( creds != null )
+        {
+            for ( final Map.Entry<AuthScope, Credentials> entry : creds.entrySet() )
+            {
+                snapshot.setCredentials( entry.getKey(), entry.getValue() );
+            }
+        }
+
+        return new org.apache.hc.client5.http.auth.CredentialsProvider()
+        {
+            @Override
+            public org.apache.hc.client5.http.auth.Credentials getCredentials(
+                final org.apache.hc.client5.http.auth.AuthScope scope,
+                final org.apache.hc.core5.http.protocol.HttpContext context )
+            {
+                final Credentials found =
+                    snapshot.getCredentials( new AuthScope( scope.getHost(), scope.getPort(), scope.getRealm(),
+                                                            scope.getSchemeName() ) );
+                if ( found == null )
+                {
+                    return null;
+                }
+
+                final String password = found.getPassword();
+                return new UsernamePasswordCredentials( found.getUserPrincipal()
+                                                             .getName(), password == null ? null
+                                : password.toCharArray() );
+            }
+        };
+    }
+
+    /**
+     * Completes with the response as soon as its head arrives. The body reaches the caller through a
+     * {@link SharedInputBuffer}, which grants the server flow-control credit only as the caller reads.
+     */
+    private static final class StreamingResponseConsumer
+        implements AsyncResponseConsumer<HttpResponse>
+    {
+        private final URI uri;
+
+        private final SharedInputBuffer buffer = new SharedInputBuffer( BUFFER_SIZE );
+
+        private volatile Exception failure;
+
+        private volatile boolean ended;
+
+        StreamingResponseConsumer( final URI uri )
+        {
+            this.uri = uri;
+        }
+
+        @Override
+        public void consumeResponse( final org.apache.hc.core5.http.HttpResponse response,
+                                     final EntityDetails entityDetails,
+                                     final org.apache.hc.core5.http.protocol.HttpContext context,
+                                     final FutureCallback<HttpResponse> resultCallback )
+        {
+            final HttpResponse result = toHttpResponse( response );
+            if ( entityDetails != null )
+            {
+                final BasicHttpEntity entity = new BasicHttpEntity();
+                entity.setContent( new BodyInputStream() );
+                entity.setContentLength( entityDetails.getContentLength() );
+                entity.setContentType( entityDetails.getContentType() );
+                entity.setContentEncoding( entityDetails.getContentEncoding() );
+                entity.setChunked( entityDetails.isChunked() );
+
+                result.setEntity( entity );
+            }
+            else
+            {
+                ended = true;
+            }
+
+            resultCallback.completed( result );
+        }
+
+        @Override
+        public void informationResponse( final org.apache.hc.core5.http.HttpResponse response,
+                                         final org.apache.hc.core5.http.protocol.HttpContext context )
+        {
+        }
+
+        @Override
+        public void updateCapacity( final CapacityChannel capacityChannel )
+            throws IOException
+        {
+            buffer.updateCapacity( capacityChannel );
+        }
+
+        @Override
+        public void consume( final ByteBuffer src )
+        {
+            buffer.fill( src );
+        }
+
+        @Override
+        public void streamEnd( final List<? extends org.apache.hc.core5.http.Header> trailers )
+        {
+            ended = true;
+            buffer.markEndStream();
+        }
+
+        @Override
+        public void failed( final Exception cause )
+        {
+            failure = cause;
+            buffer.abort();
+        }
+
+        @Override
+        public void releaseResources()
+        {
+            if ( !ended )
+            {
+                buffer.abort();
+            }
+        }
+
+        void abort()
+        {
+            failed( new InterruptedIOException( "Request aborted: " + uri ) );
+        }
+
+        private final class BodyInputStream
+            extends InputStream
+        {
+            private boolean closed;
+
+            @Override
+            public int read()
+                throws IOException
+            {
+                return checked( buffer.read() );
+            }
+
+            @Override
+            public int read( final byte[] b, final int off, final int len )
+                throws IOException
+            {
+                return checked( buffer.read( b, off, len ) );
+            }
+
+            @Override
+            public int available()
+            {
+                return buffer.length();
+            }
+
+            /**
+             * Read the rest of the body, as closing a HttpClient 4.x response stream does, so the stream completes
+             * normally rather than stalling.
+             */
+            @Override
+            public void close()
+                throws IOException
+            {
+                if ( closed )
+                {
+                    return;
+                }
+
+                closed = true;
+                if ( failure == null )
+                {
+                    final byte[] skip = new byte[BUFFER_SIZE];
+                    while ( read( skip, 0, skip.length ) >= 0 )
+                    {
+                        // discard
+                    }
+                }
+            }
+
+            private int checked( final int result )
+                throws IOException
+            {
+                final Exception cause = failure;
+                if ( result < 0 && cause != null )
+                {
+                    throw new IOException( "Response from " + uri + " failed: " + cause.getMessage(), cause );
+                }
+
+                return result;
+            }
+        }
+    }
+
+}
@@ -0,0 +1,124 @@
+package org.commonjava.util.http.client;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.conn.ClientConnectionManager;
+import org.commonjava.util.logging.Logger;
+
+/**
+ * Background eviction of expired and idle pooled connections, so request threads never pay for it.
+ */
+public class IdleConnectionReaper
+{
+
+    public static final long DEFAULT_INTERVAL_MILLIS = TimeUnit.SECONDS.toMillis( 5 );
+
+    public static final long DEFAULT_IDLE_TIMEOUT_MILLIS = TimeUnit.SECONDS.toMillis( 30 );
+
+    private final Logger logger = new Logger( getClass() );
+
+    private final ClientConnectionManager connectionManager;
+
+    private final ScheduledExecutorService executor;
+
+    private long intervalMillis;
+
+    private volatile long idleTimeoutMillis;
+
+    private ScheduledFuture<?> task;
+
+    public IdleConnectionReaper( final ClientConnectionManager connectionManager )
+    {
+        this( connectionManager, DEFAULT_INTERVAL_MILLIS, DEFAULT_IDLE_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS );
+    }
+
+    public IdleConnectionReaper( final ClientConnectionManager connectionManager, final long interval,
+                                 final long idleTimeout, final TimeUnit unit )
+    {
+        this.connectionManager = connectionManager;
+        this.intervalMillis = unit.toMillis( interval );
+        this.idleTimeoutMillis = unit.toMillis( idleTimeout );
+        this.executor = Executors.newSingleThreadScheduledExecutor( new ThreadFactory()
+        {
+            @Override
+            public Thread newThread( final Runnable r )
+            {
+                final Thread t = new Thread( r, "http-idle-connection-reaper" );
+                t.setDaemon( true );
+                return t;
+            }
+        } );
+    }
+
+    public synchronized IdleConnectionReaper start()
+    {
+        if ( task == null && !executor.isShutdown() )
+        {
+            task = executor.scheduleWithFixedDelay( new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    reap();
+                }
+            }, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS );
+        }
+
+        return this;
+    }
+
+    public void reap()
+    {
+        try
+        {
+            connectionManager.closeExpiredConnections();
+            connectionManager.closeIdleConnections( idleTimeoutMillis, TimeUnit.MILLISECONDS );
+        }
+        catch ( final RuntimeException e )
+        {
+            logger.error( "Failed to evict idle / expired connections: %s", e, e.getMessage() );
+        }
+    }
+
+    /**
+     * Change the eviction interval and idle timeout. A running reaper is rescheduled with the new interval.
+     */
+    public synchronized void setSchedule( final long interval, final long idleTimeout, final TimeUnit unit )
+    {
+        this.intervalMillis = unit.toMillis( interval );
+        this.idleTimeoutMillis = unit.toMillis( idleTimeout );
+
+        if ( task != null )
+        {
+            task.cancel( false );
+            task = null;
+            start();
+        }
+    }
+
+    public synchronized long getIntervalMillis()
+    {
+        return intervalMillis;
+    }
+
+    public long getIdleTimeoutMillis()
+    {
+        return idleTimeoutMillis;
+    }
+
+    public synchronized void shutdown()
+    {
+        if ( task != null )
+        {
+            task.cancel( false );
+            task = null;
+        }
+
+        executor.shutdownNow();
+    }
+
+}
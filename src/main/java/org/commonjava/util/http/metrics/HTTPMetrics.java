@@ -0,0 +1,33 @@
+package org.commonjava.util.http.metrics;
+
+import org.apache.http.conn.routing.HttpRoute;
+
+/**
+ * Receives timing events from the connection pool and SSL layer. Implementations must be thread-safe and cheap: every
+ * method is called inline on the request path. {@link InMemoryHTTPMetrics} is the default.
+ */
+public interface HTTPMetrics
+{
+
+    /**
+     * A caller waited for a pooled connection to the route; leased is false if the wait timed out or was aborted.
+     */
+    void leaseCompleted( HttpRoute route, long waitNanos, boolean leased );
+
+    /**
+     * TLS connection set up for the scope ("host:port"), covering TCP connect plus handshake.
+     */
+    void handshakeCompleted( String scope, long durationNanos, boolean success );
+
+    /**
+     * Certificate chain checked by the trust manager of the {@link org.commonjava.util.http.ssl.SSLManager}'s context.
+     */
+    void trustChecked( boolean server, long durationNanos, boolean trusted );
+
+    /**
+     * Event statistics gathered so far. Pool and cache gauges are added by
+     * {@link org.commonjava.util.http.client.HTTPClient#getMetricsSnapshot()}.
+     */
+    MetricsSnapshot snapshot();
+
+}
@@ -0,0 +1,99 @@
+package org.commonjava.util.http.metrics;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.http.conn.routing.HttpRoute;
+
+/**
+ * Default {@link HTTPMetrics}: cumulative counters held in memory since creation. Per-route and per-scope statistics
+ * are capped at {@link #MAX_KEYS} distinct keys; events for further keys are only counted in
+ * {@link #OVERFLOW_SCOPE} (handshakes) or dropped (lease waits).
+ */
+public class InMemoryHTTPMetrics
+    implements HTTPMetrics
+{
+
+    public static final int MAX_KEYS = 1024;
+
+    public static final String OVERFLOW_SCOPE = "*";
+
+    private final ConcurrentMap<HttpRoute, TimingStats> leaseWaits = new ConcurrentHashMap<HttpRoute, TimingStats>();
+
+    private final ConcurrentMap<String, TimingStats> handshakes = new ConcurrentHashMap<String, TimingStats>();
+
+    private final TimingStats serverTrustChecks = new TimingStats();
+
+    private final TimingStats clientTrustChecks = new TimingStats();
+
+    @Override
+    public void leaseCompleted( final HttpRoute route, final long waitNanos, final boolean leased )
+    {
+        final TimingStats stats = statsFor( leaseWaits, route );
+        if ( stats != null )
+        {
+            stats.record( waitNanos, leased );
+        }
+    }
+
+    @Override
+    public void handshakeCompleted( final String scope, final long durationNanos, final boolean success )
+    {
+        TimingStats stats = statsFor( handshakes, scope == null ? OVERFLOW_SCOPE : scope );
+        if ( stats == null )
+        {
+            stats = statsFor( handshakes, OVERFLOW_SCOPE );
+        }
+
+        stats.record( durationNanos, success );
+    }
+
+    @Override
+    public void trustChecked( final boolean server, final long durationNanos, final boolean trusted )
+    {
+        ( server ? serverTrustChecks : clientTrustChecks ).record( durationNanos, trusted );
+    }
+
+    @Override
+    public MetricsSnapshot snapshot()
+    {
+        return new MetricsSnapshot( snapshot( leaseWaits ), snapshot( handshakes ), serverTrustChecks.snapshot(),
+                                    clientTrustChecks.snapshot() );
+    }
+
+    private static <K> TimingStats statsFor( final ConcurrentMap<K, TimingStats> map, final K key )
+    {
+        TimingStats stats = map.get( key );
+        if ( stats == null )
+        {
+            if ( map.size() >= MAX_KEYS && !OVERFLOW_SCOPE.equals( key ) )
+            {
+                return null;
+            }
+
+            final TimingStats created = new TimingStats();
+            stats = map.putIfAbsent( key, created );
+            if ( stats == null )
+            {
+                stats = created;
+            }
+        }
+
+        return stats;
+    }
+
+    private static <K> Map<K, TimingSnapshot> snapshot( final Map<K, TimingStats> map )
+    {
+        final Map<K, TimingSnapshot> result = new HashMap<K, TimingSnapshot>();
+        for ( final Map.Entry<K, TimingStats> entry : map.entrySet() )
+        {
+            result.put( entry.getKey(), entry.getValue()
+                                             .snapshot() );
+        }
+
+        return result;
+    }
+
+}
@@ -0,0 +1,64 @@
+package org.commonjava.util.http.metrics;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.conn.ClientConnectionRequest;
+import org.apache.http.conn.ConnectionPoolTimeoutException;
+import org.apache.http.conn.ManagedClientConnection;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.impl.conn.PoolingClientConnectionManager;
+
+/**
+ * {@link PoolingClientConnectionManager} that reports how long each caller waited to lease a connection.
+ */
+public class MeteredConnectionManager
+    extends PoolingClientConnectionManager
+{
+
+    private final HTTPMetrics metrics;
+
+    public MeteredConnectionManager( final HTTPMetrics metrics )
+    {
+        this.metrics = metrics;
+    }
+
+    @Override
+    public ClientConnectionRequest requestConnection( final HttpRoute route, final Object state )
+    {
+        final ClientConnectionRequest request = super.requestConnection( route, state );
+
+        return new ClientConnectionRequest()
+        {
+            @Override
+            public ManagedClientConnection getConnection( final long timeout, final TimeUnit unit )
+                throws InterruptedException, ConnectionPoolTimeoutException
+            {
+                final long start = System.nanoTime();
+                boolean leased = false;
+                try
+                {
+                    final ManagedClientConnection conn = request.getConnection( timeout, unit );
+                    leased = true;
+
+                    return conn;
+                }
+                finally
+                {
+                    metrics.leaseCompleted( route, System.nanoTime() - start, leased );
+                }
+            }
+
+            @Override
+            public void abortRequest()
+            {
+                request.abortRequest();
+            }
+        };
+    }
+
+    public HTTPMetrics getMetrics()
+    {
+        return metrics;
+    }
+
+}
@@ -0,0 +1,98 @@
+package org.commonjava.util.http.metrics;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.UnknownHostException;
+
+import org.apache.http.auth.AuthScope;
+import org.apache.http.conn.ConnectTimeoutException;
+import org.apache.http.conn.scheme.SchemeLayeredSocketFactory;
+import org.apache.http.params.HttpParams;
+import org.commonjava.util.http.client.HTTPClient;
+
+/**
+ * Wraps the TLS socket factory registered for https and reports connection setup (connect plus handshake) time per
+ * scope.
+ */
+public class MeteredSocketFactory
+    implements SchemeLayeredSocketFactory
+{
+
+    private final SchemeLayeredSocketFactory delegate;
+
+    private final HTTPMetrics metrics;
+
+    public MeteredSocketFactory( final SchemeLayeredSocketFactory delegate, final HTTPMetrics metrics )
+    {
+        this.delegate = delegate;
+        this.metrics = metrics;
+    }
+
+    @Override
+    public Socket createSocket( final HttpParams params )
+        throws IOException
+    {
+        return delegate.createSocket( params );
+    }
+
+    @Override
+    public Socket connectSocket( final Socket sock, final InetSocketAddress remoteAddress,
+                                 final InetSocketAddress localAddress, final HttpParams params )
+        throws IOException, UnknownHostException, ConnectTimeoutException
+    {
+        final long start = System.nanoTime();
+        boolean success = false;
+        try
+        {
+            final Socket socket = delegate.connectSocket( sock, remoteAddress, localAddress, params );
+            success = true;
+
+            return socket;
+        }
+        finally
+        {
+            metrics.handshakeCompleted( scope( params, remoteAddress.getHostString(), remoteAddress.getPort() ),
+                                        System.nanoTime() - start, success );
+        }
+    }
+
+    @Override
+    public Socket createLayeredSocket( final Socket socket, final String target, final int port,
+                                       final HttpParams params )
+        throws IOException, UnknownHostException
+    {
+        final long start = System.nanoTime();
+        boolean success = false;
+        try
+        {
+            final Socket layered = delegate.createLayeredSocket( socket, target, port, params );
+            success = true;
+
+            return layered;
+        }
+        finally
+        {
+            metrics.handshakeCompleted( scope( params, target, port ), System.nanoTime() - start, success );
+        }
+    }
+
+    @Override
+    public boolean isSecure( final Socket sock )
+        throws IllegalArgumentException
+    {
+        return delegate.isSecure( sock );
+    }
+
+    private static String scope( final HttpParams params, final String host, final int port )
+    {
+        final Object scope = params == null ? null : params.getParameter( HTTPClient.AUTH_SCOPE_PARAM );
+        if ( scope instanceof AuthScope )
+        {
+            return ( (AuthScope) scope ).getHost() + ":" + ( (AuthScope) scope ).getPort();
+        }
+
+        return host + ":" + port;
+    }
+
+}
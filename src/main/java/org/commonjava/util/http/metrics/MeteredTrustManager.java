@@ -0,0 +1,145 @@
+package org.commonjava.util.http.metrics;
+
+import java.net.Socket;
+import java.security.cert.CertificateException;
+import java.security.cert.X509Certificate;
+
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.X509ExtendedTrustManager;
+import javax.net.ssl.X509TrustManager;
+
+import org.commonjava.util.http.ssl.SSLUtils;
+
+/**
+ * Reports the latency and outcome of every chain check made by the wrapped trust manager. The socket and engine
+ * overloads are forwarded as such (see {@link SSLUtils#checkServerTrusted(X509TrustManager, X509Certificate[], String,
+ * Socket)}), so wrapping doesn't turn off JSSE's endpoint identification.
+ */
+public class MeteredTrustManager
+    extends X509ExtendedTrustManager
+{
+
+    private final X509TrustManager delegate;
+
+    private final HTTPMetrics metrics;
+
+    public MeteredTrustManager( final X509TrustManager delegate, final HTTPMetrics metrics )
+    {
+        this.delegate = delegate;
+        this.metrics = metrics;
+    }
+
+    @Override
+    public void checkClientTrusted( final X509Certificate[] chain, final String authType )
+        throws CertificateException
+    {
+        final long start = System.nanoTime();
+        boolean trusted = false;
+        try
+        {
+            delegate.checkClientTrusted( chain, authType );
+            trusted = true;
+        }
+        finally
+        {
+            metrics.trustChecked( false, System.nanoTime() - start, trusted );
+        }
+    }
+
+    @Override
+    public void checkClientTrusted( final X509Certificate[] chain, final String authType, final Socket socket )
+        throws CertificateException
+    {
+        final long start = System.nanoTime();
+        boolean trusted = false;
+        try
+        {
+            SSLUtils.checkClientTrusted( delegate, chain, authType, socket );
+            trusted = true;
+        }
+        finally
+        {
+            metrics.trustChecked( false, System.nanoTime() - start, trusted );
+        }
+    }
+
+    @Override
+    public void checkClientTrusted( final X509Certificate[] chain, final String authType, final SSLEngine engine )
+        throws CertificateException
+    {
+        final long start = System.nanoTime();
+        boolean trusted = false;
+        try
+        {
+            SSLUtils.checkClientTrusted( delegate, chain, authType, engine );
+            trusted = true;
+        }
+        finally
+        {
+            metrics.trustChecked( false, System.nanoTime() - start, trusted );
+        }
+    }
+
+    @Override
+    public void checkServerTrusted( final X509Certificate[] chain, final String authType )
+        throws CertificateException
+    {
+        final long start = System.nanoTime();
+        boolean trusted = false;
+        try
+        {
+            delegate.checkServerTrusted( chain, authType );
+            trusted = true;
+        }
+        finally
+        {
+            metrics.trustChecked( true, System.nanoTime() - start, trusted );
+        }
+    }
+
+    @Override
+    public void checkServerTrusted( final X509Certificate[] chain, final String authType, final Socket socket )
+        throws CertificateException
+    {
+        final long start = System.nanoTime();
+        boolean trusted = false;
+        try
+        {
+            SSLUtils.checkServerTrusted( delegate, chain, authType, socket );
+            trusted = true;
+        }
+        finally
+        {
+            metrics.trustChecked( true, System.nanoTime() - start, trusted );
+        }
+    }
+
+    @Override
+    public void checkServerTrusted( final X509Certificate[] chain, final String authType, final SSLEngine engine )
+        throws CertificateException
+    {
+        final long start = System.nanoTime();
+        boolean trusted = false;
+        try
+        {
+            SSLUtils.checkServerTrusted( delegate, chain, authType, engine );
+            trusted = true;
+        }
+        finally
+        {
+            metrics.trustChecked( true, System.nanoTime() - start, trusted );
+        }
+    }
+
+    @Override
+    public X509Certificate[] getAcceptedIssuers()
+    {
+        return delegate.getAcceptedIssuers();
+    }
+
+    public X509TrustManager getDelegate()
+    {
+        return delegate;
+    }
+
+}
@@ -0,0 +1,130 @@
+package org.commonjava.util.http.metrics;
+
+import java.util.Collections;
+import java.util.Map;
+
+import org.apache.http.conn.routing.HttpRoute;
+
+/**
+ * Immutable view of the client's metrics at one instant: timed events from {@link HTTPMetrics}, plus pool occupancy
+ * and SSL factory cache counters read when the snapshot is taken.
+ */
+public final class MetricsSnapshot
+{
+
+    private final long timestamp;
+
+    private final Map<HttpRoute, TimingSnapshot> leaseWaits;
+
+    private final Map<String, TimingSnapshot> handshakes;
+
+    private final TimingSnapshot serverTrustChecks;
+
+    private final TimingSnapshot clientTrustChecks;
+
+    private final PoolSnapshot totalPool;
+
+    private final Map<HttpRoute, PoolSnapshot> routePools;
+
+    private final long factoryCacheHits;
+
+    private final long factoryCacheMisses;
+
+    public MetricsSnapshot( final Map<HttpRoute, TimingSnapshot> leaseWaits,
+                            final Map<String, TimingSnapshot> handshakes, final TimingSnapshot serverTrustChecks,
+                            final TimingSnapshot clientTrustChecks )
+    {
+        this( System.currentTimeMillis(), leaseWaits, handshakes, serverTrustChecks, clientTrustChecks, null,
+              Collections.<HttpRoute, PoolSnapshot> emptyMap(), 0, 0 );
+    }
+
+    private MetricsSnapshot( final long timestamp, final Map<HttpRoute, TimingSnapshot> leaseWaits,
+                             final Map<String, TimingSnapshot> handshakes, final TimingSnapshot serverTrustChecks,
+                             final TimingSnapshot clientTrustChecks, final PoolSnapshot totalPool,
+                             final Map<HttpRoute, PoolSnapshot> routePools, final long factoryCacheHits,
+                             final long factoryCacheMisses )
+    {
+        this.timestamp = timestamp;
+        this.leaseWaits = Collections.unmodifiableMap( leaseWaits );
+        this.handshakes = Collections.unmodifiableMap( handshakes );
+        this.serverTrustChecks = serverTrustChecks;
+        this.clientTrustChecks = clientTrustChecks;
+        this.totalPool = totalPool;
+        this.routePools = Collections.unmodifiableMap( routePools );
+        this.factoryCacheHits = factoryCacheHits;
+        this.factoryCacheMisses = factoryCacheMisses;
+    }
+
+    public MetricsSnapshot withPools( final PoolSnapshot totalPool, final Map<HttpRoute, PoolSnapshot> routePools )
+    {
+        return new MetricsSnapshot( timestamp, leaseWaits, handshakes, serverTrustChecks, clientTrustChecks,
+                                    totalPool, routePools, factoryCacheHits, factoryCacheMisses );
+    }
+
+    public MetricsSnapshot withFactoryCache( final long hits, final long misses )
+    {
+        return new MetricsSnapshot( timestamp, leaseWaits, handshakes, serverTrustChecks, clientTrustChecks,
+                                    totalPool, routePools, hits, misses );
+    }
+
+    public long getTimestamp()
+    {
+        return timestamp;
+    }
+
+    public Map<HttpRoute, TimingSnapshot> getLeaseWaits()
+    {
+        return leaseWaits;
+    }
+
+    public Map<String, TimingSnapshot> getHandshakes()
+    {
+        return handshakes;
+    }
+
+    public TimingSnapshot getServerTrustChecks()
+    {
+        return serverTrustChecks;
+    }
+
+    public TimingSnapshot getClientTrustChecks()
+    {
+        return clientTrustChecks;
+    }
+
+    /**
+     * Whole-pool occupancy, or null if the connection manager doesn't report it.
+     */
+    public PoolSnapshot getTotalPool()
+    {
+        return totalPool;
+    }
+
+    /**
+     * Occupancy of every route that has leased a connection or has a configured limit.
+     */
+    public Map<HttpRoute, PoolSnapshot> getRoutePools()
+    {
+        return routePools;
+    }
+
+    public long getFactoryCacheHits()
+    {
+        return factoryCacheHits;
+    }
+
+    public long getFactoryCacheMisses()
+    {
+        return factoryCacheMisses;
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format( "MetricsSnapshot [pool: %s, routes: %s, lease waits: %s, handshakes: %s, "
+            + "server trust checks: %s, client trust checks: %s, factory cache: %d hits / %d misses]", totalPool,
+                              routePools, leaseWaits, handshakes, serverTrustChecks, clientTrustChecks,
+                              factoryCacheHits, factoryCacheMisses );
+    }
+
+}
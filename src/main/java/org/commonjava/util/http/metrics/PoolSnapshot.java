@@ -0,0 +1,61 @@
+package org.commonjava.util.http.metrics;
+
+import org.apache.http.pool.PoolStats;
+
+/**
+ * Connection pool occupancy at one instant, for a single route or the whole pool.
+ */
+public final class PoolSnapshot
+{
+
+    private final int leased;
+
+    private final int available;
+
+    private final int pending;
+
+    private final int max;
+
+    public PoolSnapshot( final int leased, final int available, final int pending, final int max )
+    {
+        this.leased = leased;
+        this.available = available;
+        this.pending = pending;
+        this.max = max;
+    }
+
+    public PoolSnapshot( final PoolStats stats )
+    {
+        this( stats.getLeased(), stats.getAvailable(), stats.getPending(), stats.getMax() );
+    }
+
+    public int getLeased()
+    {
+        return leased;
+    }
+
+    public int getAvailable()
+    {
+        return available;
+    }
+
+    /**
+     * Callers currently waiting for a connection. Non-zero together with leased == max means the pool is starved.
+     */
+    public int getPending()
+    {
+        return pending;
+    }
+
+    public int getMax()
+    {
+        return max;
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format( "leased=%d, available=%d, pending=%d, max=%d", leased, available, pending, max );
+    }
+
+}
@@ -0,0 +1,59 @@
+package org.commonjava.util.http.metrics;
+
+import java.util.concurrent.TimeUnit;
+
+public final class TimingSnapshot
+{
+
+    public static final TimingSnapshot EMPTY = new TimingSnapshot( 0, 0, 0, 0 );
+
+    private final long count;
+
+    private final long failures;
+
+    private final long totalNanos;
+
+    private final long maxNanos;
+
+    public TimingSnapshot( final long count, final long failures, final long totalNanos, final long maxNanos )
+    {
+        this.count = count;
+        this.failures = failures;
+        this.totalNanos = totalNanos;
+        this.maxNanos = maxNanos;
+    }
+
+    public long getCount()
+    {
+        return count;
+    }
+
+    public long getFailures()
+    {
+        return failures;
+    }
+
+    public long getTotalNanos()
+    {
+        return totalNanos;
+    }
+
+    public long getMaxNanos()
+    {
+        return maxNanos;
+    }
+
+    public long getMeanNanos()
+    {
+        return count == 0 ? 0 : totalNanos / count;
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format( "count=%d, failures=%d, mean=%dus, max=%dus", count, failures,
+                              TimeUnit.NANOSECONDS.toMicros( getMeanNanos() ),
+                              TimeUnit.NANOSECONDS.toMicros( maxNanos ) );
+    }
+
+}
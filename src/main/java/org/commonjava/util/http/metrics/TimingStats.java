@@ -0,0 +1,41 @@
+package org.commonjava.util.http.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock-free count / failure / total / max accumulator for one kind of timed event.
+ */
+public final class TimingStats
+{
+
+    private final AtomicLong count = new AtomicLong();
+
+    private final AtomicLong failures = new AtomicLong();
+
+    private final AtomicLong totalNanos = new AtomicLong();
+
+    private final AtomicLong maxNanos = new AtomicLong();
+
+    public void record( final long nanos, final boolean success )
+    {
+        count.incrementAndGet();
+        if ( !success )
+        {
+            failures.incrementAndGet();
+        }
+
+        totalNanos.addAndGet( nanos );
+
+        long max = maxNanos.get();
+        while ( nanos > max && !maxNanos.compareAndSet( max, nanos ) )
+        {
+            max = maxNanos.get();
+        }
+    }
+
+    public TimingSnapshot snapshot()
+    {
+        return new TimingSnapshot( count.get(), failures.get(), totalNanos.get(), maxNanos.get() );
+    }
+
+}
@@ -0,0 +1,126 @@
+package org.commonjava.util.http.ssl;
+
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.http.auth.AuthScope;
+
+/**
+ * Encodes {@link AuthScope}s into keystore aliases of the form <code>client::host:port</code> /
+ * <code>server::host:port</code>, and parses them back without regular expressions. Both directions are cached, so the
+ * aliases looked up repeatedly during handshakes are encoded and parsed only once.
+ * <p>
+ * Hosts are lowercased, as {@link AuthScope} does and as JKS / PKCS12 keystores do with their aliases, so an alias
+ * built from a peer host as typed in a URL matches the one the keystore holds.
+ */
+public final class AliasCodec
+{
+
+    public static final String CLIENT_PREFIX = "client::";
+
+    public static final String SERVER_PREFIX = "server::";
+
+    private static final String PREFIX_SEPARATOR = "::";
+
+    private static final int MAX_CACHED = 4096;
+
+    private static final ConcurrentMap<String, AuthScope> SCOPES = new ConcurrentHashMap<String, AuthScope>();
+
+    private static final ConcurrentMap<AuthScope, String> CLIENT_ALIASES = new ConcurrentHashMap<AuthScope, String>();
+
+    private static final ConcurrentMap<AuthScope, String> SERVER_ALIASES = new ConcurrentHashMap<AuthScope, String>();
+
+    private AliasCodec()
+    {
+    }
+
+    public static String encode( final AuthScope scope, final boolean client )
+    {
+        final ConcurrentMap<AuthScope, String> cache = client ? CLIENT_ALIASES : SERVER_ALIASES;
+
+        String alias = cache.get( scope );
+        if ( alias == null )
+        {
+            alias = encode( scope.getHost(), scope.getPort(), client );
+            if ( cache.size() < MAX_CACHED )
+            {
+                cache.putIfAbsent( scope, alias );
+            }
+        }
+
+        return alias;
+    }
+
+    public static String encode( final String host, final int port, final boolean client )
+    {
+        final String prefix = client ? CLIENT_PREFIX : SERVER_PREFIX;
+        final String h = String.valueOf( host )
+                               .toLowerCase( Locale.ROOT );
+
+        return new StringBuilder( prefix.length() + h.length() + 6 ).append( prefix )
+                                                                     .append( h )
+                                                                     .append( ':' )
+                                                                     .append( port )
+                                                                     .toString();
+    }
+
+    /**
+     * Parse an alias of the form <code>prefix::host:port</code>. Returns null for anything else (e.g. the subject-DN
+     * aliases also stored in our keystores).
+     */
+    public static AuthScope decode( final String alias )
+    {
+        if ( alias == null )
+        {
+            return null;
+        }
+
+        AuthScope scope = SCOPES.get( alias );
+        if ( scope == null )
+        {
+            scope = parse( alias );
+            if ( scope != null && SCOPES.size() < MAX_CACHED )
+            {
+                SCOPES.putIfAbsent( alias, scope );
+            }
+        }
+
+        return scope;
+    }
+
+    static AuthScope parse( final String alias )
+    {
+        final int sep = alias.indexOf( PREFIX_SEPARATOR );
+        if ( sep < 1 )
+        {
+            return null;
+        }
+
+        final int hostStart = sep + PREFIX_SEPARATOR.length();
+        final int colon = alias.lastIndexOf( ':' );
+        if ( colon <= hostStart || colon == alias.length() - 1 )
+        {
+            return null;
+        }
+
+        int port = 0;
+        for ( int i = colon + 1; i < alias.length(); i++ )
+        {
+            final char c = alias.charAt( i );
+            if ( c < '0' || c > '9' )
+            {
+                return null;
+            }
+
+            port = port * 10 + ( c - '0' );
+            if ( port > 0xFFFF )
+            {
+                return null;
+            }
+        }
+
+        return new AuthScope( alias.substring( hostStart, colon ), port );
+    }
+
+}
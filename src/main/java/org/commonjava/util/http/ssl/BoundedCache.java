@@ -0,0 +1,408 @@
+package org.commonjava.util.http.ssl;
+
+import java.util.Iterator;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Size- and TTL-bounded cache. Once {@link #getMaxSize()} is reached, inserts evict the oldest entry that has not been
+ * used since it was last considered (CLOCK approximation of least-recently-used, constant amortized cost).
+ * Entries whose values are still being built are never evicted. Entries expire {@link #getTtlMillis()} after creation
+ * (or earlier, if given an explicit expiry).
+ * <p>
+ * Lookups take no locks. When several threads miss on the same key at once, one of them builds the value and the
+ * others wait for that result; threads resolving different keys never wait on each other.
+ */
+public class BoundedCache<K, V>
+{
+
+    private final int maxSize;
+
+    private final long ttlMillis;
+
+    private final ConcurrentMap<K, CachedValue<K, V>> entries;
+
+    /**
+     * Entries in the order they are considered for eviction. May also hold entries already removed from the map;
+     * those are dropped when reached.
+     */
+    private final ConcurrentLinkedQueue<CachedValue<K, V>> order = new ConcurrentLinkedQueue<CachedValue<K, V>>();
+
+    private final AtomicInteger queued = new AtomicInteger();
+
+    private final AtomicLong hits = new AtomicLong();
+
+    private final AtomicLong misses = new AtomicLong();
+
+    private final AtomicLong evictions = new AtomicLong();
+
+    private final AtomicLong expirations = new AtomicLong();
+
+    public BoundedCache( final int maxSize, final long ttl, final TimeUnit unit )
+    {
+        if ( maxSize < 1 )
+        {
+            throw new IllegalArgumentException( "Cache size must be at least 1!" );
+        }
+
+        this.maxSize = maxSize;
+        this.ttlMillis = unit.toMillis( ttl );
+        this.entries = new ConcurrentHashMap<K, CachedValue<K, V>>( Math.min( maxSize, 64 ) );
+    }
+
+    /**
+     * Return the cached value, or null if it is missing, expired, or still being built by another thread.
+     */
+    public V get( final K key )
+    {
+        final long now = System.currentTimeMillis();
+        final CachedValue<K, V> entry = lookup( key, now );
+        if ( entry == null || !entry.task.isDone() )
+        {
+            misses.incrementAndGet();
+            return null;
+        }
+
+        try
+        {
+            final V value = entry.task.get();
+            hits.incrementAndGet();
+            entry.referenced = true;
+            return value;
+        }
+        catch ( final InterruptedException e )
+        {
+            Thread.currentThread()
+                  .interrupt();
+        }
+        catch ( final ExecutionException e )
+        {
+            entries.remove( key, entry );
+        }
+
+        misses.incrementAndGet();
+        return null;
+    }
+
+    /**
+     * Return the cached value, building it with the given {@link Callable} on a miss. Failures are not cached; they
+     * surface as an {@link ExecutionException} wrapping the builder's exception.
+     */
+    public V get( final K key, final Callable<? extends V> builder )
+        throws ExecutionException
+    {
+        final long now = System.currentTimeMillis();
+
+        CachedValue<K, V> entry = lookup( key, now );
+        if ( entry == null )
+        {
+            final CachedValue<K, V> created =
+                new CachedValue<K, V>( key, new FutureTask<V>( new Callable<V>()
+                {
+                    @Override
+                    public V call()
+                        throws Exception
+                    {
+                        return builder.call();
+                    }
+                } ), expiry( now ) );
+
+            entry = entries.putIfAbsent( key, created );
+            if ( entry == null )
+            {
+                misses.incrementAndGet();
+
+                entry = created;
+                added( entry );
+                entry.task.run();
+            }
+            else
+            {
+                hits.incrementAndGet();
+                entry.referenced = true;
+            }
+        }
+        else
+        {
+            hits.incrementAndGet();
+            entry.referenced = true;
+        }
+
+        try
+        {
+            return entry.task.get();
+        }
+        catch ( final InterruptedException e )
+        {
+            Thread.currentThread()
+                  .interrupt();
+            throw new ExecutionException( "Interrupted while waiting for cached value: " + key, e );
+        }
+        catch ( final ExecutionException e )
+        {
+            entries.remove( key, entry );
+            throw e;
+        }
+    }
+
+    public void put( final K key, final V value )
+    {
+        put( key, value, Long.MAX_VALUE );
+    }
+
+    /**
+     * Cache a value that must not outlive the given absolute time (millis since the epoch), even if the cache TTL is
+     * longer.
+     */
+    public void put( final K key, final V value, final long expiresAt )
+    {
+        final long now = System.currentTimeMillis();
+        final FutureTask<V> task = new FutureTask<V>( new Callable<V>()
+        {
+            @Override
+            public V call()
+            {
+                return value;
+            }
+        } );
+        task.run();
+
+        final CachedValue<K, V> entry = new CachedValue<K, V>( key, task, Math.min( expiresAt, expiry( now ) ) );
+
+        entries.put( key, entry );
+        added( entry );
+    }
+
+    public V remove( final K key )
+    {
+        final CachedValue<K, V> entry = entries.remove( key );
+        if ( entry == null || !entry.task.isDone() )
+        {
+            return null;
+        }
+
+        try
+        {
+            return entry.task.get();
+        }
+        catch ( final InterruptedException e )
+        {
+            Thread.currentThread()
+                  .interrupt();
+        }
+        catch ( final ExecutionException e )
+        {
+        }
+
+        return null;
+    }
+
+    private long expiry( final long now )
+    {
+        return ttlMillis >= Long.MAX_VALUE - now ? Long.MAX_VALUE : now + ttlMillis;
+    }
+
+    private CachedValue<K, V> lookup( final K key, final long now )
+    {
+        final CachedValue<K, V> entry = entries.get( key );
+        if ( entry != null && entry.isExpired( now ) )
+        {
+            if ( entries.remove( key, entry ) )
+            {
+                expirations.incrementAndGet();
+            }
+
+            return null;
+        }
+
+        return entry;
+    }
+
+    private void added( final CachedValue<K, V> entry )
+    {
+        order.offer( entry );
+        if ( queued.incrementAndGet() > 2 * maxSize )
+        {
+            dropStale();
+        }
+
+        if ( entries.size() > maxSize )
+        {
+            evictOverflow( entry );
+        }
+    }
+
+    /**
+     * CLOCK sweep from the head of the queue: referenced entries have the flag cleared and go to the back, unreferenced
+     * ones are evicted, until the cache fits. Two passes are enough to evict anything not used in between; entries
+     * still being built (and the one just added) are skipped, so if nothing else is left the sweep gives up after two
+     * passes and the cache stays over size until those finish.
+     */
+    private void evictOverflow( final CachedValue<K, V> keep )
+    {
+        synchronized ( order )
+        {
+            int budget = 2 * queued.get() + 1;
+            while ( entries.size() > maxSize && budget-- > 0 )
+            {
+                final CachedValue<K, V> entry = order.poll();
+                if ( entry == null )
+                {
+                    return;
+                }
+
+                if ( entries.get( entry.key ) != entry )
+                {
+                    queued.decrementAndGet();
+                    continue;
+                }
+
+                if ( entry == keep || !entry.task.isDone() )
+                {
+                    order.offer( entry );
+                    continue;
+                }
+
+                if ( entry.referenced )
+                {
+                    entry.referenced = false;
+                    order.offer( entry );
+                    continue;
+                }
+
+                queued.decrementAndGet();
+                if ( entries.remove( entry.key, entry ) )
+                {
+                    evictions.incrementAndGet();
+                }
+            }
+        }
+    }
+
+    /**
+     * Drop queued entries that were removed, replaced or expired out of the map, so the queue stays proportional to
+     * the cache size.
+     */
+    private void dropStale()
+    {
+        synchronized ( order )
+        {
+            for ( final Iterator<CachedValue<K, V>> it = order.iterator(); it.hasNext(); )
+            {
+                final CachedValue<K, V> entry = it.next();
+                if ( entries.get( entry.key ) != entry )
+                {
+                    it.remove();
+                    queued.decrementAndGet();
+                }
+            }
+        }
+    }
+
+    public void purgeExpired()
+    {
+        final long now = System.currentTimeMillis();
+        for ( final Iterator<CachedValue<K, V>> it = entries.values()
+                                                         .iterator(); it.hasNext(); )
+        {
+            if ( it.next()
+                   .isExpired( now ) )
+            {
+                it.remove();
+                expirations.incrementAndGet();
+            }
+        }
+    }
+
+    public void clear()
+    {
+        synchronized ( order )
+        {
+            entries.clear();
+            order.clear();
+            queued.set( 0 );
+        }
+    }
+
+    public int size()
+    {
+        return entries.size();
+    }
+
+    public int getMaxSize()
+    {
+        return maxSize;
+    }
+
+    public long getTtlMillis()
+    {
+        return ttlMillis;
+    }
+
+    public long getHits()
+    {
+        return hits.get();
+    }
+
+    public long getMisses()
+    {
+        return misses.get();
+    }
+
+    /**
+     * Number of entries removed because the cache was full.
+     */
+    public long getEvictions()
+    {
+        return evictions.get();
+    }
+
+    /**
+     * Number of entries removed because their TTL passed.
+     */
+    public long getExpirations()
+    {
+        return expirations.get();
+    }
+
+    @Override
+    public String toString()
+    {
+        return getClass().getSimpleName() + " [size=" + entries.size() + "/" + maxSize + ", hits=" + hits
+            + ", misses=" + misses + ", evictions=" + evictions + ", expirations=" + expirations + "]";
+    }
+
+    private static final class CachedValue<K, V>
+    {
+        private final K key;
+
+        private final FutureTask<V> task;
+
+        private final long expires;
+
+        /**
+         * Set on every hit, cleared when the eviction sweep passes over the entry.
+         */
+        private volatile boolean referenced;
+
+        CachedValue( final K key, final FutureTask<V> task, final long expires )
+        {
+            this.key = key;
+            this.task = task;
+            this.expires = expires;
+        }
+
+        boolean isExpired( final long now )
+        {
+            return now >= expires;
+        }
+    }
+
+}
@@ -0,0 +1,317 @@
+package org.commonjava.util.http.ssl;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * Single-pass PEM reader. Input is scanned from a fixed byte buffer (or directly from a {@link CharSequence}) and each
+ * block's base64 body is decoded as it is read, so only the current block's DER bytes are held in memory, however many
+ * blocks the input has. Text outside BEGIN / END markers and RFC 1421 headers inside blocks are skipped.
+ * <p>
+ * Block bodies are decoded leniently, like commons-codec's Base64: both the standard and URL-safe alphabets are
+ * accepted, other characters are skipped, decoding stops at the first padding character, and a dangling final
+ * character is dropped. A BEGIN marker without a matching END is an error.
+ */
+public final class PemReader
+    implements Closeable
+{
+
+    private static final String BEGIN = "-----BEGIN ";
+
+    private static final String END = "-----END";
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private static final byte[] DECODE = new byte[128];
+
+    static
+    {
+        Arrays.fill( DECODE, (byte) -1 );
+
+        final String alphabet = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/";
+        for ( int i = 0; i < alphabet.length(); i++ )
+        {
+            DECODE[alphabet.charAt( i )] = (byte) i;
+        }
+
+        DECODE['-'] = 62;
+        DECODE['_'] = 63;
+    }
+
+    /**
+     * One decoded PEM block, e.g. type "CERTIFICATE" or "PRIVATE KEY".
+     */
+    public static final class PemObject
+    {
+        private final String type;
+
+        private final byte[] content;
+
+        PemObject( final String type, final byte[] content )
+        {
+            this.type = type;
+            this.content = content;
+        }
+
+        public String getType()
+        {
+            return type;
+        }
+
+        public byte[] getContent()
+        {
+            return content;
+        }
+    }
+
+    private final InputStream in;
+
+    private final CharSequence text;
+
+    private final byte[] buffer;
+
+    private int pos;
+
+    private int limit;
+
+    private char[] line = new char[128];
+
+    private int lineLength;
+
+    private byte[] out = new byte[2048];
+
+    private int outLength;
+
+    private int quad;
+
+    private int quadCount;
+
+    private boolean padded;
+
+    public PemReader( final InputStream in )
+    {
+        this.in = in;
+        this.text = null;
+        this.buffer = new byte[BUFFER_SIZE];
+    }
+
+    public PemReader( final CharSequence text )
+    {
+        this.in = null;
+        this.text = text;
+        this.buffer = null;
+        this.limit = text.length();
+    }
+
+    /**
+     * Read and decode the next block, or return null at the end of the input.
+     */
+    public PemObject next()
+        throws IOException
+    {
+        String type = null;
+        while ( readLine() )
+        {
+            if ( type == null )
+            {
+                if ( lineStartsWith( BEGIN ) )
+                {
+                    type = blockType();
+                    outLength = 0;
+                    quad = 0;
+                    quadCount = 0;
+                    padded = false;
+                }
+            }
+            else if ( lineStartsWith( END ) )
+            {
+                flushPartial();
+                return new PemObject( type, Arrays.copyOf( out, outLength ) );
+            }
+            else if ( !padded && !isHeaderLine() )
+            {
+                decodeLine();
+            }
+        }
+
+        if ( type != null )
+        {
+            throw new IOException( "Unterminated PEM block: " + type );
+        }
+
+        return null;
+    }
+
+    @Override
+    public void close()
+        throws IOException
+    {
+        if ( in != null )
+        {
+            in.close();
+        }
+    }
+
+    private boolean readLine()
+        throws IOException
+    {
+        lineLength = 0;
+        int c;
+        boolean read = false;
+        while ( ( c = read() ) != -1 )
+        {
+            read = true;
+            if ( c == '\n' )
+            {
+                break;
+            }
+
+            if ( c == '\r' || ( lineLength == 0 && ( c == ' ' || c == '\t' ) ) )
+            {
+                continue;
+            }
+
+            if ( lineLength == line.length )
+            {
+                line = Arrays.copyOf( line, lineLength * 2 );
+            }
+
+            line[lineLength++] = (char) c;
+        }
+
+        return read;
+    }
+
+    private int read()
+        throws IOException
+    {
+        if ( text != null )
+        {
+            return pos < limit ? text.charAt( pos++ ) : -1;
+        }
+
+        if ( pos == limit )
+        {
+            limit = in.read( buffer, 0, buffer.length );
+            pos = 0;
+            if ( limit < 1 )
+            {
+                limit = 0;
+                return -1;
+            }
+        }
+
+        return buffer[pos++] & 0xff;
+    }
+
+    private boolean lineStartsWith( final String prefix )
+    {
+        if ( lineLength < prefix.length() )
+        {
+            return false;
+        }
+
+        for ( int i = 0; i < prefix.length(); i++ )
+        {
+            if ( line[i] != prefix.charAt( i ) )
+            {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private String blockType()
+    {
+        int end = lineLength;
+        while ( end > BEGIN.length() && line[end - 1] == '-' )
+        {
+            end--;
+        }
+
+        return new String( line, BEGIN.length(), end - BEGIN.length() ).trim();
+    }
+
+    private boolean isHeaderLine()
+    {
+        for ( int i = 0; i < lineLength; i++ )
+        {
+            if ( line[i] == ':' )
+            {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private void decodeLine()
+    {
+        for ( int i = 0; i < lineLength; i++ )
+        {
+            final char c = line[i];
+            if ( c == '=' )
+            {
+                padded = true;
+                return;
+            }
+
+            final int value = c < DECODE.length ? DECODE[c] : -1;
+            if ( value < 0 )
+            {
+                continue;
+            }
+
+            quad = ( quad << 6 ) | value;
+            if ( ++quadCount == 4 )
+            {
+                ensureOut( 3 );
+                out[outLength++] = (byte) ( quad >> 16 );
+                out[outLength++] = (byte) ( quad >> 8 );
+                out[outLength++] = (byte) quad;
+                quad = 0;
+                quadCount = 0;
+            }
+        }
+    }
+
+    /**
+     * Emit the bytes of a trailing group shortened by padding (2 or 3 characters). A single character can't encode a
+     * byte and is dropped.
+     */
+    private void flushPartial()
+    {
+        if ( quadCount < 2 )
+        {
+            quad = 0;
+            quadCount = 0;
+            return;
+        }
+
+        ensureOut( 2 );
+        if ( quadCount == 2 )
+        {
+            out[outLength++] = (byte) ( quad >> 4 );
+        }
+        else
+        {
+            out[outLength++] = (byte) ( quad >> 10 );
+            out[outLength++] = (byte) ( quad >> 2 );
+        }
+
+        quad = 0;
+        quadCount = 0;
+    }
+
+    private void ensureOut( final int extra )
+    {
+        if ( outLength + extra > out.length )
+        {
+            out = Arrays.copyOf( out, out.length * 2 );
+        }
+    }
+
+}
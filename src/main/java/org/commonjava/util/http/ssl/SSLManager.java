@@ -10,9 +10,12 @@ import javax.inject.Inject;
 import javax.net.ssl.KeyManager;
 import javax.net.ssl.SSLContext;
 import javax.net.ssl.TrustManager;
+import javax.net.ssl.X509TrustManager;
 
 import org.apache.http.conn.ssl.SSLSocketFactory;
 import org.commonjava.util.http.HTTPException;
+import org.commonjava.util.http.metrics.HTTPMetrics;
+import org.commonjava.util.http.metrics.MeteredTrustManager;
 
 @ApplicationScoped
 public class SSLManager
@@ -23,6 +26,10 @@ public class SSLManager
 
     private SSLSocketFactory factory;
 
+    private SSLContext context;
+
+    private HTTPMetrics metrics;
+
     public SSLManager()
     {
     }
@@ -37,30 +44,64 @@ public class SSLManager
     {
         final SSLSocketFactory factory = getSSLSocketFactory();
 
-        SSLContext ctx;
-        try
-        {
-            ctx = SSLContext.getInstance( "SSL" );
-        }
-        catch ( final NoSuchAlgorithmException e )
-        {
-            throw new HTTPException( "Failed to retrieve SSLContext: %s", e, e.getMessage() );
-        }
+        SSLContext.setDefault( getSSLContext() );
 
-        try
-        {
-            ctx.init( new KeyManager[] { builder.getKeyManager() }, new TrustManager[] { builder.getTrustManager() },
-                      null );
-        }
-        catch ( final KeyManagementException e )
+        return factory;
+    }
+
+    /**
+     * {@link SSLContext} built from the provider's key and trust managers, for transports that don't use the HttpClient
+     * {@link SSLSocketFactory} (e.g. the NIO-based async client).
+     */
+    public synchronized SSLContext getSSLContext()
+        throws HTTPException
+    {
+        if ( context == null )
         {
-            throw new HTTPException( "Failed to initialize SSLContext with new PEM-based TrustStore: %s", e,
-                                     e.getMessage() );
+            SSLContext ctx;
+            try
+            {
+                ctx = SSLContext.getInstance( "SSL" );
+            }
+            catch ( final NoSuchAlgorithmException e )
+            {
+                throw new HTTPException( "Failed to retrieve SSLContext: %s", e, e.getMessage() );
+            }
+
+            try
+            {
+                TrustManager tm = builder.getTrustManager();
+                if ( metrics != null && tm instanceof X509TrustManager )
+                {
+                    tm = new MeteredTrustManager( (X509TrustManager) tm, metrics );
+                }
+
+                ctx.init( new KeyManager[] { builder.getKeyManager() }, new TrustManager[] { tm }, null );
+            }
+            catch ( final KeyManagementException e )
+            {
+                throw new HTTPException( "Failed to initialize SSLContext with new PEM-based TrustStore: %s", e,
+                                         e.getMessage() );
+            }
+
+            context = ctx;
         }
 
-        SSLContext.setDefault( ctx );
+        return context;
+    }
 
-        return factory;
+    /**
+     * Report trust-check latency from the {@link SSLContext}'s trust manager. Only affects a context that hasn't been
+     * built yet.
+     */
+    public synchronized void setMetrics( final HTTPMetrics metrics )
+    {
+        this.metrics = metrics;
+    }
+
+    public synchronized HTTPMetrics getMetrics()
+    {
+        return metrics;
     }
 
     @Produces
@@ -1,18 +1,19 @@
 package org.commonjava.util.http.ssl;
 
-import static org.apache.commons.codec.binary.Base64.decodeBase64;
+import static org.apache.commons.codec.binary.Hex.encodeHexString;
 import static org.apache.commons.io.IOUtils.closeQuietly;
 
-import java.io.BufferedReader;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketAddress;
 import java.nio.charset.Charset;
 import java.security.KeyFactory;
 import java.security.KeyStore;
 import java.security.KeyStoreException;
+import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.security.PrivateKey;
 import java.security.UnrecoverableKeyException;
@@ -24,31 +25,31 @@ import java.security.spec.InvalidKeySpecException;
 import java.security.spec.KeySpec;
 import java.security.spec.PKCS8EncodedKeySpec;
 import java.util.ArrayList;
-import java.util.Collection;
-import java.util.LinkedHashMap;
+import java.util.Collections;
 import java.util.List;
-import java.util.Map;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.TreeSet;
 
 import javax.net.ssl.KeyManager;
 import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLException;
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.SSLSession;
+import javax.net.ssl.SSLSocket;
 import javax.net.ssl.TrustManager;
 import javax.net.ssl.TrustManagerFactory;
+import javax.net.ssl.X509ExtendedTrustManager;
 import javax.net.ssl.X509KeyManager;
 import javax.net.ssl.X509TrustManager;
 
 import org.apache.http.auth.AuthScope;
+import org.apache.http.conn.ssl.SSLSocketFactory;
 import org.commonjava.util.http.HTTPException;
 
 public final class SSLUtils
 {
 
-    private static final String CLIENT_PREFIX = "client::";
-
-    private static final String SERVER_PREFIX = "server::";
-
-    private static final String AUTH_SCOPE_ALIAS_PATTERN = ".+::(.+):(\\d+)";
+    private static final Charset UTF8 = Charset.forName( "UTF-8" );
 
     private SSLUtils()
     {
@@ -121,14 +122,146 @@ public final class SSLUtils
         return dtm;
     }
 
+    /**
+     * Check a server chain for a handshake on the given socket. Extended trust managers get the socket, so they apply
+     * its endpoint identification; for others the chain is checked alone and, if the socket asks for endpoint
+     * identification, the peer host is verified against the leaf certificate here.
+     */
+    public static void checkServerTrusted( final X509TrustManager tm, final X509Certificate[] chain,
+                                           final String authType, final Socket socket )
+        throws CertificateException
+    {
+        if ( tm instanceof X509ExtendedTrustManager )
+        {
+            ( (X509ExtendedTrustManager) tm ).checkServerTrusted( chain, authType, socket );
+            return;
+        }
+
+        tm.checkServerTrusted( chain, authType );
+        if ( socket instanceof SSLSocket && socket.isConnected() )
+        {
+            final SSLSocket ssl = (SSLSocket) socket;
+            verifyPeerHost( chain, ssl.getSSLParameters(), ssl.getHandshakeSession() );
+        }
+    }
+
+    /**
+     * As {@link #checkServerTrusted(X509TrustManager, X509Certificate[], String, Socket)}, for an engine.
+     */
+    public static void checkServerTrusted( final X509TrustManager tm, final X509Certificate[] chain,
+                                           final String authType, final SSLEngine engine )
+        throws CertificateException
+    {
+        if ( tm instanceof X509ExtendedTrustManager )
+        {
+            ( (X509ExtendedTrustManager) tm ).checkServerTrusted( chain, authType, engine );
+            return;
+        }
+
+        tm.checkServerTrusted( chain, authType );
+        if ( engine != null )
+        {
+            verifyPeerHost( chain, engine.getSSLParameters(), engine.getHandshakeSession() );
+        }
+    }
+
+    /**
+     * As {@link #checkServerTrusted(X509TrustManager, X509Certificate[], String, Socket)}, for a client chain.
+     */
+    public static void checkClientTrusted( final X509TrustManager tm, final X509Certificate[] chain,
+                                           final String authType, final Socket socket )
+        throws CertificateException
+    {
+        if ( tm instanceof X509ExtendedTrustManager )
+        {
+            ( (X509ExtendedTrustManager) tm ).checkClientTrusted( chain, authType, socket );
+            return;
+        }
+
+        tm.checkClientTrusted( chain, authType );
+        if ( socket instanceof SSLSocket && socket.isConnected() )
+        {
+            final SSLSocket ssl = (SSLSocket) socket;
+            verifyPeerHost( chain, ssl.getSSLParameters(), ssl.getHandshakeSession() );
+        }
+    }
+
+    /**
+     * As {@link #checkServerTrusted(X509TrustManager, X509Certificate[], String, Socket)}, for a client chain and an
+     * engine.
+     */
+    public static void checkClientTrusted( final X509TrustManager tm, final X509Certificate[] chain,
+                                           final String authType, final SSLEngine engine )
+        throws CertificateException
+    {
+        if ( tm instanceof X509ExtendedTrustManager )
+        {
+            ( (X509ExtendedTrustManager) tm ).checkClientTrusted( chain, authType, engine );
+            return;
+        }
+
+        tm.checkClientTrusted( chain, authType );
+        if ( engine != null )
+        {
+            verifyPeerHost( chain, engine.getSSLParameters(), engine.getHandshakeSession() );
+        }
+    }
+
+    /**
+     * The endpoint identification JSSE would have done, for trust managers that don't take part in it.
+     */
+    @SuppressWarnings( "deprecation" )
+    private static void verifyPeerHost( final X509Certificate[] chain, final SSLParameters params,
+                                        final SSLSession session )
+        throws CertificateException
+    {
+        final String algorithm = params.getEndpointIdentificationAlgorithm();
+        if ( algorithm == null || algorithm.isEmpty() || session == null || session.getPeerHost() == null
+            || chain == null || chain.length == 0 )
+        {
+            return;
+        }
+
+        try
+        {
+            SSLSocketFactory.STRICT_HOSTNAME_VERIFIER.verify( session.getPeerHost(), chain[0] );
+        }
+        catch ( final SSLException e )
+        {
+            throw new CertificateException( "No name matching " + session.getPeerHost() + " found", e );
+        }
+    }
+
     public static AuthScope toAuthScope( final String alias )
     {
-        final Matcher m = Pattern.compile( AUTH_SCOPE_ALIAS_PATTERN )
-                                 .matcher( alias );
-        if ( m.matches() )
+        return AliasCodec.decode( alias );
+    }
+
+    /**
+     * Alias for the peer of the given socket, without any name resolution. During a handshake this is the host the
+     * SSL socket was created for (the request host); otherwise the unresolved host string of the remote address.
+     * Returns null if the socket carries no peer information.
+     */
+    public static String getAlias( final Socket socket, final boolean client )
+    {
+        if ( socket == null )
+        {
+            return null;
+        }
+
+        if ( socket instanceof SSLSocket )
         {
-            final Integer port = Integer.parseInt( m.group( 2 ) );
-            return new AuthScope( m.group( 1 ), port );
+            final SSLSession session = ( (SSLSocket) socket ).getHandshakeSession();
+            if ( session != null && session.getPeerHost() != null && session.getPeerPort() > -1 )
+            {
+                return getAlias( session.getPeerHost(), session.getPeerPort(), client );
+            }
+        }
+
+        final SocketAddress addr = socket.getRemoteSocketAddress();
+        if ( addr instanceof InetSocketAddress )
+        {
+            return getAlias( (InetSocketAddress) addr, client );
         }
 
         return null;
@@ -136,12 +269,91 @@ public final class SSLUtils
 
     public static String getAlias( final InetSocketAddress sa, final boolean client )
     {
-        return ( client ? CLIENT_PREFIX : SERVER_PREFIX ) + sa.getHostName() + ":" + sa.getPort();
+        return getAlias( sa.getHostString(), sa.getPort(), client );
+    }
+
+    public static String getAlias( final String host, final int port, final boolean client )
+    {
+        return AliasCodec.encode( host, port, client );
     }
 
     public static String getAlias( final AuthScope scope, final boolean client )
     {
-        return ( client ? CLIENT_PREFIX : SERVER_PREFIX ) + scope.getHost() + ":" + scope.getPort();
+        return AliasCodec.encode( scope, client );
+    }
+
+    /**
+     * SHA-256 over the aliases and certificate (chain) encodings in the given keystores. Key entries are covered by
+     * their certificate chains, so no key passwords are needed.
+     */
+    public static String fingerprint( final KeyStore... stores )
+        throws HTTPException
+    {
+        final MessageDigest digest = newDigest();
+        try
+        {
+            for ( final KeyStore ks : stores )
+            {
+                if ( ks == null )
+                {
+                    digest.update( (byte) 0 );
+                    continue;
+                }
+
+                digest.update( (byte) 1 );
+                for ( final String alias : new TreeSet<String>( Collections.list( ks.aliases() ) ) )
+                {
+                    digest.update( alias.getBytes( UTF8 ) );
+
+                    Certificate[] chain = ks.getCertificateChain( alias );
+                    if ( chain == null )
+                    {
+                        final Certificate cert = ks.getCertificate( alias );
+                        chain = cert == null ? new Certificate[] {} : new Certificate[] { cert };
+                    }
+
+                    for ( final Certificate cert : chain )
+                    {
+                        digest.update( cert.getEncoded() );
+                    }
+                }
+            }
+        }
+        catch ( final KeyStoreException e )
+        {
+            throw new HTTPException( "Failed to fingerprint KeyStore contents: %s", e, e.getMessage() );
+        }
+        catch ( final CertificateException e )
+        {
+            throw new HTTPException( "Failed to fingerprint KeyStore contents: %s", e, e.getMessage() );
+        }
+
+        return encodeHexString( digest.digest() );
+    }
+
+    /**
+     * SHA-256 of a key password, for use in cache keys. Returns null for a null password.
+     */
+    public static String fingerprint( final String password )
+    {
+        if ( password == null )
+        {
+            return null;
+        }
+
+        return encodeHexString( newDigest().digest( password.getBytes( UTF8 ) ) );
+    }
+
+    private static MessageDigest newDigest()
+    {
+        try
+        {
+            return MessageDigest.getInstance( "SHA-256" );
+        }
+        catch ( final NoSuchAlgorithmException e )
+        {
+            throw new IllegalStateException( "SHA-256 MessageDigest is not available." );
+        }
     }
 
     public static KeyStore loadDefaultKeystore()
@@ -177,83 +389,70 @@ public final class SSLUtils
                                        final KeyStore ks )
         throws CertificateException, IOException, KeyStoreException, NoSuchAlgorithmException, InvalidKeySpecException
     {
-        final List<String> lines = readLines( pemContent );
-
-        loadKeystore( ks, lines, keyPass, true, scope );
+        loadKeystore( ks, new PemReader( pemContent ), keyPass, true, scope );
     }
 
-    private static void loadKeystore( final KeyStore ks, final List<String> lines, final String keyPass,
+    /**
+     * Stream PEM blocks into the keystore. The first certificate is stored under the scope's alias, and every
+     * certificate under its subject DN. For client stores, the private key is stored under the scope's alias with all
+     * certificates read as its chain.
+     */
+    private static void loadKeystore( final KeyStore ks, final PemReader reader, final String keyPass,
                                       final boolean isClient, final AuthScope scope )
         throws CertificateException, IOException, KeyStoreException, NoSuchAlgorithmException, InvalidKeySpecException
     {
-        String currentHeader = null;
-        final StringBuilder current = new StringBuilder();
-        final Map<String, String> entries = new LinkedHashMap<String, String>();
-        for ( final String line : lines )
-        {
-            if ( line == null )
-            {
-                continue;
-            }
-
-            if ( line.startsWith( "-----BEGIN" ) )
-            {
-                currentHeader = line.trim();
-                current.setLength( 0 );
-            }
-            else if ( line.startsWith( "-----END" ) )
-            {
-                entries.put( currentHeader, current.toString() );
-            }
-            else
-            {
-                current.append( line.trim() );
-            }
-        }
-
         final CertificateFactory certFactory = CertificateFactory.getInstance( "X.509" );
-        final KeyFactory keyFactory = KeyFactory.getInstance( "RSA" );
+        final String alias = getAlias( scope, isClient );
 
         final List<Certificate> certs = new ArrayList<Certificate>();
+        byte[] keyData = null;
 
-        final int passes = isClient ? 2 : 1;
-        for ( int pass = 0; pass < passes; pass++ )
+        PemReader.PemObject pem;
+        while ( ( pem = reader.next() ) != null )
         {
-            for ( final Map.Entry<String, String> entry : entries.entrySet() )
+            final String type = pem.getType();
+            if ( isClient && "PRIVATE KEY".equals( type ) )
             {
-                final String header = entry.getKey();
-                final byte[] data = decodeBase64( entry.getValue() );
+                keyData = pem.getContent();
+            }
+            else if ( "CERTIFICATE".equals( type ) || "X509 CERTIFICATE".equals( type ) )
+            {
+                final X509Certificate certificate =
+                    (X509Certificate) certFactory.generateCertificate( new ByteArrayInputStream( pem.getContent() ) );
 
-                if ( pass > 0 && header.contains( "BEGIN PRIVATE KEY" ) )
+                if ( certs.isEmpty() )
                 {
-                    final KeySpec spec = new PKCS8EncodedKeySpec( data );
-                    final PrivateKey key = keyFactory.generatePrivate( spec );
-
-                    ks.setKeyEntry( getAlias( scope, isClient ), key, keyPass.toCharArray(),
-                                    certs.toArray( new Certificate[] {} ) );
+                    ks.setCertificateEntry( alias, certificate );
                 }
-                else if ( pass < 1 && header.contains( "BEGIN CERTIFICATE" ) )
-                {
-                    final Collection<? extends Certificate> c =
-                        certFactory.generateCertificates( new ByteArrayInputStream( data ) );
-                    int idx = 0;
-                    for ( final Certificate certificate : c )
-                    {
-                        if ( idx == 0 )
-                        {
-                            final String alias = getAlias( scope, isClient );
-                            ks.setCertificateEntry( alias, certificate );
-                        }
 
-                        final X509Certificate xc = (X509Certificate) certificate;
-                        ks.setCertificateEntry( xc.getSubjectX500Principal()
-                                                  .getName(), certificate );
+                ks.setCertificateEntry( certificate.getSubjectX500Principal()
+                                                   .getName(), certificate );
 
-                        certs.add( certificate );
+                certs.add( certificate );
+            }
+        }
 
-                        idx++;
-                    }
-                }
+        if ( keyData != null )
+        {
+            final KeySpec spec = new PKCS8EncodedKeySpec( keyData );
+            final PrivateKey key = KeyFactory.getInstance( "RSA" )
+                                             .generatePrivate( spec );
+
+            ks.setKeyEntry( alias, key, keyPass.toCharArray(), certs.toArray( new Certificate[certs.size()] ) );
+        }
+    }
+
+    /**
+     * Copy every certificate entry of the source store into the target, replacing target entries with the same alias.
+     */
+    public static void addCerts( final KeyStore source, final KeyStore target )
+        throws KeyStoreException
+    {
+        for ( final String alias : Collections.list( source.aliases() ) )
+        {
+            if ( source.isCertificateEntry( alias ) )
+            {
+                target.setCertificateEntry( alias, source.getCertificate( alias ) );
             }
         }
     }
@@ -290,33 +489,23 @@ public final class SSLUtils
                                        final KeyStore ks )
         throws CertificateException, IOException, KeyStoreException, NoSuchAlgorithmException, InvalidKeySpecException
     {
-        final List<String> lines = readLines( is );
-        loadKeystore( ks, lines, keyPass, true, scope );
-    }
-
-    public static void readCerts( final AuthScope scope, final String pemContent, final KeyStore ks )
-        throws IOException, CertificateException, KeyStoreException, NoSuchAlgorithmException
-    {
-        final List<String> lines = readLines( pemContent );
-
+        final PemReader reader = new PemReader( is );
         try
         {
-            loadKeystore( ks, lines, null, false, scope );
+            loadKeystore( ks, reader, keyPass, true, scope );
         }
-        catch ( final InvalidKeySpecException e )
+        finally
         {
-            // impossible here.
+            closeQuietly( reader );
         }
     }
 
-    public static void readCerts( final AuthScope scope, final InputStream is, final KeyStore ks )
+    public static void readCerts( final AuthScope scope, final String pemContent, final KeyStore ks )
         throws IOException, CertificateException, KeyStoreException, NoSuchAlgorithmException
     {
-        final List<String> lines = readLines( is );
-
         try
         {
-            loadKeystore( ks, lines, null, false, scope );
+            loadKeystore( ks, new PemReader( pemContent ), null, false, scope );
         }
         catch ( final InvalidKeySpecException e )
         {
@@ -324,51 +513,21 @@ public final class SSLUtils
         }
     }
 
-    private static List<String> readLines( final InputStream is )
-        throws IOException
+    public static void readCerts( final AuthScope scope, final InputStream is, final KeyStore ks )
+        throws IOException, CertificateException, KeyStoreException, NoSuchAlgorithmException
     {
-        final List<String> lines = new ArrayList<String>();
-        BufferedReader reader = null;
+        final PemReader reader = new PemReader( is );
         try
         {
-            reader = new BufferedReader( new InputStreamReader( is ) );
-            String line = null;
-            while ( ( line = reader.readLine() ) != null )
-            {
-                lines.add( line.trim() );
-            }
-        }
-        finally
-        {
-            closeQuietly( reader );
+            loadKeystore( ks, reader, null, false, scope );
         }
-
-        return lines;
-    }
-
-    private static List<String> readLines( final String content )
-        throws IOException
-    {
-        final List<String> lines = new ArrayList<String>();
-        BufferedReader reader = null;
-        try
+        catch ( final InvalidKeySpecException e )
         {
-            reader =
-                new BufferedReader(
-                                    new InputStreamReader(
-                                                           new ByteArrayInputStream(
-                                                                                     content.getBytes( Charset.forName( "UTF-8" ) ) ) ) );
-            String line = null;
-            while ( ( line = reader.readLine() ) != null )
-            {
-                lines.add( line.trim() );
-            }
+            // impossible here.
         }
         finally
         {
             closeQuietly( reader );
         }
-
-        return lines;
     }
 }
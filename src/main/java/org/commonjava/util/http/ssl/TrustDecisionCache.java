@@ -0,0 +1,104 @@
+package org.commonjava.util.http.ssl;
+
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.cert.CertificateEncodingException;
+import java.security.cert.X509Certificate;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.codec.binary.Hex;
+
+/**
+ * Opt-in cache of positive trust decisions, keyed by a SHA-256 fingerprint of the certificate chain, the auth type
+ * and a caller-supplied context (which must change whenever the trust material does). Entries never outlive the
+ * earliest notAfter date in their chain. Failed checks are never cached.
+ */
+public class TrustDecisionCache
+    extends BoundedCache<String, Boolean>
+{
+
+    public static final int DEFAULT_MAX_SIZE = 512;
+
+    public static final long DEFAULT_TTL_MILLIS = TimeUnit.HOURS.toMillis( 1 );
+
+    private static final Charset UTF8 = Charset.forName( "UTF-8" );
+
+    public TrustDecisionCache()
+    {
+        this( DEFAULT_MAX_SIZE, DEFAULT_TTL_MILLIS, TimeUnit.MILLISECONDS );
+    }
+
+    public TrustDecisionCache( final int maxSize, final long ttl, final TimeUnit unit )
+    {
+        super( maxSize, ttl, unit );
+    }
+
+    /**
+     * Returns null if the chain can't be encoded; such chains are simply not cached.
+     */
+    public String keyFor( final X509Certificate[] chain, final String authType, final String context )
+    {
+        if ( chain == null || chain.length == 0 )
+        {
+            return null;
+        }
+
+        MessageDigest digest;
+        try
+        {
+            digest = MessageDigest.getInstance( "SHA-256" );
+        }
+        catch ( final NoSuchAlgorithmException e )
+        {
+            return null;
+        }
+
+        try
+        {
+            for ( final X509Certificate cert : chain )
+            {
+                digest.update( cert.getEncoded() );
+            }
+        }
+        catch ( final CertificateEncodingException e )
+        {
+            return null;
+        }
+
+        digest.update( (byte) 0 );
+        digest.update( String.valueOf( authType )
+                             .getBytes( UTF8 ) );
+        digest.update( (byte) 0 );
+        digest.update( String.valueOf( context )
+                             .getBytes( UTF8 ) );
+
+        return Hex.encodeHexString( digest.digest() );
+    }
+
+    public boolean isTrusted( final String key )
+    {
+        return key != null && Boolean.TRUE.equals( get( key ) );
+    }
+
+    public void markTrusted( final String key, final X509Certificate[] chain )
+    {
+        if ( key == null )
+        {
+            return;
+        }
+
+        long notAfter = Long.MAX_VALUE;
+        for ( final X509Certificate cert : chain )
+        {
+            notAfter = Math.min( notAfter, cert.getNotAfter()
+                                               .getTime() );
+        }
+
+        if ( notAfter > System.currentTimeMillis() )
+        {
+            put( key, Boolean.TRUE, notAfter );
+        }
+    }
+
+}
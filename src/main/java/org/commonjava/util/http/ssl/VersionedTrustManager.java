@@ -0,0 +1,16 @@
+package org.commonjava.util.http.ssl;
+
+import javax.net.ssl.X509TrustManager;
+
+/**
+ * {@link X509TrustManager} whose trust material can change after construction. {@link #getVersion()} must increase
+ * every time the certificates it trusts (and so {@link #getAcceptedIssuers()}) change, so callers can cache derived
+ * data and check it with a single comparison. Trust managers that don't implement this are assumed never to change.
+ */
+public interface VersionedTrustManager
+    extends X509TrustManager
+{
+
+    long getVersion();
+
+}
@@ -0,0 +1,122 @@
+package org.commonjava.util.http.ssl.path;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+/**
+ * Index of the certificate files in a classpath directory, stored next to them as {@value #INDEX_NAME}: one filename
+ * per line, blank lines and lines starting with '#' ignored. When a jar contains the index,
+ * {@link PathSSLResourceLoader} reads exactly those entries instead of scanning every entry in the jar.
+ * <p>
+ * Generate it at build time, before packaging, with {@link #write(File)} (the benchmarks module has a command-line
+ * wrapper, CertificateIndexTool).
+ */
+public final class CertificateIndex
+{
+
+    public static final String INDEX_NAME = "cert.index";
+
+    private static final Charset UTF_8 = Charset.forName( "UTF-8" );
+
+    private CertificateIndex()
+    {
+    }
+
+    /**
+     * Write the index for the regular files in the directory, in filename order.
+     */
+    public static File write( final File dir )
+        throws IOException
+    {
+        final String[] fnames = dir.list();
+        if ( fnames == null )
+        {
+            throw new IOException( "Not a directory: " + dir );
+        }
+
+        Arrays.sort( fnames );
+
+        final File index = new File( dir, INDEX_NAME );
+        final Writer writer = new OutputStreamWriter( new FileOutputStream( index ), UTF_8 );
+        try
+        {
+            for ( final String fname : fnames )
+            {
+                if ( !INDEX_NAME.equals( fname ) && new File( dir, fname ).isFile() )
+                {
+                    writer.write( fname );
+                    writer.write( '\n' );
+                }
+            }
+        }
+        finally
+        {
+            writer.close();
+        }
+
+        return index;
+    }
+
+    /**
+     * Names of the certificate entries under the base path: from the index if the jar has one, otherwise by scanning
+     * the jar's entries for the base path prefix.
+     */
+    static List<String> read( final JarFile jar, final String basepath )
+        throws IOException
+    {
+        final String dir = basepath.endsWith( "/" ) ? basepath : basepath + "/";
+        final List<String> names = new ArrayList<String>();
+
+        final JarEntry index = jar.getJarEntry( dir + INDEX_NAME );
+        if ( index != null )
+        {
+            final InputStream is = jar.getInputStream( index );
+            try
+            {
+                final BufferedReader reader = new BufferedReader( new InputStreamReader( is, UTF_8 ) );
+                String line;
+                while ( ( line = reader.readLine() ) != null )
+                {
+                    line = line.trim();
+                    if ( line.length() > 0 && !line.startsWith( "#" ) )
+                    {
+                        names.add( dir + line );
+                    }
+                }
+            }
+            finally
+            {
+                is.close();
+            }
+
+            return names;
+        }
+
+        final Enumeration<JarEntry> entries = jar.entries();
+        while ( entries.hasMoreElements() )
+        {
+            final JarEntry entry = entries.nextElement();
+            final String name = entry.getName();
+            if ( !entry.isDirectory() && name.startsWith( dir ) && !name.endsWith( "/" + INDEX_NAME ) )
+            {
+                names.add( name );
+            }
+        }
+
+        return names;
+    }
+
+}
@@ -0,0 +1,320 @@
+package org.commonjava.util.http.ssl.path;
+
+import static org.commonjava.util.http.ssl.SSLUtils.newKeyStore;
+
+import java.io.File;
+import java.net.Socket;
+import java.security.KeyStore;
+import java.security.cert.CertificateException;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLSession;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.X509ExtendedTrustManager;
+import javax.net.ssl.X509TrustManager;
+
+import org.apache.http.auth.AuthScope;
+import org.commonjava.util.http.HTTPException;
+import org.commonjava.util.http.ssl.BoundedCache;
+import org.commonjava.util.http.ssl.VersionedTrustManager;
+import org.commonjava.util.logging.Logger;
+
+/**
+ * Trust manager for per-host (host_port) .pem files that parses a host's files on the first handshake with that host,
+ * keeping at most a fixed number of hosts loaded (least-recently-used are dropped and re-parsed on demand). A host's
+ * certificates only apply to handshakes with that host; a chain they don't trust is passed on to the base trust
+ * manager.
+ * <p>
+ * The peer host comes from the handshake session, so it is only known when JSSE calls the {@link Socket} /
+ * {@link SSLEngine} variants; plain checks, and client checks, which have no host, go to the base trust manager alone.
+ * The socket or engine is passed on with every check, so endpoint identification still applies.
+ */
+public class LazyHostTrustManager
+    extends X509ExtendedTrustManager
+    implements VersionedTrustManager
+{
+
+    private final Logger logger = new Logger( getClass() );
+
+    private final X509TrustManager base;
+
+    private final BoundedCache<String, X509TrustManager> hosts;
+
+    private final AtomicLong generation = new AtomicLong();
+
+    private volatile Map<String, List<File>> hostFiles;
+
+    LazyHostTrustManager( final X509TrustManager base, final Collection<File> files, final int maxHosts )
+    {
+        this.base = base;
+        this.hosts = new BoundedCache<String, X509TrustManager>( maxHosts, 1, TimeUnit.DAYS );
+
+        final Map<String, List<File>> index = new HashMap<String, List<File>>();
+        for ( final File f : files )
+        {
+            add( index, f );
+        }
+
+        this.hostFiles = index;
+    }
+
+    /**
+     * Re-index the given host files (which may have been added, changed or deleted) and drop their hosts' loaded
+     * certificates, so the next handshake with them parses the files again. The new index is published before the
+     * hosts are dropped, and loads read the index when they start, so a load racing with the refresh either sees the
+     * new files or is dropped along with the old ones.
+     */
+    synchronized void refresh( final Collection<File> files )
+    {
+        final Map<String, List<File>> index = new HashMap<String, List<File>>( hostFiles );
+        final List<String> changed = new ArrayList<String>();
+        for ( final File f : files )
+        {
+            final String key = key( PathSSLResourceLoader.getHostScope( f.getName() ) );
+            final List<File> current = index.remove( key );
+            if ( current != null )
+            {
+                for ( final File existing : current )
+                {
+                    if ( !existing.equals( f ) )
+                    {
+                        add( index, existing );
+                    }
+                }
+            }
+
+            if ( f.isFile() )
+            {
+                add( index, f );
+            }
+
+            changed.add( key );
+        }
+
+        hostFiles = index;
+        for ( final String key : changed )
+        {
+            hosts.remove( key );
+        }
+
+        generation.incrementAndGet();
+    }
+
+    List<String> getFileNames()
+    {
+        final List<String> names = new ArrayList<String>();
+        for ( final List<File> files : hostFiles.values() )
+        {
+            for ( final File f : files )
+            {
+                names.add( f.getName() );
+            }
+        }
+
+        return names;
+    }
+
+    /**
+     * Number of hosts whose certificates are currently loaded.
+     */
+    public int getLoadedHosts()
+    {
+        return hosts.size();
+    }
+
+    public int getIndexedHosts()
+    {
+        return hostFiles.size();
+    }
+
+    public X509TrustManager getBase()
+    {
+        return base;
+    }
+
+    @Override
+    public long getVersion()
+    {
+        final long version = generation.get();
+        if ( base instanceof VersionedTrustManager )
+        {
+            return version + ( (VersionedTrustManager) base ).getVersion();
+        }
+
+        return version;
+    }
+
+    @Override
+    public void checkServerTrusted( final X509Certificate[] chain, final String authType, final Socket socket )
+        throws CertificateException
+    {
+        SSLSession session = null;
+        if ( socket instanceof SSLSocket )
+        {
+            session = ( (SSLSocket) socket ).getHandshakeSession();
+        }
+
+        if ( session != null )
+        {
+            checkServerTrusted( chain, authType, session.getPeerHost(), session.getPeerPort(), socket, null );
+        }
+        else
+        {
+            checkServerTrusted( chain, authType, null, -1, socket, null );
+        }
+    }
+
+    @Override
+    public void checkServerTrusted( final X509Certificate[] chain, final String authType, final SSLEngine engine )
+        throws CertificateException
+    {
+        if ( engine != null )
+        {
+            checkServerTrusted( chain, authType, engine.getPeerHost(), engine.getPeerPort(), null, engine );
+        }
+        else
+        {
+            checkServerTrusted( chain, authType, null, -1, null, null );
+        }
+    }
+
+    @Override
+    public void checkServerTrusted( final X509Certificate[] chain, final String authType )
+        throws CertificateException
+    {
+        checkServerTrusted( chain, authType, null, -1, null, null );
+    }
+
+    @Override
+    public void checkClientTrusted( final X509Certificate[] chain, final String authType, final Socket socket )
+        throws CertificateException
+    {
+        MultiTrustManager.check( base, chain, authType, false, socket, null );
+    }
+
+    @Override
+    public void checkClientTrusted( final X509Certificate[] chain, final String authType, final SSLEngine engine )
+        throws CertificateException
+    {
+        MultiTrustManager.check( base, chain, authType, false, null, engine );
+    }
+
+    @Override
+    public void checkClientTrusted( final X509Certificate[] chain, final String authType )
+        throws CertificateException
+    {
+        base.checkClientTrusted( chain, authType );
+    }
+
+    /**
+     * Certificates accepted by the base trust manager; host certificates are only offered once loaded, so they are
+     * not listed here.
+     */
+    @Override
+    public X509Certificate[] getAcceptedIssuers()
+    {
+        return base.getAcceptedIssuers();
+    }
+
+    private void checkServerTrusted( final X509Certificate[] chain, final String authType, final String host,
+                                     final int port, final Socket socket, final SSLEngine engine )
+        throws CertificateException
+    {
+        final X509TrustManager tm = host == null || port < 0 ? null : getHost( host, port );
+        if ( tm != null )
+        {
+            try
+            {
+                MultiTrustManager.check( tm, chain, authType, true, socket, engine );
+                return;
+            }
+            catch ( final CertificateException e )
+            {
+            }
+        }
+
+        MultiTrustManager.check( base, chain, authType, true, socket, engine );
+    }
+
+    private X509TrustManager getHost( final String host, final int port )
+    {
+        final String key = key( host, port );
+        if ( !hostFiles.containsKey( key ) )
+        {
+            return null;
+        }
+
+        try
+        {
+            return hosts.get( key, new Callable<X509TrustManager>()
+            {
+                @Override
+                public X509TrustManager call()
+                    throws HTTPException
+                {
+                    // read here rather than above, so a load cached after a refresh never uses the old files
+                    final List<File> files = hostFiles.get( key );
+                    return files == null ? null : load( files );
+                }
+            } );
+        }
+        catch ( final ExecutionException e )
+        {
+            final Throwable cause = e.getCause();
+            logger.error( "Failed to load trusted certificates for: %s. Reason: %s", cause, key, cause.getMessage() );
+            return null;
+        }
+    }
+
+    private static X509TrustManager load( final List<File> files )
+        throws HTTPException
+    {
+        final KeyStore ks = newKeyStore();
+        for ( final File f : files )
+        {
+            PathSSLResourceLoader.loadFromFile( f.getPath(), ks );
+        }
+
+        return PathSSLResourceLoader.newTrustManager( ks );
+    }
+
+    private static void add( final Map<String, List<File>> index, final File f )
+    {
+        final String key = key( PathSSLResourceLoader.getHostScope( f.getName() ) );
+        final List<File> current = index.get( key );
+
+        final List<File> files = new ArrayList<File>();
+        if ( current != null )
+        {
+            files.addAll( current );
+        }
+
+        files.add( f );
+        Collections.sort( files );
+
+        index.put( key, Collections.unmodifiableList( files ) );
+    }
+
+    private static String key( final AuthScope scope )
+    {
+        return key( scope.getHost(), scope.getPort() );
+    }
+
+    private static String key( final String host, final int port )
+    {
+        return host.toLowerCase( Locale.ROOT ) + ":" + port;
+    }
+
+}
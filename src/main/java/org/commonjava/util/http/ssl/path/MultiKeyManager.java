@@ -8,7 +8,10 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.net.ssl.X509KeyManager;
 
@@ -16,8 +19,16 @@ public class MultiKeyManager
     implements X509KeyManager
 {
 
+    private static final int MAX_PREFERRED = 1024;
+
     private final List<X509KeyManager> delegates;
 
+    private final Map<String, Integer> preferredDelegates = new ConcurrentHashMap<String, Integer>();
+
+    private final AtomicLong preferredHits = new AtomicLong();
+
+    private final AtomicLong preferredMisses = new AtomicLong();
+
     public MultiKeyManager( final X509KeyManager... delegates )
     {
         this.delegates = new ArrayList<X509KeyManager>( Arrays.asList( delegates ) );
@@ -26,11 +37,13 @@ public class MultiKeyManager
     @Override
     public String chooseClientAlias( final String[] keyTypes, final Principal[] issuers, final Socket socket )
     {
-        for ( final X509KeyManager mgr : delegates )
+        for ( int i = 0; i < delegates.size(); i++ )
         {
-            final String alias = mgr.chooseClientAlias( keyTypes, issuers, socket );
+            final String alias = delegates.get( i )
+                                          .chooseClientAlias( keyTypes, issuers, socket );
             if ( alias != null )
             {
+                remember( alias, i );
                 return alias;
             }
         }
@@ -41,11 +54,13 @@ public class MultiKeyManager
     @Override
     public String chooseServerAlias( final String keyType, final Principal[] issuers, final Socket socket )
     {
-        for ( final X509KeyManager mgr : delegates )
+        for ( int i = 0; i < delegates.size(); i++ )
         {
-            final String alias = mgr.chooseServerAlias( keyType, issuers, socket );
+            final String alias = delegates.get( i )
+                                          .chooseServerAlias( keyType, issuers, socket );
             if ( alias != null )
             {
+                remember( alias, i );
                 return alias;
             }
         }
@@ -56,11 +71,31 @@ public class MultiKeyManager
     @Override
     public X509Certificate[] getCertificateChain( final String alias )
     {
-        for ( final X509KeyManager mgr : delegates )
+        final Integer first = alias == null ? null : preferredDelegates.get( alias );
+        if ( first != null )
+        {
+            final X509Certificate[] chain = delegates.get( first )
+                                                     .getCertificateChain( alias );
+            if ( chain != null )
+            {
+                preferredHits.incrementAndGet();
+                return chain;
+            }
+        }
+
+        preferredMisses.incrementAndGet();
+        for ( int i = 0; i < delegates.size(); i++ )
         {
-            final X509Certificate[] chain = mgr.getCertificateChain( alias );
+            if ( first != null && first == i )
+            {
+                continue;
+            }
+
+            final X509Certificate[] chain = delegates.get( i )
+                                                     .getCertificateChain( alias );
             if ( chain != null )
             {
+                remember( alias, i );
                 return chain;
             }
         }
@@ -87,11 +122,31 @@ public class MultiKeyManager
     @Override
     public PrivateKey getPrivateKey( final String alias )
     {
-        for ( final X509KeyManager mgr : delegates )
+        final Integer first = alias == null ? null : preferredDelegates.get( alias );
+        if ( first != null )
         {
-            final PrivateKey pk = mgr.getPrivateKey( alias );
+            final PrivateKey pk = delegates.get( first )
+                                           .getPrivateKey( alias );
             if ( pk != null )
             {
+                preferredHits.incrementAndGet();
+                return pk;
+            }
+        }
+
+        preferredMisses.incrementAndGet();
+        for ( int i = 0; i < delegates.size(); i++ )
+        {
+            if ( first != null && first == i )
+            {
+                continue;
+            }
+
+            final PrivateKey pk = delegates.get( i )
+                                           .getPrivateKey( alias );
+            if ( pk != null )
+            {
+                remember( alias, i );
                 return pk;
             }
         }
@@ -115,4 +170,29 @@ public class MultiKeyManager
         return aliases.isEmpty() ? null : aliases.toArray( new String[] {} );
     }
 
+    private void remember( final String alias, final int delegate )
+    {
+        if ( alias != null
+            && ( preferredDelegates.size() < MAX_PREFERRED || preferredDelegates.containsKey( alias ) ) )
+        {
+            preferredDelegates.put( alias, delegate );
+        }
+    }
+
+    /**
+     * Number of chain / key lookups answered by the delegate remembered for the alias.
+     */
+    public long getPreferredHits()
+    {
+        return preferredHits.get();
+    }
+
+    /**
+     * Number of chain / key lookups that had to walk the delegate list.
+     */
+    public long getPreferredMisses()
+    {
+        return preferredMisses.get();
+    }
+
 }
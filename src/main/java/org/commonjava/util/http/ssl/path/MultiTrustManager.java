@@ -1,23 +1,70 @@
 package org.commonjava.util.http.ssl.path;
 
+import java.net.Socket;
 import java.security.cert.CertificateException;
 import java.security.cert.X509Certificate;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.SSLSession;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.X509ExtendedTrustManager;
 import javax.net.ssl.X509TrustManager;
 
+import org.commonjava.util.http.ssl.SSLUtils;
+import org.commonjava.util.http.ssl.TrustDecisionCache;
+import org.commonjava.util.http.ssl.VersionedTrustManager;
+
+/**
+ * Trusts a chain if any delegate does. The socket and engine checks pass the socket or engine on to every delegate
+ * (see {@link SSLUtils#checkServerTrusted(X509TrustManager, X509Certificate[], String, Socket)}), and cache decisions
+ * per peer and endpoint identification algorithm, since delegates such as {@link LazyHostTrustManager} answer per
+ * host.
+ */
 public class MultiTrustManager
-    implements X509TrustManager
+    extends X509ExtendedTrustManager
+    implements VersionedTrustManager
 {
 
     private final List<X509TrustManager> delegates;
 
+    private volatile IssuerSnapshot issuers;
+
+    private static final AtomicLong INSTANCES = new AtomicLong();
+
+    private final TrustDecisionCache decisions;
+
+    private final String decisionContext = "multi-" + INSTANCES.incrementAndGet();
+
+    private static final int MAX_PREFERRED = 1024;
+
+    private final Map<String, Integer> preferredServerDelegates = new ConcurrentHashMap<String, Integer>();
+
+    private final Map<String, Integer> preferredClientDelegates = new ConcurrentHashMap<String, Integer>();
+
+    private final AtomicLong preferredHits = new AtomicLong();
+
+    private final AtomicLong preferredMisses = new AtomicLong();
+
     public MultiTrustManager( final X509TrustManager... delegates )
     {
+        this( null, delegates );
+    }
+
+    /**
+     * @param decisions optional cache of positive trust decisions; null disables caching.
+     */
+    public MultiTrustManager( final TrustDecisionCache decisions, final X509TrustManager... delegates )
+    {
+        this.decisions = decisions;
         this.delegates = new ArrayList<X509TrustManager>( Arrays.asList( delegates ) );
     }
 
@@ -25,60 +72,275 @@ public class MultiTrustManager
     public void checkClientTrusted( final X509Certificate[] chain, final String authType )
         throws CertificateException
     {
-        for ( int i = 0; i < delegates.size(); i++ )
+        check( chain, authType, false, null, null );
+    }
+
+    @Override
+    public void checkServerTrusted( final X509Certificate[] chain, final String authType )
+        throws CertificateException
+    {
+        check( chain, authType, true, null, null );
+    }
+
+    @Override
+    public void checkClientTrusted( final X509Certificate[] chain, final String authType, final Socket socket )
+        throws CertificateException
+    {
+        check( chain, authType, false, socket, null );
+    }
+
+    @Override
+    public void checkServerTrusted( final X509Certificate[] chain, final String authType, final Socket socket )
+        throws CertificateException
+    {
+        check( chain, authType, true, socket, null );
+    }
+
+    @Override
+    public void checkClientTrusted( final X509Certificate[] chain, final String authType, final SSLEngine engine )
+        throws CertificateException
+    {
+        check( chain, authType, false, null, engine );
+    }
+
+    @Override
+    public void checkServerTrusted( final X509Certificate[] chain, final String authType, final SSLEngine engine )
+        throws CertificateException
+    {
+        check( chain, authType, true, null, engine );
+    }
+
+    /**
+     * Try the delegate that last accepted a chain from the same issuer first, then the rest in construction order.
+     */
+    private void check( final X509Certificate[] chain, final String authType, final boolean server,
+                        final Socket socket, final SSLEngine engine )
+        throws CertificateException
+    {
+        String key = null;
+        if ( decisions != null )
         {
-            final X509TrustManager tm = delegates.get( i );
+            key = decisions.keyFor( chain, authType, decisionContext + ( server ? ":server:" : ":client:" )
+                + getVersion() + peer( socket, engine ) );
+
+            if ( decisions.isTrusted( key ) )
+            {
+                return;
+            }
+        }
+
+        String issuer = null;
+        if ( chain != null && chain.length > 0 )
+        {
+            issuer = chain[chain.length - 1].getIssuerX500Principal()
+                                            .getName();
+        }
+
+        final Map<String, Integer> preferred = server ? preferredServerDelegates : preferredClientDelegates;
+        final Integer first = issuer == null ? null : preferred.get( issuer );
 
+        CertificateException error = null;
+        if ( first != null )
+        {
             try
             {
-                tm.checkClientTrusted( chain, authType );
+                check( delegates.get( first ), chain, authType, server, socket, engine );
+                preferredHits.incrementAndGet();
+
+                if ( key != null )
+                {
+                    decisions.markTrusted( key, chain );
+                }
+                return;
             }
             catch ( final CertificateException e )
             {
-                if ( i + 1 >= delegates.size() )
+                error = e;
+            }
+        }
+
+        preferredMisses.incrementAndGet();
+
+        for ( int i = 0; i < delegates.size(); i++ )
+        {
+            if ( first != null && first == i )
+            {
+                continue;
+            }
+
+            try
+            {
+                check( delegates.get( i ), chain, authType, server, socket, engine );
+
+                if ( issuer != null && ( preferred.size() < MAX_PREFERRED || preferred.containsKey( issuer ) ) )
+                {
+                    preferred.put( issuer, i );
+                }
+
+                if ( key != null )
                 {
-                    throw e;
+                    decisions.markTrusted( key, chain );
                 }
+                return;
+            }
+            catch ( final CertificateException e )
+            {
+                error = e;
             }
         }
+
+        if ( error != null )
+        {
+            throw error;
+        }
     }
 
-    @Override
-    public void checkServerTrusted( final X509Certificate[] chain, final String authType )
+    /**
+     * Run the check that matches how JSSE called us: with the socket, with the engine, or with neither.
+     */
+    static void check( final X509TrustManager tm, final X509Certificate[] chain, final String authType,
+                       final boolean server, final Socket socket, final SSLEngine engine )
         throws CertificateException
     {
-        for ( int i = 0; i < delegates.size(); i++ )
+        if ( socket != null )
         {
-            final X509TrustManager tm = delegates.get( i );
-
-            try
+            if ( server )
             {
-                tm.checkServerTrusted( chain, authType );
+                SSLUtils.checkServerTrusted( tm, chain, authType, socket );
             }
-            catch ( final CertificateException e )
+            else
             {
-                if ( i + 1 >= delegates.size() )
-                {
-                    throw e;
-                }
+                SSLUtils.checkClientTrusted( tm, chain, authType, socket );
             }
         }
+        else if ( engine != null )
+        {
+            if ( server )
+            {
+                SSLUtils.checkServerTrusted( tm, chain, authType, engine );
+            }
+            else
+            {
+                SSLUtils.checkClientTrusted( tm, chain, authType, engine );
+            }
+        }
+        else if ( server )
+        {
+            tm.checkServerTrusted( chain, authType );
+        }
+        else
+        {
+            tm.checkClientTrusted( chain, authType );
+        }
     }
 
+    /**
+     * Decision cache key suffix for the peer host and port and the endpoint identification algorithm of the
+     * handshake, if known.
+     */
+    private static String peer( final Socket socket, final SSLEngine engine )
+    {
+        SSLParameters params = null;
+        SSLSession session = null;
+        if ( socket instanceof SSLSocket )
+        {
+            params = ( (SSLSocket) socket ).getSSLParameters();
+            session = ( (SSLSocket) socket ).getHandshakeSession();
+        }
+        else if ( engine != null )
+        {
+            params = engine.getSSLParameters();
+            session = engine.getHandshakeSession();
+        }
+
+        if ( params == null )
+        {
+            return "";
+        }
+
+        final String host = session == null ? null : session.getPeerHost();
+        final int port = session == null ? -1 : session.getPeerPort();
+
+        return ":" + host + ":" + port + ":" + params.getEndpointIdentificationAlgorithm();
+    }
+
+    /**
+     * Number of checks answered by the delegate remembered for the chain's issuer.
+     */
+    public long getPreferredHits()
+    {
+        return preferredHits.get();
+    }
+
+    /**
+     * Number of checks that had to walk the delegate list, either because no delegate was remembered for the chain's
+     * issuer or because the remembered one rejected the chain.
+     */
+    public long getPreferredMisses()
+    {
+        return preferredMisses.get();
+    }
+
+    public TrustDecisionCache getTrustDecisionCache()
+    {
+        return decisions;
+    }
+
+    /**
+     * Sum of the versions of all {@link VersionedTrustManager} delegates. Delegate versions only increase, so this
+     * changes whenever any of them does.
+     */
     @Override
-    public X509Certificate[] getAcceptedIssuers()
+    public long getVersion()
     {
-        final Set<X509Certificate> accepted = new LinkedHashSet<X509Certificate>();
+        long version = 0;
         for ( final X509TrustManager tm : delegates )
         {
-            final X509Certificate[] certs = tm.getAcceptedIssuers();
-            if ( certs != null )
+            if ( tm instanceof VersionedTrustManager )
+            {
+                version += ( (VersionedTrustManager) tm ).getVersion();
+            }
+        }
+
+        return version;
+    }
+
+    @Override
+    public X509Certificate[] getAcceptedIssuers()
+    {
+        final long version = getVersion();
+
+        IssuerSnapshot snapshot = issuers;
+        if ( snapshot == null || snapshot.version != version )
+        {
+            final Set<X509Certificate> accepted = new LinkedHashSet<X509Certificate>();
+            for ( final X509TrustManager tm : delegates )
             {
-                accepted.addAll( Arrays.asList( certs ) );
+                final X509Certificate[] certs = tm.getAcceptedIssuers();
+                if ( certs != null )
+                {
+                    accepted.addAll( Arrays.asList( certs ) );
+                }
             }
+
+            snapshot = new IssuerSnapshot( version, accepted.toArray( new X509Certificate[accepted.size()] ) );
+            issuers = snapshot;
         }
 
-        return accepted.toArray( new X509Certificate[] {} );
+        return snapshot.certs.clone();
+    }
+
+    private static final class IssuerSnapshot
+    {
+        private final long version;
+
+        private final X509Certificate[] certs;
+
+        IssuerSnapshot( final long version, final X509Certificate[] certs )
+        {
+            this.version = version;
+            this.certs = certs;
+        }
     }
 
 }
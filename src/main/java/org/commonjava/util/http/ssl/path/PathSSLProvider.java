@@ -1,14 +1,13 @@
 package org.commonjava.util.http.ssl.path;
 
 import java.security.KeyManagementException;
-import java.security.KeyStoreException;
 import java.security.NoSuchAlgorithmException;
-import java.security.UnrecoverableKeyException;
 
 import javax.enterprise.inject.Alternative;
 import javax.inject.Inject;
 import javax.inject.Named;
 import javax.net.ssl.KeyManager;
+import javax.net.ssl.SSLContext;
 import javax.net.ssl.TrustManager;
 
 import org.apache.http.conn.ssl.SSLSocketFactory;
@@ -50,29 +49,24 @@ public class PathSSLProvider
 
         try
         {
-            return new SSLSocketFactory( SSLSocketFactory.TLS, kc.getKeystore(), null, tc.getKeystore(), null, null,
-                                         verifier );
+            // built from the loader's managers rather than its keystores, so trust reloads reach live connections;
+            // like the keystore, the path trust manager leaves out the JDK's default CAs
+            final SSLContext ctx = SSLContext.getInstance( SSLSocketFactory.TLS );
+            ctx.init( new KeyManager[] { kc.getKeyManager() }, new TrustManager[] { tc.getPathTrustManager() },
+                      null );
+
+            return new SSLSocketFactory( ctx, verifier );
         }
         catch ( final KeyManagementException e )
         {
             logger.error( "Failed to setup SSL socket factory: %s", e, e.getMessage() );
             throw new HTTPException( "Failed to setup SSL socket factory: %s", e, e.getMessage() );
         }
-        catch ( final UnrecoverableKeyException e )
-        {
-            logger.error( "Failed to setup SSL socket factory: %s", e, e.getMessage() );
-            throw new HTTPException( "Failed to setup SSL socket factory: %s", e, e.getMessage() );
-        }
         catch ( final NoSuchAlgorithmException e )
         {
             logger.error( "Failed to setup SSL socket factory: %s", e, e.getMessage() );
             throw new HTTPException( "Failed to setup SSL socket factory: %s", e, e.getMessage() );
         }
-        catch ( final KeyStoreException e )
-        {
-            logger.error( "Failed to setup SSL socket factory: %s", e, e.getMessage() );
-            throw new HTTPException( "Failed to setup SSL socket factory: %s", e, e.getMessage() );
-        }
     }
 
     @Override
@@ -1,8 +1,10 @@
 package org.commonjava.util.http.ssl.path;
 
+import static org.commonjava.util.http.ssl.SSLUtils.addCerts;
 import static org.commonjava.util.http.ssl.SSLUtils.getDefaultKeyManager;
 import static org.commonjava.util.http.ssl.SSLUtils.getDefaultTrustManager;
 import static org.commonjava.util.http.ssl.SSLUtils.loadDefaultKeystore;
+import static org.commonjava.util.http.ssl.SSLUtils.newKeyStore;
 import static org.commonjava.util.http.ssl.SSLUtils.readCerts;
 
 import java.io.File;
@@ -14,12 +16,27 @@ import java.security.KeyStore;
 import java.security.KeyStoreException;
 import java.security.NoSuchAlgorithmException;
 import java.security.cert.CertificateException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Enumeration;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
 
+import javax.annotation.PreDestroy;
 import javax.enterprise.context.ApplicationScoped;
 import javax.net.ssl.TrustManager;
 import javax.net.ssl.TrustManagerFactory;
@@ -28,25 +45,147 @@ import javax.net.ssl.X509TrustManager;
 
 import org.apache.http.auth.AuthScope;
 import org.commonjava.util.http.HTTPException;
+import org.commonjava.util.http.ssl.BoundedCache;
+import org.commonjava.util.http.ssl.TrustDecisionCache;
+import org.commonjava.util.logging.Logger;
 
 @ApplicationScoped
 public class PathSSLResourceLoader
 {
+    private final Logger logger = new Logger( getClass() );
+
     private static final String CLASSPATH_PREFIX = "classpath:";
 
     //    private static final String CLIENT_SUBPATH = "client";
 
     private static final String SERVER_SUBPATH = "server";
 
+    public static final int DEFAULT_LOADER_THREADS = Runtime.getRuntime()
+                                                            .availableProcessors();
+
+    private static final BoundedCache<String, List<String>> JAR_INDEXES =
+        new BoundedCache<String, List<String>>( 64, 1, TimeUnit.DAYS );
+
     private final String path;
 
+    private final TrustDecisionCache trustDecisions;
+
+    private final ExecutorService loaderExecutor;
+
+    private volatile KeyConfig keyConfig;
+
+    private volatile TrustConfig trustConfig;
+
+    private TrustDirectoryWatcher watcher;
+
+    private int lazyHosts;
+
     public PathSSLResourceLoader( final String path )
+    {
+        this( path, null );
+    }
+
+    /**
+     * @param trustDecisions optional cache of positive trust decisions for the loaded {@link MultiTrustManager}; null
+     *        disables caching.
+     */
+    public PathSSLResourceLoader( final String path, final TrustDecisionCache trustDecisions )
+    {
+        this( path, trustDecisions, null );
+    }
+
+    /**
+     * @param loaderExecutor pool used to parse certificate files in parallel; it is not shut down by the loader. If
+     *        null, a temporary pool of up to {@link #DEFAULT_LOADER_THREADS} threads is used for each load.
+     */
+    public PathSSLResourceLoader( final String path, final TrustDecisionCache trustDecisions,
+                                  final ExecutorService loaderExecutor )
     {
         this.path = path;
+        this.trustDecisions = trustDecisions;
+        this.loaderExecutor = loaderExecutor;
+    }
+
+    /**
+     * Load per-host trust files (named host_port...) on the first handshake with that host rather than up front,
+     * keeping at most maxHosts hosts loaded; 0 (the default) loads everything eagerly. Other files are still loaded
+     * eagerly, and are all the {@link TrustConfig#getKeystore()} contains in lazy mode. Only applies to filesystem
+     * paths, and skips any {@link TrustSnapshot}. Drops the loaded trust configuration, so call it before first use.
+     * <p>
+     * This also changes what a per-host file is trusted for. Loaded eagerly, its certificates join the global trust
+     * store and are trusted for every host. Loaded lazily, they are only trusted for handshakes with the host and port
+     * the file is named for (see {@link LazyHostTrustManager}).
+     */
+    public synchronized void setLazyHosts( final int maxHosts )
+    {
+        lazyHosts = maxHosts;
+        trustConfig = null;
+    }
+
+    public int getLazyHosts()
+    {
+        return lazyHosts;
     }
 
+    /**
+     * Key configuration, loaded on first use and then reused until {@link #invalidate()}.
+     */
     public KeyConfig getKeyConfig()
         throws HTTPException
+    {
+        KeyConfig config = keyConfig;
+        if ( config == null )
+        {
+            synchronized ( this )
+            {
+                config = keyConfig;
+                if ( config == null )
+                {
+                    config = loadKeyConfig();
+                    keyConfig = config;
+                }
+            }
+        }
+
+        return config;
+    }
+
+    /**
+     * Trust configuration, loaded on first use and then reused until {@link #invalidate()}, so the socket factory and
+     * trust manager built from one loader share a single scan and parse.
+     */
+    public TrustConfig getTrustConfig()
+        throws HTTPException
+    {
+        TrustConfig config = trustConfig;
+        if ( config == null )
+        {
+            synchronized ( this )
+            {
+                config = trustConfig;
+                if ( config == null )
+                {
+                    config = loadTrustConfig();
+                    trustConfig = config;
+                }
+            }
+        }
+
+        return config;
+    }
+
+    /**
+     * Drop the loaded configurations; the next call to {@link #getKeyConfig()} / {@link #getTrustConfig()} reloads
+     * from the path. Factories and managers already built from them are unaffected.
+     */
+    public synchronized void invalidate()
+    {
+        keyConfig = null;
+        trustConfig = null;
+    }
+
+    private KeyConfig loadKeyConfig()
+        throws HTTPException
     {
         // TODO: Load key PEM files somehow...not sure about passwords for keys, though.
         //        final String basedir = new File( path, CLIENT_SUBPATH ).getPath();
@@ -56,42 +195,307 @@ public class PathSSLResourceLoader
         return new KeyConfig( ks, new MultiKeyManager( km ) );
     }
 
-    public TrustConfig getTrustConfig()
+    private TrustConfig loadTrustConfig()
         throws HTTPException
     {
         final String basedir = new File( path, SERVER_SUBPATH ).getPath();
 
+        final X509TrustManager dtm = getDefaultTrustManager();
+
+        if ( !basedir.startsWith( CLASSPATH_PREFIX ) )
+        {
+            final File dir = new File( basedir );
+            final int maxHosts = lazyHosts;
+
+            final List<File> files = new ArrayList<File>();
+            final List<File> hostFiles = new ArrayList<File>();
+            for ( final File f : listFiles( dir ) )
+            {
+                if ( maxHosts > 0 && getHostScope( f.getName() ) != null )
+                {
+                    hostFiles.add( f );
+                }
+                else
+                {
+                    files.add( f );
+                }
+            }
+
+            SortedMap<String, KeyStore> fileStores = maxHosts > 0 ? null : loadSnapshot( files );
+            if ( fileStores == null )
+            {
+                fileStores = parseFileStores( files, dir );
+            }
+
+            final KeyStore ks = mergeFileStores( fileStores.values() );
+            final ReloadableTrustManager reloadable = new ReloadableTrustManager( newTrustManager( ks ) );
+
+            X509TrustManager pathTm = reloadable;
+            LazyHostTrustManager lazy = null;
+            if ( maxHosts > 0 )
+            {
+                lazy = new LazyHostTrustManager( reloadable, hostFiles, maxHosts );
+                pathTm = lazy;
+            }
+
+            final X509TrustManager tm = new MultiTrustManager( trustDecisions, pathTm, dtm );
+            return new TrustConfig( ks, tm, pathTm, dir, Collections.unmodifiableSortedMap( fileStores ), reloadable,
+                                    lazy );
+        }
+
         final KeyStore ks = loadDefaultKeystore();
+        loadFromClasspath( basedir.substring( CLASSPATH_PREFIX.length() ), ks );
+
+        try
+        {
+            if ( ks.size() < 1 )
+            {
+                return new TrustConfig( ks, new MultiTrustManager( trustDecisions, dtm ),
+                                        ReloadableTrustManager.NO_TRUST );
+            }
+        }
+        catch ( final KeyStoreException e )
+        {
+        }
 
-        if ( basedir.startsWith( CLASSPATH_PREFIX ) )
+        final X509TrustManager pathTm = newTrustManager( ks );
+        return new TrustConfig( ks, new MultiTrustManager( trustDecisions, pathTm, dtm ), pathTm );
+    }
+
+    /**
+     * Compile the trust directory's .pem files into a {@link TrustSnapshot} in the base path, which later loads use
+     * instead of the .pem files for as long as those are unchanged. Only filesystem paths are supported.
+     */
+    public File writeTrustSnapshot()
+        throws HTTPException
+    {
+        if ( path.startsWith( CLASSPATH_PREFIX ) )
+        {
+            throw new HTTPException( "Cannot write a trust snapshot for classpath location: %s", path );
+        }
+
+        final File dir = new File( path, SERVER_SUBPATH );
+        final List<File> files = listFiles( dir );
+        final File target = new File( path, TrustSnapshot.FILE_NAME );
+
+        TrustSnapshot.write( target, TrustSnapshot.fingerprint( files ), parseFileStores( files, dir ) );
+
+        return target;
+    }
+
+    /**
+     * Per-file stores from the trust snapshot, or null if there is none, or it is unreadable or out of date.
+     */
+    private SortedMap<String, KeyStore> loadSnapshot( final List<File> files )
+        throws HTTPException
+    {
+        final File snapshotFile = new File( path, TrustSnapshot.FILE_NAME );
+        if ( !snapshotFile.isFile() )
+        {
+            return null;
+        }
+
+        try
+        {
+            final TrustSnapshot snapshot = TrustSnapshot.read( snapshotFile );
+            if ( !snapshot.getSourceFingerprint()
+                          .equals( TrustSnapshot.fingerprint( files ) ) )
+            {
+                logger.info( "Trust snapshot: %s is out of date; loading .pem files instead.", snapshotFile );
+                return null;
+            }
+
+            return snapshot.toFileStores();
+        }
+        catch ( final HTTPException e )
+        {
+            logger.error( "Failed to load trust snapshot: %s; loading .pem files instead. Reason: %s", e,
+                          snapshotFile, e.getMessage() );
+            return null;
+        }
+    }
+
+    private SortedMap<String, KeyStore> parseFileStores( final List<File> files, final File dir )
+        throws HTTPException
+    {
+        final List<KeyStore> parsed = parseFiles( files, dir );
+
+        final SortedMap<String, KeyStore> fileStores = new TreeMap<String, KeyStore>();
+        for ( int i = 0; i < files.size(); i++ )
+        {
+            fileStores.put( files.get( i )
+                                 .getName(), parsed.get( i ) );
+        }
+
+        return fileStores;
+    }
+
+    /**
+     * Re-parse the named files of a reloadable trust directory (names that no longer exist are dropped) and swap the
+     * rebuilt store into the live trust manager. A null collection rescans the whole directory. If anything fails to
+     * parse, the previous certificates stay in effect. Handshakes in progress are not blocked and pooled connections
+     * are kept; the new certificates apply to the next handshake.
+     */
+    public synchronized void reloadTrustFiles( final Collection<String> names )
+        throws HTTPException
+    {
+        final TrustConfig config = trustConfig;
+        if ( config == null || !config.isReloadable() )
         {
-            final String cpDir = basedir.substring( CLASSPATH_PREFIX.length() );
-            loadFromClasspath( cpDir, ks );
+            return;
+        }
+
+        final File dir = config.getDirectory();
+        final SortedMap<String, KeyStore> fileStores = new TreeMap<String, KeyStore>( config.getFileStores() );
+
+        final Set<String> changed = new TreeSet<String>();
+        if ( names == null )
+        {
+            changed.addAll( fileStores.keySet() );
+            final String[] fnames = dir.list();
+            if ( fnames != null )
+            {
+                changed.addAll( Arrays.asList( fnames ) );
+            }
         }
         else
         {
-            final File dir = new File( basedir );
-            if ( dir.exists() && dir.isDirectory() )
+            changed.addAll( names );
+        }
+
+        final LazyHostTrustManager lazy = config.getLazyHosts();
+        if ( lazy != null )
+        {
+            if ( names == null )
             {
-                final String[] fnames = dir.list();
-                if ( fnames != null )
+                changed.addAll( lazy.getFileNames() );
+            }
+
+            final List<File> hostFiles = new ArrayList<File>();
+            for ( final Iterator<String> it = changed.iterator(); it.hasNext(); )
+            {
+                final String name = it.next();
+                if ( getHostScope( name ) != null )
                 {
-                    for ( final String fname : fnames )
-                    {
-                        final File f = new File( dir, fname );
-                        loadFromFile( f.getPath(), ks );
-                    }
+                    hostFiles.add( new File( dir, name ) );
+                    it.remove();
                 }
             }
+
+            lazy.refresh( hostFiles );
+            if ( changed.isEmpty() )
+            {
+                logger.info( "Reloaded %d host trust file(s) from: %s", hostFiles.size(), dir );
+                return;
+            }
         }
 
-        final X509TrustManager dtm = getDefaultTrustManager();
+        final List<File> files = new ArrayList<File>( changed.size() );
+        for ( final String name : changed )
+        {
+            final File f = new File( dir, name );
+            if ( f.isFile() )
+            {
+                files.add( f );
+            }
+            else
+            {
+                fileStores.remove( name );
+            }
+        }
+
+        final List<KeyStore> parsed = parseFiles( files, dir );
+        for ( int i = 0; i < files.size(); i++ )
+        {
+            fileStores.put( files.get( i )
+                                 .getName(), parsed.get( i ) );
+        }
 
+        final KeyStore ks = mergeFileStores( fileStores.values() );
+        config.update( ks, fileStores, newTrustManager( ks ) );
+
+        logger.info( "Reloaded %d trust file(s) from: %s", files.size(), dir );
+    }
+
+    /**
+     * Watch the trust directory and reload changed files into the live trust manager (see
+     * {@link #reloadTrustFiles(Collection)}). Only filesystem paths are watched; for classpath locations this does
+     * nothing.
+     */
+    public void startWatching()
+        throws HTTPException
+    {
+        startWatching( TrustDirectoryWatcher.DEFAULT_QUIET_MILLIS );
+    }
+
+    /**
+     * @param quietMillis how long the directory must be quiet before a batch of changes is reloaded, so a file that
+     *        is still being written (or a bulk copy) is picked up once.
+     */
+    public synchronized void startWatching( final long quietMillis )
+        throws HTTPException
+    {
+        if ( watcher != null )
+        {
+            return;
+        }
+
+        final TrustConfig config = getTrustConfig();
+        if ( !config.isReloadable() )
+        {
+            return;
+        }
+
+        try
+        {
+            watcher = new TrustDirectoryWatcher( this, config.getDirectory(), quietMillis );
+        }
+        catch ( final IOException e )
+        {
+            throw new HTTPException( "Failed to watch trust directory: %s. Reason: %s", e, config.getDirectory(),
+                                     e.getMessage() );
+        }
+
+        watcher.start();
+    }
+
+    @PreDestroy
+    public synchronized void stopWatching()
+    {
+        if ( watcher != null )
+        {
+            watcher.close();
+            watcher = null;
+        }
+    }
+
+    private static KeyStore mergeFileStores( final Collection<KeyStore> fileStores )
+        throws HTTPException
+    {
+        final KeyStore ks = loadDefaultKeystore();
+        try
+        {
+            for ( final KeyStore fileStore : fileStores )
+            {
+                addCerts( fileStore, ks );
+            }
+        }
+        catch ( final KeyStoreException e )
+        {
+            throw new HTTPException( "Failed to merge certificates from .pem files: %s", e, e.getMessage() );
+        }
+
+        return ks;
+    }
+
+    static X509TrustManager newTrustManager( final KeyStore ks )
+        throws HTTPException
+    {
         try
         {
             if ( ks.size() < 1 )
             {
-                return new TrustConfig( ks, new MultiTrustManager( dtm ) );
+                return ReloadableTrustManager.NO_TRUST;
             }
         }
         catch ( final KeyStoreException e )
@@ -123,10 +527,10 @@ public class PathSSLResourceLoader
             }
         }
 
-        return new TrustConfig( ks, new MultiTrustManager( tm, dtm ) );
+        return tm;
     }
 
-    private static void loadFromClasspath( final String basepath, final KeyStore ks )
+    private void loadFromClasspath( final String basepath, final KeyStore ks )
         throws HTTPException
     {
         Enumeration<URL> resources;
@@ -151,12 +555,154 @@ public class PathSSLResourceLoader
             }
             else
             {
-                loadFromFile( url.getPath(), ks );
+                final File f = new File( url.getPath() );
+                if ( f.isDirectory() )
+                {
+                    loadFromDirectory( f, ks );
+                }
+                else
+                {
+                    loadFromFile( f.getPath(), ks );
+                }
             }
         }
     }
 
-    private static void loadFromFile( final String path, final KeyStore ks )
+    /**
+     * Parse the directory's files in parallel, each into its own store, then merge them into the target in filename
+     * order so the result doesn't depend on scheduling: where aliases collide, the later file wins.
+     */
+    private void loadFromDirectory( final File dir, final KeyStore ks )
+        throws HTTPException
+    {
+        final List<File> files = listFiles( dir );
+        final List<KeyStore> parsed = parseFiles( files, dir );
+        for ( int i = 0; i < files.size(); i++ )
+        {
+            try
+            {
+                addCerts( parsed.get( i ), ks );
+            }
+            catch ( final KeyStoreException e )
+            {
+                throw new HTTPException( "Failed to add certificates from file: %s. Reason: %s", e, files.get( i ),
+                                         e.getMessage() );
+            }
+        }
+    }
+
+    private static List<File> listFiles( final File dir )
+    {
+        final String[] fnames = dir.list();
+        if ( fnames == null )
+        {
+            return Collections.emptyList();
+        }
+
+        Arrays.sort( fnames );
+
+        final List<File> files = new ArrayList<File>( fnames.length );
+        for ( final String fname : fnames )
+        {
+            final File f = new File( dir, fname );
+            if ( f.isFile() )
+            {
+                files.add( f );
+            }
+        }
+
+        return files;
+    }
+
+    /**
+     * Parse each file into its own store, in parallel when there is more than one. The result is in the same order as
+     * the files.
+     */
+    private List<KeyStore> parseFiles( final List<File> files, final File dir )
+        throws HTTPException
+    {
+        final List<KeyStore> stores = new ArrayList<KeyStore>( files.size() );
+        if ( files.size() < 2 )
+        {
+            for ( final File f : files )
+            {
+                final KeyStore fileStore = newKeyStore();
+                loadFromFile( f.getPath(), fileStore );
+                stores.add( fileStore );
+            }
+
+            return stores;
+        }
+
+        ExecutorService executor = loaderExecutor;
+        if ( executor == null )
+        {
+            executor = Executors.newFixedThreadPool( Math.min( files.size(), DEFAULT_LOADER_THREADS ) );
+        }
+
+        final List<Future<KeyStore>> parsed = new ArrayList<Future<KeyStore>>( files.size() );
+        try
+        {
+            for ( final File f : files )
+            {
+                parsed.add( executor.submit( new Callable<KeyStore>()
+                {
+                    @Override
+                    public KeyStore call()
+                        throws HTTPException
+                    {
+                        final KeyStore fileStore = newKeyStore();
+                        loadFromFile( f.getPath(), fileStore );
+
+                        return fileStore;
+                    }
+                } ) );
+            }
+
+            for ( int i = 0; i < parsed.size(); i++ )
+            {
+                try
+                {
+                    stores.add( parsed.get( i )
+                                      .get() );
+                }
+                catch ( final ExecutionException e )
+                {
+                    final Throwable cause = e.getCause();
+                    if ( cause instanceof HTTPException )
+                    {
+                        throw (HTTPException) cause;
+                    }
+
+                    throw new HTTPException( "Failed to read certificate file: %s. Reason: %s", cause, files.get( i ),
+                                             cause.getMessage() );
+                }
+            }
+        }
+        catch ( final InterruptedException e )
+        {
+            Thread.currentThread()
+                  .interrupt();
+
+            throw new HTTPException( "Interrupted while loading certificates from: %s", e, dir );
+        }
+        finally
+        {
+            for ( final Future<KeyStore> future : parsed )
+            {
+                future.cancel( true );
+            }
+
+            if ( executor != loaderExecutor )
+            {
+                executor.shutdownNow();
+            }
+        }
+
+        return stores;
+    }
+
+    static void loadFromFile( final String path, final KeyStore ks )
         throws HTTPException
     {
         final File f = new File( path );
@@ -205,6 +751,11 @@ public class PathSSLResourceLoader
         }
     }
 
+    /**
+     * Read the certificate entries under the base path, opening the jar once. The entry names come from the jar's
+     * {@link CertificateIndex} if it has one, otherwise from a scan of the jar; either way they are cached per jar
+     * (and jar timestamp / size), so later loads go straight to the entries.
+     */
     private static void loadFromJar( final URL url, final String basepath, final KeyStore ks )
         throws HTTPException
     {
@@ -220,58 +771,50 @@ public class PathSSLResourceLoader
             jar = jar.substring( 5 );
         }
 
+        final File jarFile = new File( jar );
+        JarFile jf = null;
         try
         {
-            final JarFile jf = new JarFile( jar );
+            jf = new JarFile( jarFile );
 
-            final List<JarEntry> entries = Collections.list( jf.entries() );
-            for ( final JarEntry entry : entries )
+            for ( final String name : getJarEntryNames( jf, jarFile, basepath ) )
             {
-                if ( entry.isDirectory() )
+                final JarEntry entry = jf.getJarEntry( name );
+                if ( entry == null || entry.isDirectory() )
                 {
                     continue;
                 }
 
-                final String name = entry.getName();
-                if ( name.startsWith( basepath ) )
-                {
-                    final InputStream is = jf.getInputStream( entry );
-                    final AuthScope scope = getAuthScope( name );
+                final InputStream is = jf.getInputStream( entry );
+                final AuthScope scope = getAuthScope( name );
 
+                try
+                {
+                    readCerts( scope, is, ks );
+                }
+                catch ( final CertificateException e )
+                {
+                    throw new HTTPException( "Failed to read certificates from classpath jar entry: %s!%s. Reason: %s",
+                                             e, jar, name, e.getMessage() );
+                }
+                catch ( final KeyStoreException e )
+                {
+                    throw new HTTPException( "Failed to read certificates from classpath jar entry: %s!%s. Reason: %s",
+                                             e, jar, name, e.getMessage() );
+                }
+                catch ( final NoSuchAlgorithmException e )
+                {
+                    throw new HTTPException( "Failed to read certificates from classpath jar entry: %s!%s. Reason: %s",
+                                             e, jar, name, e.getMessage() );
+                }
+                finally
+                {
                     try
                     {
-                        readCerts( scope, is, ks );
-                    }
-                    catch ( final CertificateException e )
-                    {
-                        throw new HTTPException(
-                                                 "Failed to read certificates from classpath jar entry: %s!%s. Reason: %s",
-                                                 e, jar, name, e.getMessage() );
-                    }
-                    catch ( final KeyStoreException e )
-                    {
-                        throw new HTTPException(
-                                                 "Failed to read certificates from classpath jar entry: %s!%s. Reason: %s",
-                                                 e, jar, name, e.getMessage() );
-                    }
-                    catch ( final NoSuchAlgorithmException e )
-                    {
-                        throw new HTTPException(
-                                                 "Failed to read certificates from classpath jar entry: %s!%s. Reason: %s",
-                                                 e, jar, name, e.getMessage() );
+                        is.close();
                     }
-                    finally
+                    catch ( final IOException eInner )
                     {
-                        if ( is != null )
-                        {
-                            try
-                            {
-                                is.close();
-                            }
-                            catch ( final IOException eInner )
-                            {
-                            }
-                        }
                     }
                 }
             }
@@ -280,27 +823,82 @@ public class PathSSLResourceLoader
         {
             throw new HTTPException( "Failed to open classpath jar: %s. Reason: %s", e, jar, e.getMessage() );
         }
+        finally
+        {
+            if ( jf != null )
+            {
+                try
+                {
+                    jf.close();
+                }
+                catch ( final IOException e )
+                {
+                }
+            }
+        }
     }
 
-    private static AuthScope getAuthScope( final String name )
+    static List<String> getJarEntryNames( final JarFile jf, final File jarFile, final String basepath )
+        throws HTTPException
     {
-        final String fname = new File( name ).getName();
-        AuthScope scope = null;
-        if ( fname.indexOf( '_' ) > -1 )
+        try
         {
-            final String[] parts = fname.split( "_" );
-            if ( parts.length > 1 && parts[1].matches( "\\d+" ) )
+            return JAR_INDEXES.get( jarIndexKey( jarFile, basepath ), new Callable<List<String>>()
             {
-                scope = new AuthScope( parts[0], Integer.parseInt( parts[1] ) );
-            }
+                @Override
+                public List<String> call()
+                    throws IOException
+                {
+                    return Collections.unmodifiableList( CertificateIndex.read( jf, basepath ) );
+                }
+            } );
         }
+        catch ( final ExecutionException e )
+        {
+            final Throwable cause = e.getCause();
+            throw new HTTPException( "Failed to index classpath jar: %s. Reason: %s", cause, jarFile,
+                                     cause.getMessage() );
+        }
+    }
+
+    /**
+     * Cache key for a jar's entry names: a jar replaced in place (new timestamp or size) is indexed again.
+     */
+    static String jarIndexKey( final File jarFile, final String basepath )
+    {
+        return jarFile.getAbsolutePath() + "@" + jarFile.lastModified() + ":" + jarFile.length() + "!" + basepath;
+    }
 
+    private static AuthScope getAuthScope( final String name )
+    {
+        final AuthScope scope = getHostScope( name );
         if ( scope == null )
         {
-            scope = new AuthScope( fname, 443 );
+            return new AuthScope( new File( name ).getName(), 443 );
         }
 
         return scope;
     }
 
+    /**
+     * Scope of a per-host file named host_port[.ext] or host_port_..., or null if the name doesn't follow that
+     * pattern.
+     */
+    static AuthScope getHostScope( final String name )
+    {
+        final String fname = new File( name ).getName();
+        if ( fname.indexOf( '_' ) > -1 )
+        {
+            final String[] parts = fname.split( "_" );
+            if ( parts.length > 1 && parts[1].matches( "\\d+(\\..*)?" ) )
+            {
+                final int dot = parts[1].indexOf( '.' );
+                final String port = dot < 0 ? parts[1] : parts[1].substring( 0, dot );
+                return new AuthScope( parts[0], Integer.parseInt( port ) );
+            }
+        }
+
+        return null;
+    }
+
 }
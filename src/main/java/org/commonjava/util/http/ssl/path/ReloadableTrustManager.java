@@ -0,0 +1,125 @@
+package org.commonjava.util.http.ssl.path;
+
+import java.net.Socket;
+import java.security.cert.CertificateException;
+import java.security.cert.X509Certificate;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.X509ExtendedTrustManager;
+import javax.net.ssl.X509TrustManager;
+
+import org.commonjava.util.http.ssl.SSLUtils;
+import org.commonjava.util.http.ssl.VersionedTrustManager;
+
+/**
+ * Trust manager whose delegate can be replaced while in use. Each check reads the current delegate once, so a swap
+ * never blocks or interrupts a handshake in progress; handshakes started after the swap see the new delegate. The
+ * version increases with every swap, which invalidates cached trust decisions and issuer lists upstream.
+ */
+public class ReloadableTrustManager
+    extends X509ExtendedTrustManager
+    implements VersionedTrustManager
+{
+
+    /**
+     * Delegate for an empty trust store: trusts nothing.
+     */
+    static final X509TrustManager NO_TRUST = new X509TrustManager()
+    {
+        @Override
+        public void checkClientTrusted( final X509Certificate[] chain, final String authType )
+            throws CertificateException
+        {
+            throw new CertificateException( "No trusted certificates are loaded." );
+        }
+
+        @Override
+        public void checkServerTrusted( final X509Certificate[] chain, final String authType )
+            throws CertificateException
+        {
+            throw new CertificateException( "No trusted certificates are loaded." );
+        }
+
+        @Override
+        public X509Certificate[] getAcceptedIssuers()
+        {
+            return new X509Certificate[0];
+        }
+    };
+
+    private final AtomicLong version = new AtomicLong();
+
+    private volatile X509TrustManager delegate;
+
+    public ReloadableTrustManager( final X509TrustManager delegate )
+    {
+        this.delegate = delegate;
+    }
+
+    public void swap( final X509TrustManager delegate )
+    {
+        this.delegate = delegate;
+        version.incrementAndGet();
+    }
+
+    public X509TrustManager getDelegate()
+    {
+        return delegate;
+    }
+
+    @Override
+    public long getVersion()
+    {
+        return version.get();
+    }
+
+    @Override
+    public void checkClientTrusted( final X509Certificate[] chain, final String authType )
+        throws CertificateException
+    {
+        delegate.checkClientTrusted( chain, authType );
+    }
+
+    @Override
+    public void checkServerTrusted( final X509Certificate[] chain, final String authType )
+        throws CertificateException
+    {
+        delegate.checkServerTrusted( chain, authType );
+    }
+
+    @Override
+    public void checkClientTrusted( final X509Certificate[] chain, final String authType, final Socket socket )
+        throws CertificateException
+    {
+        SSLUtils.checkClientTrusted( delegate, chain, authType, socket );
+    }
+
+    @Override
+    public void checkServerTrusted( final X509Certificate[] chain, final String authType, final Socket socket )
+        throws CertificateException
+    {
+        SSLUtils.checkServerTrusted( delegate, chain, authType, socket );
+    }
+
+    @Override
+    public void checkClientTrusted( final X509Certificate[] chain, final String authType, final SSLEngine engine )
+        throws CertificateException
+    {
+        SSLUtils.checkClientTrusted( delegate, chain, authType, engine );
+    }
+
+    @Override
+    public void checkServerTrusted( final X509Certificate[] chain, final String authType, final SSLEngine engine )
+        throws CertificateException
+    {
+        SSLUtils.checkServerTrusted( delegate, chain, authType, engine );
+    }
+
+    @Override
+    public X509Certificate[] getAcceptedIssuers()
+    {
+        return delegate.getAcceptedIssuers();
+    }
+
+}
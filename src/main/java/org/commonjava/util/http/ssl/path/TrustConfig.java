@@ -1,20 +1,59 @@
 package org.commonjava.util.http.ssl.path;
 
+import java.io.File;
 import java.security.KeyStore;
+import java.util.Collections;
+import java.util.SortedMap;
 
 import javax.net.ssl.X509TrustManager;
 
 public class TrustConfig
 {
 
-    private final KeyStore keystore;
+    private volatile KeyStore keystore;
 
     private final X509TrustManager trustManager;
 
+    private final X509TrustManager pathTrustManager;
+
+    private final File directory;
+
+    private final ReloadableTrustManager reloadable;
+
+    private volatile SortedMap<String, KeyStore> fileStores;
+
+    private final LazyHostTrustManager lazyHosts;
+
+    /**
+     * Configuration where the same trust manager serves {@link #getTrustManager()} and {@link #getPathTrustManager()}.
+     */
     public TrustConfig( final KeyStore keystore, final X509TrustManager trustManager )
+    {
+        this( keystore, trustManager, trustManager );
+    }
+
+    public TrustConfig( final KeyStore keystore, final X509TrustManager trustManager,
+                        final X509TrustManager pathTrustManager )
+    {
+        this( keystore, trustManager, pathTrustManager, null, null, null, null );
+    }
+
+    /**
+     * Reloadable configuration for a filesystem directory: the per-file stores (by filename) are kept so a reload only
+     * has to re-parse the files that changed. In lazy mode, per-host files are left to the lazy trust manager and
+     * are not in the keystore.
+     */
+    TrustConfig( final KeyStore keystore, final X509TrustManager trustManager, final X509TrustManager pathTrustManager,
+                 final File directory, final SortedMap<String, KeyStore> fileStores,
+                 final ReloadableTrustManager reloadable, final LazyHostTrustManager lazyHosts )
     {
         this.keystore = keystore;
         this.trustManager = trustManager;
+        this.pathTrustManager = pathTrustManager;
+        this.directory = directory;
+        this.fileStores = fileStores;
+        this.reloadable = reloadable;
+        this.lazyHosts = lazyHosts;
     }
 
     public KeyStore getKeystore()
@@ -22,9 +61,51 @@ public class TrustConfig
         return keystore;
     }
 
+    /**
+     * Trusts the loaded certificates and the JDK's default CAs.
+     */
     public X509TrustManager getTrustManager()
     {
         return trustManager;
     }
 
+    /**
+     * Trusts the loaded certificates only, and follows reloads. This is what {@link PathSSLProvider#build()} uses.
+     */
+    public X509TrustManager getPathTrustManager()
+    {
+        return pathTrustManager;
+    }
+
+    public boolean isReloadable()
+    {
+        return reloadable != null;
+    }
+
+    File getDirectory()
+    {
+        return directory;
+    }
+
+    LazyHostTrustManager getLazyHosts()
+    {
+        return lazyHosts;
+    }
+
+    SortedMap<String, KeyStore> getFileStores()
+    {
+        return fileStores;
+    }
+
+    /**
+     * Publish a reloaded trust store. The trust manager handed out by {@link #getTrustManager()} stays the same
+     * instance; only its delegate is swapped.
+     */
+    void update( final KeyStore keystore, final SortedMap<String, KeyStore> fileStores, final X509TrustManager tm )
+    {
+        this.keystore = keystore;
+        this.fileStores = Collections.unmodifiableSortedMap( fileStores );
+        reloadable.swap( tm );
+    }
+
 }
@@ -0,0 +1,157 @@
+package org.commonjava.util.http.ssl.path;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Path;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+
+import org.commonjava.util.http.HTTPException;
+import org.commonjava.util.logging.Logger;
+
+/**
+ * Daemon thread that feeds changes in a trust directory to {@link PathSSLResourceLoader#reloadTrustFiles}. Events are
+ * collected until the directory has been quiet for a while, then reloaded as one batch.
+ */
+final class TrustDirectoryWatcher
+    implements Runnable
+{
+
+    static final long DEFAULT_QUIET_MILLIS = 500;
+
+    private final Logger logger = new Logger( getClass() );
+
+    private final PathSSLResourceLoader loader;
+
+    private final File dir;
+
+    private final long quietMillis;
+
+    private final WatchService watchService;
+
+    private final Thread thread;
+
+    TrustDirectoryWatcher( final PathSSLResourceLoader loader, final File dir, final long quietMillis )
+        throws IOException
+    {
+        this.loader = loader;
+        this.dir = dir;
+        this.quietMillis = quietMillis;
+
+        final Path path = dir.toPath();
+        watchService = path.getFileSystem()
+                           .newWatchService();
+        try
+        {
+            path.register( watchService, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE );
+        }
+        catch ( final IOException e )
+        {
+            watchService.close();
+            throw e;
+        }
+
+        thread = new Thread( this, "trust-watcher[" + dir + "]" );
+        thread.setDaemon( true );
+    }
+
+    void start()
+    {
+        thread.start();
+    }
+
+    void close()
+    {
+        try
+        {
+            watchService.close();
+        }
+        catch ( final IOException e )
+        {
+        }
+
+        thread.interrupt();
+    }
+
+    @Override
+    public void run()
+    {
+        try
+        {
+            while ( true )
+            {
+                final Set<String> changed = new TreeSet<String>();
+                boolean rescan = collect( watchService.take(), changed );
+
+                WatchKey key;
+                while ( ( key = watchService.poll( quietMillis, TimeUnit.MILLISECONDS ) ) != null )
+                {
+                    rescan = collect( key, changed ) || rescan;
+                }
+
+                try
+                {
+                    loader.reloadTrustFiles( rescan ? null : changed );
+                }
+                catch ( final HTTPException e )
+                {
+                    logger.error( "Failed to reload trust directory: %s. Keeping previous certificates. Reason: %s",
+                                  e, dir, e.getMessage() );
+                }
+                catch ( final RuntimeException e )
+                {
+                    // keep watching; the next change gets another chance to reload
+                    logger.error( "Failed to reload trust directory: %s. Keeping previous certificates. Reason: %s",
+                                  e, dir, e.getMessage() );
+                }
+            }
+        }
+        catch ( final ClosedWatchServiceException e )
+        {
+            // closed by stopWatching()
+        }
+        catch ( final InterruptedException e )
+        {
+            Thread.currentThread()
+                  .interrupt();
+        }
+    }
+
+    /**
+     * Add the changed filenames to the set; returns true if events were lost and the directory must be rescanned.
+     */
+    private boolean collect( final WatchKey key, final Set<String> changed )
+    {
+        boolean rescan = false;
+        for ( final WatchEvent<?> event : key.pollEvents() )
+        {
+            if ( event.kind() == OVERFLOW )
+            {
+                rescan = true;
+            }
+            else
+            {
+                changed.add( ( (Path) event.context() ).toString() );
+            }
+        }
+
+        if ( !key.reset() )
+        {
+            logger.error( "Trust directory: %s is no longer accessible; reloading what remains.", dir );
+            rescan = true;
+        }
+
+        return rescan;
+    }
+
+}
@@ -0,0 +1,530 @@
+package org.commonjava.util.http.ssl.path;
+
+import static org.apache.commons.codec.binary.Hex.encodeHexString;
+import static org.commonjava.util.http.ssl.SSLUtils.newKeyStore;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.security.KeyStore;
+import java.security.KeyStoreException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.cert.Certificate;
+import java.security.cert.CertificateException;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.zip.CRC32;
+
+import javax.security.auth.x500.X500Principal;
+
+import org.commonjava.util.http.HTTPException;
+
+/**
+ * Pre-compiled form of a {@link PathSSLResourceLoader} trust directory, so startup can skip reading and decoding the
+ * .pem files. Layout (big-endian):
+ *
+ * <pre>
+ * int     magic ("HTTS")
+ * short   format version
+ * string  source fingerprint: SHA-256 over the names and contents of the .pem files
+ * int     file count, then per file:
+ *   string  filename
+ *   int     certificate count, then per certificate: string alias, bytes DER encoding
+ * int     subject count, then per subject: bytes subject DN (DER), int count, int[] certificate indexes
+ * int     CRC32 of all preceding bytes
+ * </pre>
+ *
+ * Strings are UTF-8, and strings and byte arrays are prefixed with an int length. Certificate indexes count across all
+ * files, in order. The snapshot is only used while its source fingerprint matches the directory; otherwise the loader
+ * falls back to the .pem files.
+ * <p>
+ * Compile one with {@link PathSSLResourceLoader#writeTrustSnapshot()}; the benchmarks module has a command-line
+ * wrapper for it.
+ */
+public final class TrustSnapshot
+{
+
+    /**
+     * Name of the snapshot file, in the loader's base path (next to the server directory it is compiled from).
+     */
+    public static final String FILE_NAME = "trust.snapshot";
+
+    private static final int MAGIC = 0x48545453;
+
+    private static final short FORMAT_VERSION = 1;
+
+    private static final Charset UTF8 = Charset.forName( "UTF-8" );
+
+    private final String sourceFingerprint;
+
+    private final Map<String, List<Entry>> files;
+
+    private final List<Entry> entries;
+
+    private final Map<X500Principal, int[]> subjects;
+
+    private TrustSnapshot( final String sourceFingerprint, final Map<String, List<Entry>> files,
+                           final List<Entry> entries, final Map<X500Principal, int[]> subjects )
+    {
+        this.sourceFingerprint = sourceFingerprint;
+        this.files = files;
+        this.entries = entries;
+        this.subjects = subjects;
+    }
+
+    public String getSourceFingerprint()
+    {
+        return sourceFingerprint;
+    }
+
+    public List<String> getFileNames()
+    {
+        return Collections.unmodifiableList( new ArrayList<String>( files.keySet() ) );
+    }
+
+    public int size()
+    {
+        return entries.size();
+    }
+
+    /**
+     * Certificates with the given subject, decoded from the snapshot on each call.
+     */
+    public List<X509Certificate> getCertificates( final X500Principal subject )
+        throws HTTPException
+    {
+        final int[] indexes = subjects.get( subject );
+        if ( indexes == null )
+        {
+            return Collections.emptyList();
+        }
+
+        final CertificateFactory factory = newCertificateFactory();
+        final List<X509Certificate> certs = new ArrayList<X509Certificate>( indexes.length );
+        for ( final int idx : indexes )
+        {
+            certs.add( entries.get( idx )
+                              .decode( factory ) );
+        }
+
+        return certs;
+    }
+
+    /**
+     * One keystore per source file, by filename, holding the same aliases as parsing that file would.
+     */
+    SortedMap<String, KeyStore> toFileStores()
+        throws HTTPException
+    {
+        final CertificateFactory factory = newCertificateFactory();
+        final SortedMap<String, KeyStore> fileStores = new TreeMap<String, KeyStore>();
+        for ( final Map.Entry<String, List<Entry>> file : files.entrySet() )
+        {
+            final KeyStore ks = newKeyStore();
+            for ( final Entry entry : file.getValue() )
+            {
+                try
+                {
+                    ks.setCertificateEntry( entry.alias, entry.decode( factory ) );
+                }
+                catch ( final KeyStoreException e )
+                {
+                    throw new HTTPException( "Failed to add snapshot certificate: %s from: %s. Reason: %s", e,
+                                             entry.alias, file.getKey(), e.getMessage() );
+                }
+            }
+
+            fileStores.put( file.getKey(), ks );
+        }
+
+        return fileStores;
+    }
+
+    /**
+     * SHA-256 over the names and contents of the given files, in order.
+     */
+    public static String fingerprint( final List<File> sources )
+        throws HTTPException
+    {
+        MessageDigest digest;
+        try
+        {
+            digest = MessageDigest.getInstance( "SHA-256" );
+        }
+        catch ( final NoSuchAlgorithmException e )
+        {
+            throw new IllegalStateException( "SHA-256 MessageDigest is not available." );
+        }
+
+        final byte[] buf = new byte[8192];
+        for ( final File f : sources )
+        {
+            final byte[] name = f.getName()
+                                 .getBytes( UTF8 );
+            digest.update( intBytes( name.length ) );
+            digest.update( name );
+            digest.update( longBytes( f.length() ) );
+
+            InputStream is = null;
+            try
+            {
+                is = new FileInputStream( f );
+                int read;
+                while ( ( read = is.read( buf ) ) > -1 )
+                {
+                    digest.update( buf, 0, read );
+                }
+            }
+            catch ( final IOException e )
+            {
+                throw new HTTPException( "Failed to fingerprint certificate file: %s. Reason: %s", e, f,
+                                         e.getMessage() );
+            }
+            finally
+            {
+                if ( is != null )
+                {
+                    try
+                    {
+                        is.close();
+                    }
+                    catch ( final IOException e )
+                    {
+                    }
+                }
+            }
+        }
+
+        return encodeHexString( digest.digest() );
+    }
+
+    /**
+     * Write a snapshot of the given per-file stores (by filename). The file is written next to the target and then
+     * renamed over it, so readers never see a partial snapshot.
+     */
+    static void write( final File target, final String sourceFingerprint, final SortedMap<String, KeyStore> fileStores )
+        throws HTTPException
+    {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final DataOutputStream out = new DataOutputStream( bytes );
+
+        final Map<X500Principal, List<Integer>> subjects = new LinkedHashMap<X500Principal, List<Integer>>();
+        int idx = 0;
+        try
+        {
+            out.writeInt( MAGIC );
+            out.writeShort( FORMAT_VERSION );
+            writeBytes( out, sourceFingerprint.getBytes( UTF8 ) );
+
+            out.writeInt( fileStores.size() );
+            for ( final Map.Entry<String, KeyStore> file : fileStores.entrySet() )
+            {
+                final KeyStore ks = file.getValue();
+                final TreeSet<String> aliases = new TreeSet<String>( Collections.list( ks.aliases() ) );
+
+                writeBytes( out, file.getKey()
+                                     .getBytes( UTF8 ) );
+                out.writeInt( aliases.size() );
+                for ( final String alias : aliases )
+                {
+                    final Certificate cert = ks.getCertificate( alias );
+
+                    writeBytes( out, alias.getBytes( UTF8 ) );
+                    writeBytes( out, cert.getEncoded() );
+
+                    if ( cert instanceof X509Certificate )
+                    {
+                        final X500Principal subject = ( (X509Certificate) cert ).getSubjectX500Principal();
+                        List<Integer> indexes = subjects.get( subject );
+                        if ( indexes == null )
+                        {
+                            indexes = new ArrayList<Integer>();
+                            subjects.put( subject, indexes );
+                        }
+
+                        indexes.add( idx );
+                    }
+
+                    idx++;
+                }
+            }
+
+            out.writeInt( subjects.size() );
+            for ( final Map.Entry<X500Principal, List<Integer>> subject : subjects.entrySet() )
+            {
+                writeBytes( out, subject.getKey()
+                                        .getEncoded() );
+                out.writeInt( subject.getValue()
+                                     .size() );
+                for ( final Integer i : subject.getValue() )
+                {
+                    out.writeInt( i );
+                }
+            }
+
+            final CRC32 crc = new CRC32();
+            crc.update( bytes.toByteArray() );
+            out.writeInt( (int) crc.getValue() );
+            out.flush();
+        }
+        catch ( final KeyStoreException e )
+        {
+            throw new HTTPException( "Failed to read certificates for trust snapshot: %s. Reason: %s", e, target,
+                                     e.getMessage() );
+        }
+        catch ( final CertificateException e )
+        {
+            throw new HTTPException( "Failed to encode certificate for trust snapshot: %s. Reason: %s", e, target,
+                                     e.getMessage() );
+        }
+        catch ( final IOException e )
+        {
+            throw new HTTPException( "Failed to encode trust snapshot: %s. Reason: %s", e, target, e.getMessage() );
+        }
+
+        final File tmp = new File( target.getPath() + ".tmp" );
+        OutputStream os = null;
+        try
+        {
+            os = new FileOutputStream( tmp );
+            bytes.writeTo( os );
+            os.close();
+            os = null;
+
+            if ( !tmp.renameTo( target ) )
+            {
+                target.delete();
+                if ( !tmp.renameTo( target ) )
+                {
+                    throw new IOException( "Cannot rename: " + tmp );
+                }
+            }
+        }
+        catch ( final IOException e )
+        {
+            tmp.delete();
+            throw new HTTPException( "Failed to write trust snapshot: %s. Reason: %s", e, target, e.getMessage() );
+        }
+        finally
+        {
+            if ( os != null )
+            {
+                try
+                {
+                    os.close();
+                }
+                catch ( final IOException e )
+                {
+                }
+            }
+        }
+    }
+
+    /**
+     * Memory-map and validate a snapshot. The certificate encodings are copied out of the mapping (and decoded later),
+     * so nothing refers to the mapped file once this returns and it can be replaced or deleted.
+     */
+    public static TrustSnapshot read( final File file )
+        throws HTTPException
+    {
+        MappedByteBuffer buf;
+        FileInputStream in = null;
+        try
+        {
+            in = new FileInputStream( file );
+            final FileChannel channel = in.getChannel();
+            buf = channel.map( FileChannel.MapMode.READ_ONLY, 0, channel.size() );
+        }
+        catch ( final IOException e )
+        {
+            throw new HTTPException( "Failed to map trust snapshot: %s. Reason: %s", e, file, e.getMessage() );
+        }
+        finally
+        {
+            if ( in != null )
+            {
+                try
+                {
+                    in.close();
+                }
+                catch ( final IOException e )
+                {
+                }
+            }
+        }
+
+        try
+        {
+            if ( buf.limit() < 10 || buf.getInt() != MAGIC )
+            {
+                throw new HTTPException( "Not a trust snapshot: %s", file );
+            }
+
+            final short version = buf.getShort();
+            if ( version != FORMAT_VERSION )
+            {
+                throw new HTTPException( "Unsupported trust snapshot version: %s in: %s", version, file );
+            }
+
+            final int crcOffset = buf.limit() - 4;
+            final ByteBuffer content = buf.duplicate();
+            content.position( 0 );
+            content.limit( crcOffset );
+
+            final CRC32 crc = new CRC32();
+            crc.update( content );
+            if ( (int) crc.getValue() != buf.getInt( crcOffset ) )
+            {
+                throw new HTTPException( "Trust snapshot is corrupt (checksum mismatch): %s", file );
+            }
+
+            buf.limit( crcOffset );
+
+            final String sourceFingerprint = new String( readBytes( buf ), UTF8 );
+
+            final int fileCount = buf.getInt();
+            final Map<String, List<Entry>> files = new LinkedHashMap<String, List<Entry>>( fileCount * 2 );
+            final List<Entry> entries = new ArrayList<Entry>();
+            for ( int i = 0; i < fileCount; i++ )
+            {
+                final String name = new String( readBytes( buf ), UTF8 );
+                final int count = buf.getInt();
+
+                final List<Entry> fileEntries = new ArrayList<Entry>( count );
+                for ( int j = 0; j < count; j++ )
+                {
+                    final String alias = new String( readBytes( buf ), UTF8 );
+                    final byte[] der = readBytes( buf );
+
+                    final Entry entry = new Entry( alias, der );
+                    fileEntries.add( entry );
+                    entries.add( entry );
+                }
+
+                files.put( name, fileEntries );
+            }
+
+            final int subjectCount = buf.getInt();
+            final Map<X500Principal, int[]> subjects = new HashMap<X500Principal, int[]>( subjectCount * 2 );
+            for ( int i = 0; i < subjectCount; i++ )
+            {
+                final X500Principal subject = new X500Principal( readBytes( buf ) );
+                final int[] indexes = new int[buf.getInt()];
+                for ( int j = 0; j < indexes.length; j++ )
+                {
+                    indexes[j] = buf.getInt();
+                }
+
+                subjects.put( subject, indexes );
+            }
+
+            return new TrustSnapshot( sourceFingerprint, files, entries, subjects );
+        }
+        catch ( final BufferUnderflowException e )
+        {
+            throw new HTTPException( "Trust snapshot is truncated: %s", e, file );
+        }
+        catch ( final IllegalArgumentException e )
+        {
+            throw new HTTPException( "Trust snapshot is malformed: %s. Reason: %s", e, file, e.getMessage() );
+        }
+    }
+
+    private static CertificateFactory newCertificateFactory()
+        throws HTTPException
+    {
+        try
+        {
+            return CertificateFactory.getInstance( "X.509" );
+        }
+        catch ( final CertificateException e )
+        {
+            throw new HTTPException( "Failed to create X.509 certificate factory: %s", e, e.getMessage() );
+        }
+    }
+
+    private static void writeBytes( final DataOutputStream out, final byte[] data )
+        throws IOException
+    {
+        out.writeInt( data.length );
+        out.write( data );
+    }
+
+    private static byte[] readBytes( final ByteBuffer buf )
+    {
+        final int len = buf.getInt();
+        if ( len < 0 || len > buf.remaining() )
+        {
+            throw new BufferUnderflowException();
+        }
+
+        final byte[] data = new byte[len];
+        buf.get( data );
+        return data;
+    }
+
+    private static byte[] intBytes( final int value )
+    {
+        return new byte[] { (byte) ( value >>> 24 ), (byte) ( value >>> 16 ), (byte) ( value >>> 8 ), (byte) value };
+    }
+
+    private static byte[] longBytes( final long value )
+    {
+        final byte[] data = new byte[8];
+        for ( int i = 0; i < 8; i++ )
+        {
+            data[i] = (byte) ( value >>> ( 56 - 8 * i ) );
+        }
+
+        return data;
+    }
+
+    private static final class Entry
+    {
+        private final String alias;
+
+        private final byte[] der;
+
+        Entry( final String alias, final byte[] der )
+        {
+            this.alias = alias;
+            this.der = der;
+        }
+
+        X509Certificate decode( final CertificateFactory factory )
+            throws HTTPException
+        {
+            try
+            {
+                return (X509Certificate) factory.generateCertificate( new ByteArrayInputStream( der ) );
+            }
+            catch ( final CertificateException e )
+            {
+                throw new HTTPException( "Failed to decode snapshot certificate: %s. Reason: %s", e, alias,
+                                         e.getMessage() );
+            }
+        }
+    }
+
+}
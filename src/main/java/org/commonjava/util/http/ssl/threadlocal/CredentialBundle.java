@@ -0,0 +1,380 @@
+package org.commonjava.util.http.ssl.threadlocal;
+
+import static org.commonjava.util.http.ssl.SSLUtils.fingerprint;
+import static org.commonjava.util.http.ssl.SSLUtils.newKeyStore;
+import static org.commonjava.util.http.ssl.SSLUtils.readCerts;
+import static org.commonjava.util.http.ssl.SSLUtils.readKeyAndCert;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.security.KeyManagementException;
+import java.security.KeyStore;
+import java.security.KeyStoreException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.UnrecoverableKeyException;
+import java.security.cert.CertificateException;
+import java.security.spec.InvalidKeySpecException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+import javax.net.ssl.KeyManager;
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.TrustManagerFactory;
+
+import org.apache.commons.codec.binary.Hex;
+import org.apache.http.auth.AuthScope;
+import org.commonjava.util.http.HTTPException;
+import org.commonjava.util.http.ssl.AliasCodec;
+
+/**
+ * Parsed form of a set of {@link SSLKeyCert}s: the client keystore, server truststore and per-scope key passwords.
+ * Bundles are built once and then shared between threads, so their keystores never leave this package; the public
+ * getters hand out copies.
+ */
+public final class CredentialBundle
+{
+
+    private static final Charset UTF8 = Charset.forName( "UTF-8" );
+
+    private static final char[] COPY_PASSWORD = "copy".toCharArray();
+
+    private final String contentHash;
+
+    private final KeyStore keyStore;
+
+    private final KeyStore trustStore;
+
+    private final Map<AuthScope, String> keyPasswords;
+
+    private final String storeFingerprint;
+
+    private final CredentialIndex index;
+
+    private CredentialBundle( final String contentHash, final KeyStore keyStore, final KeyStore trustStore,
+                              final Map<AuthScope, String> keyPasswords )
+        throws HTTPException
+    {
+        this.contentHash = contentHash;
+        this.keyStore = keyStore;
+        this.trustStore = trustStore;
+        this.keyPasswords = Collections.unmodifiableMap( keyPasswords );
+        this.storeFingerprint = fingerprint( keyStore, trustStore );
+        this.index = CredentialIndex.build( keyStore, keyPasswords, trustStore );
+    }
+
+    public static CredentialBundle build( final Map<AuthScope, SSLKeyCert> keycerts )
+        throws HTTPException
+    {
+        return build( contentHash( keycerts ), keycerts );
+    }
+
+    static CredentialBundle build( final String contentHash, final Map<AuthScope, SSLKeyCert> keycerts )
+        throws HTTPException
+    {
+        final Map<AuthScope, String> keyPasswords = new HashMap<AuthScope, String>();
+        KeyStore ks = null;
+        KeyStore ts = null;
+
+        for ( final Map.Entry<AuthScope, SSLKeyCert> entry : keycerts.entrySet() )
+        {
+            final AuthScope scope = entry.getKey();
+            final SSLKeyCert kc = entry.getValue();
+
+            if ( kc.getKeyPem() != null )
+            {
+                if ( ks == null )
+                {
+                    ks = newKeyStore();
+                }
+
+                try
+                {
+                    readKeyAndCert( scope, kc.getKeyPem(), kc.getKeyPassword(), ks );
+
+                    keyPasswords.put( scope, kc.getKeyPassword() );
+                }
+                catch ( final KeyStoreException e )
+                {
+                    throw new HTTPException( "Failed to load client key / certificates for: %s. Reason: %s", e, scope,
+                                             e.getMessage() );
+                }
+                catch ( final NoSuchAlgorithmException e )
+                {
+                    throw new HTTPException( "Failed to load client key / certificates for: %s. Reason: %s", e, scope,
+                                             e.getMessage() );
+                }
+                catch ( final CertificateException e )
+                {
+                    throw new HTTPException( "Failed to load client key / certificates for: %s. Reason: %s", e, scope,
+                                             e.getMessage() );
+                }
+                catch ( final IOException e )
+                {
+                    throw new HTTPException( "Failed to load client key / certificates for: %s. Reason: %s", e, scope,
+                                             e.getMessage() );
+                }
+                catch ( final InvalidKeySpecException e )
+                {
+                    throw new HTTPException( "Failed to load client key / certificates for: %s. Reason: %s", e, scope,
+                                             e.getMessage() );
+                }
+            }
+
+            if ( kc.getCertPem() != null )
+            {
+                if ( ts == null )
+                {
+                    ts = newKeyStore();
+                }
+
+                try
+                {
+                    readCerts( scope, kc.getCertPem(), ts );
+                }
+                catch ( final KeyStoreException e )
+                {
+                    throw new HTTPException( "Failed to load server certificates for: %s. Reason: %s", e, scope,
+                                             e.getMessage() );
+                }
+                catch ( final NoSuchAlgorithmException e )
+                {
+                    throw new HTTPException( "Failed to load server certificates for: %s. Reason: %s", e, scope,
+                                             e.getMessage() );
+                }
+                catch ( final CertificateException e )
+                {
+                    throw new HTTPException( "Failed to load server certificates for: %s. Reason: %s", e, scope,
+                                             e.getMessage() );
+                }
+                catch ( final IOException e )
+                {
+                    throw new HTTPException( "Failed to load server certificates for: %s. Reason: %s", e, scope,
+                                             e.getMessage() );
+                }
+            }
+        }
+
+        return new CredentialBundle( contentHash, ks, ts, keyPasswords );
+    }
+
+    /**
+     * SHA-256 over the scopes, PEM texts and key passwords in the given map, independent of map iteration order.
+     */
+    public static String contentHash( final Map<AuthScope, SSLKeyCert> keycerts )
+    {
+        final Map<String, SSLKeyCert> sorted = new TreeMap<String, SSLKeyCert>();
+        for ( final Map.Entry<AuthScope, SSLKeyCert> entry : keycerts.entrySet() )
+        {
+            sorted.put( String.valueOf( entry.getKey() ), entry.getValue() );
+        }
+
+        MessageDigest digest;
+        try
+        {
+            digest = MessageDigest.getInstance( "SHA-256" );
+        }
+        catch ( final NoSuchAlgorithmException e )
+        {
+            throw new IllegalStateException( "SHA-256 MessageDigest is not available." );
+        }
+
+        for ( final Map.Entry<String, SSLKeyCert> entry : sorted.entrySet() )
+        {
+            final SSLKeyCert kc = entry.getValue();
+            update( digest, entry.getKey() );
+            update( digest, kc.getKeyPem() );
+            update( digest, kc.getKeyPassword() );
+            update( digest, kc.getCertPem() );
+        }
+
+        return Hex.encodeHexString( digest.digest() );
+    }
+
+    private static void update( final MessageDigest digest, final String value )
+    {
+        if ( value == null )
+        {
+            digest.update( (byte) 0 );
+        }
+        else
+        {
+            digest.update( (byte) 1 );
+            digest.update( value.getBytes( UTF8 ) );
+            digest.update( (byte) 0 );
+        }
+    }
+
+    public String getContentHash()
+    {
+        return contentHash;
+    }
+
+    /**
+     * Copy of the client keystore (or null), which the caller may modify.
+     */
+    public KeyStore getKeyStore()
+    {
+        return copy( keyStore );
+    }
+
+    /**
+     * Copy of the server truststore (or null), which the caller may modify.
+     */
+    public KeyStore getTrustStore()
+    {
+        return copy( trustStore );
+    }
+
+    KeyStore keyStore()
+    {
+        return keyStore;
+    }
+
+    KeyStore trustStore()
+    {
+        return trustStore;
+    }
+
+    /**
+     * New {@link SSLContext} that presents this bundle's client key for the given scope (if it has one) and trusts its
+     * server certificates (or the JDK defaults, if it has none), matching what
+     * {@link ThreadLocalSSLSocketFactory} uses for the scope. For transports that can't use that factory.
+     */
+    public SSLContext newSSLContext( final AuthScope scope )
+        throws HTTPException
+    {
+        try
+        {
+            KeyManager[] kms = null;
+            if ( keyStore != null && index.getPrivateKey( AliasCodec.encode( scope, true ) ) != null )
+            {
+                final KeyManagerFactory kmf = KeyManagerFactory.getInstance( KeyManagerFactory.getDefaultAlgorithm() );
+                kmf.init( keyStore, getKeyPassword( scope ).toCharArray() );
+                kms = kmf.getKeyManagers();
+            }
+
+            TrustManager[] tms = null;
+            if ( trustStore != null )
+            {
+                final TrustManagerFactory tmf =
+                    TrustManagerFactory.getInstance( TrustManagerFactory.getDefaultAlgorithm() );
+                tmf.init( trustStore );
+                tms = tmf.getTrustManagers();
+            }
+
+            final SSLContext ctx = SSLContext.getInstance( "TLS" );
+            ctx.init( kms, tms, null );
+
+            return ctx;
+        }
+        catch ( final NoSuchAlgorithmException e )
+        {
+            throw new HTTPException( "Cannot initialize SSL context for: %s. Reason: %s", e, scope, e.getMessage() );
+        }
+        catch ( final UnrecoverableKeyException e )
+        {
+            throw new HTTPException( "Cannot initialize SSL context for: %s. Reason: %s", e, scope, e.getMessage() );
+        }
+        catch ( final KeyStoreException e )
+        {
+            throw new HTTPException( "Cannot initialize SSL context for: %s. Reason: %s", e, scope, e.getMessage() );
+        }
+        catch ( final KeyManagementException e )
+        {
+            throw new HTTPException( "Cannot initialize SSL context for: %s. Reason: %s", e, scope, e.getMessage() );
+        }
+    }
+
+    private static KeyStore copy( final KeyStore store )
+    {
+        if ( store == null )
+        {
+            return null;
+        }
+
+        try
+        {
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+            store.store( out, COPY_PASSWORD );
+
+            final KeyStore copy = KeyStore.getInstance( store.getType() );
+            copy.load( new ByteArrayInputStream( out.toByteArray() ), COPY_PASSWORD );
+
+            return copy;
+        }
+        catch ( final KeyStoreException e )
+        {
+            throw new IllegalStateException( "Failed to copy KeyStore: " + e.getMessage(), e );
+        }
+        catch ( final NoSuchAlgorithmException e )
+        {
+            throw new IllegalStateException( "Failed to copy KeyStore: " + e.getMessage(), e );
+        }
+        catch ( final CertificateException e )
+        {
+            throw new IllegalStateException( "Failed to copy KeyStore: " + e.getMessage(), e );
+        }
+        catch ( final IOException e )
+        {
+            throw new IllegalStateException( "Failed to copy KeyStore: " + e.getMessage(), e );
+        }
+    }
+
+    public String getKeyPassword( final AuthScope scope )
+    {
+        return keyPasswords.get( scope );
+    }
+
+    public Map<AuthScope, String> getKeyPasswords()
+    {
+        return keyPasswords;
+    }
+
+    /**
+     * Fingerprint of the keystore / truststore contents, see {@link org.commonjava.util.http.ssl.SSLUtils#fingerprint(KeyStore...)}.
+     */
+    public String getStoreFingerprint()
+    {
+        return storeFingerprint;
+    }
+
+    public CredentialIndex getIndex()
+    {
+        return index;
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return contentHash.hashCode();
+    }
+
+    @Override
+    public boolean equals( final Object obj )
+    {
+        if ( this == obj )
+        {
+            return true;
+        }
+        if ( obj == null || getClass() != obj.getClass() )
+        {
+            return false;
+        }
+
+        return contentHash.equals( ( (CredentialBundle) obj ).contentHash );
+    }
+
+    @Override
+    public String toString()
+    {
+        return "CredentialBundle [" + contentHash + "]";
+    }
+
+}
@@ -0,0 +1,129 @@
+package org.commonjava.util.http.ssl.threadlocal;
+
+import java.security.KeyStore;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.http.auth.AuthScope;
+import org.apache.http.auth.Credentials;
+
+/**
+ * Immutable set of credentials in effect for a unit of work: HTTP credentials plus an optional {@link CredentialBundle}
+ * of client keys / server certificates. Instances are cheap to derive and safe to share between threads; binding one
+ * to a thread costs a single reference (see
+ * {@link ThreadLocalCredentialsProvider#callWith(CredentialContext, Action)}).
+ */
+public final class CredentialContext
+{
+
+    public static final CredentialContext EMPTY = new CredentialContext( null, null );
+
+    private final Map<AuthScope, Credentials> credentials;
+
+    private final CredentialBundle bundle;
+
+    private CredentialContext( final Map<AuthScope, Credentials> credentials, final CredentialBundle bundle )
+    {
+        this.credentials = credentials;
+        this.bundle = bundle;
+    }
+
+    public static CredentialContext of( final Map<AuthScope, Credentials> credentials, final CredentialBundle bundle )
+    {
+        if ( credentials == null && bundle == null )
+        {
+            return EMPTY;
+        }
+
+        if ( credentials == null )
+        {
+            return new CredentialContext( null, bundle );
+        }
+
+        return new CredentialContext( Collections.unmodifiableMap( new HashMap<AuthScope, Credentials>( credentials ) ),
+                                      bundle );
+    }
+
+    public CredentialContext withCredentials( final Map<AuthScope, Credentials> credentials )
+    {
+        return of( credentials, bundle );
+    }
+
+    public CredentialContext withCredentials( final AuthScope scope, final Credentials creds )
+    {
+        return of( Collections.singletonMap( scope, creds ), bundle );
+    }
+
+    public CredentialContext withBundle( final CredentialBundle bundle )
+    {
+        if ( credentials == null && bundle == null )
+        {
+            return EMPTY;
+        }
+
+        // our credentials are already a private copy
+        return new CredentialContext( credentials, bundle );
+    }
+
+    public boolean isEmpty()
+    {
+        return credentials == null && bundle == null;
+    }
+
+    /**
+     * Unmodifiable copy of the HTTP credentials, taken when the context was created, or null.
+     */
+    public Map<AuthScope, Credentials> getCredentials()
+    {
+        return credentials;
+    }
+
+    public Credentials getCredentials( final AuthScope scope )
+    {
+        return credentials == null ? null : credentials.get( scope );
+    }
+
+    public CredentialBundle getBundle()
+    {
+        return bundle;
+    }
+
+    /**
+     * Index over the bundle's keys and certificates; empty (never null) if there is no bundle.
+     */
+    public CredentialIndex getIndex()
+    {
+        return bundle == null ? CredentialIndex.EMPTY : bundle.getIndex();
+    }
+
+    public KeyStore getKeyStore()
+    {
+        return bundle == null ? null : bundle.getKeyStore();
+    }
+
+    public KeyStore getTrustStore()
+    {
+        return bundle == null ? null : bundle.getTrustStore();
+    }
+
+    public String getKeyPassword( final AuthScope scope )
+    {
+        return bundle == null ? null : bundle.getKeyPassword( scope );
+    }
+
+    public String getStoreFingerprint()
+    {
+        return bundle == null ? null : bundle.getStoreFingerprint();
+    }
+
+    /**
+     * Unit of work run with a {@link CredentialContext} bound.
+     */
+    public interface Action<T, E extends Exception>
+    {
+        T call()
+            throws E;
+    }
+
+}
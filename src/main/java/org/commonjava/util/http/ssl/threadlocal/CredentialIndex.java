@@ -0,0 +1,305 @@
+package org.commonjava.util.http.ssl.threadlocal;
+
+import java.security.Key;
+import java.security.KeyStore;
+import java.security.KeyStoreException;
+import java.security.NoSuchAlgorithmException;
+import java.security.Principal;
+import java.security.PrivateKey;
+import java.security.UnrecoverableKeyException;
+import java.security.cert.Certificate;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.http.auth.AuthScope;
+import org.commonjava.util.http.HTTPException;
+import org.commonjava.util.http.ssl.AliasCodec;
+
+/**
+ * Immutable lookup structure over the keystore / truststore of a {@link CredentialBundle}, built once when the bundle
+ * is parsed. Private keys and certificate chains are indexed by alias, certificates by subject DN, and key aliases by
+ * the issuer DNs in their chains, so the handshake-time queries from {@link TLKeyManager} and {@link TLTrustManager}
+ * are single hash lookups.
+ * <p>
+ * Aliases are matched case-insensitively, like the keystore lookups they replace.
+ * <p>
+ * Arrays returned from this class are shared and must not be modified.
+ */
+public final class CredentialIndex
+{
+
+    public static final CredentialIndex EMPTY = new CredentialIndex();
+
+    private static final String[] NO_ALIASES = new String[0];
+
+    private static final X509Certificate[] NO_CERTS = new X509Certificate[0];
+
+    private final Map<String, PrivateKey> keys;
+
+    private final Map<String, X509Certificate[]> chains;
+
+    private final Set<String> keyStoreAliases;
+
+    private final Set<String> trustStoreAliases;
+
+    private final Map<String, X509Certificate> keyStoreSubjects;
+
+    private final Map<String, X509Certificate> trustStoreSubjects;
+
+    private final Map<String, String[]> keyAliasesByIssuer;
+
+    private final String[] keyAliases;
+
+    private final String[] trustAliases;
+
+    private final X509Certificate[] acceptedIssuers;
+
+    private CredentialIndex()
+    {
+        keys = Collections.emptyMap();
+        chains = Collections.emptyMap();
+        keyStoreAliases = Collections.emptySet();
+        trustStoreAliases = Collections.emptySet();
+        keyStoreSubjects = Collections.emptyMap();
+        trustStoreSubjects = Collections.emptyMap();
+        keyAliasesByIssuer = Collections.emptyMap();
+        keyAliases = NO_ALIASES;
+        trustAliases = NO_ALIASES;
+        acceptedIssuers = NO_CERTS;
+    }
+
+    private CredentialIndex( final KeyStore ks, final Map<AuthScope, String> keyPasswords, final KeyStore ts )
+        throws KeyStoreException, NoSuchAlgorithmException, UnrecoverableKeyException
+    {
+        final Map<String, PrivateKey> keys = new HashMap<String, PrivateKey>();
+        final Map<String, X509Certificate[]> chains = new HashMap<String, X509Certificate[]>();
+        final Set<String> ksAliases = new HashSet<String>();
+        final Map<String, X509Certificate> ksSubjects = new HashMap<String, X509Certificate>();
+        final Map<String, Set<String>> byIssuer = new HashMap<String, Set<String>>();
+        final Set<X509Certificate> issuers = new LinkedHashSet<X509Certificate>();
+
+        if ( ks != null )
+        {
+            for ( final String entryAlias : Collections.list( ks.aliases() ) )
+            {
+                final String alias = normalize( entryAlias );
+                ksAliases.add( alias );
+
+                if ( ks.isKeyEntry( entryAlias ) )
+                {
+                    final AuthScope scope = AliasCodec.decode( alias );
+                    final String pass = scope == null ? null : keyPasswords.get( scope );
+                    if ( pass != null )
+                    {
+                        final Key key = ks.getKey( entryAlias, pass.toCharArray() );
+                        if ( key instanceof PrivateKey )
+                        {
+                            keys.put( alias, (PrivateKey) key );
+                        }
+                    }
+
+                    final Certificate[] chain = ks.getCertificateChain( entryAlias );
+                    if ( chain != null )
+                    {
+                        final X509Certificate[] xchain = new X509Certificate[chain.length];
+                        for ( int i = 0; i < chain.length; i++ )
+                        {
+                            xchain[i] = (X509Certificate) chain[i];
+
+                            final String issuer = xchain[i].getIssuerX500Principal()
+                                                           .getName();
+                            Set<String> aliases = byIssuer.get( issuer );
+                            if ( aliases == null )
+                            {
+                                aliases = new LinkedHashSet<String>();
+                                byIssuer.put( issuer, aliases );
+                            }
+                            aliases.add( alias );
+
+                            ksSubjects.put( subject( xchain[i] ), xchain[i] );
+                            issuers.add( xchain[i] );
+                        }
+
+                        chains.put( alias, xchain );
+                    }
+                }
+                else
+                {
+                    final X509Certificate cert = (X509Certificate) ks.getCertificate( entryAlias );
+                    if ( cert != null )
+                    {
+                        ksSubjects.put( subject( cert ), cert );
+                        issuers.add( cert );
+                    }
+                }
+            }
+        }
+
+        final Set<String> tsAliases = new HashSet<String>();
+        final Map<String, X509Certificate> tsSubjects = new HashMap<String, X509Certificate>();
+        if ( ts != null )
+        {
+            for ( final String alias : Collections.list( ts.aliases() ) )
+            {
+                tsAliases.add( normalize( alias ) );
+
+                final X509Certificate cert = (X509Certificate) ts.getCertificate( alias );
+                if ( cert != null )
+                {
+                    tsSubjects.put( subject( cert ), cert );
+                    issuers.add( cert );
+                }
+            }
+        }
+
+        final Map<String, String[]> keyAliasesByIssuer = new HashMap<String, String[]>();
+        for ( final Map.Entry<String, Set<String>> entry : byIssuer.entrySet() )
+        {
+            keyAliasesByIssuer.put( entry.getKey(), entry.getValue()
+                                                         .toArray( new String[entry.getValue()
+                                                                                   .size()] ) );
+        }
+
+        final List<String> keyAliases = new ArrayList<String>( chains.keySet() );
+        Collections.sort( keyAliases );
+
+        final List<String> trustAliases = new ArrayList<String>( tsAliases );
+        Collections.sort( trustAliases );
+
+        this.keys = keys;
+        this.chains = chains;
+        this.keyStoreAliases = ksAliases;
+        this.trustStoreAliases = tsAliases;
+        this.keyStoreSubjects = ksSubjects;
+        this.trustStoreSubjects = tsSubjects;
+        this.keyAliasesByIssuer = keyAliasesByIssuer;
+        this.keyAliases = keyAliases.toArray( new String[keyAliases.size()] );
+        this.trustAliases = trustAliases.toArray( new String[trustAliases.size()] );
+        this.acceptedIssuers = issuers.toArray( new X509Certificate[issuers.size()] );
+    }
+
+    public static CredentialIndex build( final KeyStore ks, final Map<AuthScope, String> keyPasswords,
+                                         final KeyStore ts )
+        throws HTTPException
+    {
+        if ( ks == null && ts == null )
+        {
+            return EMPTY;
+        }
+
+        try
+        {
+            return new CredentialIndex( ks, keyPasswords, ts );
+        }
+        catch ( final KeyStoreException e )
+        {
+            throw new HTTPException( "Failed to index client key / server certificates: %s", e, e.getMessage() );
+        }
+        catch ( final NoSuchAlgorithmException e )
+        {
+            throw new HTTPException( "Failed to index client key / server certificates: %s", e, e.getMessage() );
+        }
+        catch ( final UnrecoverableKeyException e )
+        {
+            throw new HTTPException( "Failed to index client key / server certificates: %s", e, e.getMessage() );
+        }
+    }
+
+    private static String normalize( final String alias )
+    {
+        return alias == null ? null : alias.toLowerCase( Locale.ROOT );
+    }
+
+    private static String subject( final X509Certificate cert )
+    {
+        return cert.getSubjectX500Principal()
+                   .getName();
+    }
+
+    public boolean containsKeyStoreAlias( final String alias )
+    {
+        return keyStoreAliases.contains( normalize( alias ) );
+    }
+
+    public boolean containsTrustStoreAlias( final String alias )
+    {
+        return trustStoreAliases.contains( normalize( alias ) );
+    }
+
+    public PrivateKey getPrivateKey( final String alias )
+    {
+        return keys.get( normalize( alias ) );
+    }
+
+    public X509Certificate[] getCertificateChain( final String alias )
+    {
+        return chains.get( normalize( alias ) );
+    }
+
+    public X509Certificate getKeyStoreCertificate( final String subjectDN )
+    {
+        return keyStoreSubjects.get( subjectDN );
+    }
+
+    public X509Certificate getTrustStoreCertificate( final String subjectDN )
+    {
+        return trustStoreSubjects.get( subjectDN );
+    }
+
+    /**
+     * Aliases of key entries whose certificate chain contains a certificate issued by one of the given issuers, or all
+     * key aliases if no issuers are given.
+     */
+    public String[] getKeyAliases( final Principal[] issuers )
+    {
+        if ( issuers == null || issuers.length == 0 )
+        {
+            return keyAliases;
+        }
+
+        if ( issuers.length == 1 )
+        {
+            final String[] aliases = keyAliasesByIssuer.get( issuers[0].getName() );
+            return aliases == null ? NO_ALIASES : aliases;
+        }
+
+        final Map<String, String> result = new LinkedHashMap<String, String>();
+        for ( final Principal issuer : issuers )
+        {
+            final String[] aliases = keyAliasesByIssuer.get( issuer.getName() );
+            if ( aliases != null )
+            {
+                for ( final String alias : aliases )
+                {
+                    result.put( alias, alias );
+                }
+            }
+        }
+
+        return result.isEmpty() ? NO_ALIASES : result.keySet()
+                                                     .toArray( new String[result.size()] );
+    }
+
+    public String[] getTrustStoreAliases()
+    {
+        return trustAliases;
+    }
+
+    /**
+     * All distinct certificates from the keystore and truststore.
+     */
+    public X509Certificate[] getAcceptedIssuers()
+    {
+        return acceptedIssuers;
+    }
+
+}
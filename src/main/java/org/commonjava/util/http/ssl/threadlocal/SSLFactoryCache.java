@@ -0,0 +1,53 @@
+package org.commonjava.util.http.ssl.threadlocal;
+
+import java.io.IOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.conn.ssl.SSLSocketFactory;
+import org.commonjava.util.http.ssl.BoundedCache;
+
+/**
+ * Size- and TTL-bounded cache of per-scope {@link SSLSocketFactory} instances.
+ */
+public class SSLFactoryCache
+    extends BoundedCache<SSLFactoryKey, SSLSocketFactory>
+{
+
+    public static final int DEFAULT_MAX_SIZE = 128;
+
+    public static final long DEFAULT_TTL_MILLIS = TimeUnit.MINUTES.toMillis( 30 );
+
+    public SSLFactoryCache()
+    {
+        this( DEFAULT_MAX_SIZE, DEFAULT_TTL_MILLIS, TimeUnit.MILLISECONDS );
+    }
+
+    public SSLFactoryCache( final int maxSize, final long ttl, final TimeUnit unit )
+    {
+        super( maxSize, ttl, unit );
+    }
+
+    SSLSocketFactory getFactory( final SSLFactoryKey key, final Callable<SSLSocketFactory> builder )
+        throws IOException
+    {
+        try
+        {
+            return get( key, builder );
+        }
+        catch ( final ExecutionException e )
+        {
+            final Throwable cause = e.getCause();
+            if ( cause instanceof IOException )
+            {
+                throw (IOException) cause;
+            }
+
+            final IOException ioe = new IOException( "Failed to initialize SSL connection for: " + key.getScope() );
+            ioe.initCause( cause );
+            throw ioe;
+        }
+    }
+
+}
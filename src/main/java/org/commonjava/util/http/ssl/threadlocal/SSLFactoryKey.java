@@ -0,0 +1,73 @@
+package org.commonjava.util.http.ssl.threadlocal;
+
+import org.apache.http.auth.AuthScope;
+
+/**
+ * Cache key for per-scope SSL socket factories: the target {@link AuthScope}, the fingerprint of the bound keystore /
+ * truststore contents, and the fingerprint of the key password for that scope.
+ */
+final class SSLFactoryKey
+{
+
+    private final AuthScope scope;
+
+    private final String storeFingerprint;
+
+    private final String keyPasswordFingerprint;
+
+    private final int hashCode;
+
+    SSLFactoryKey( final AuthScope scope, final String storeFingerprint, final String keyPasswordFingerprint )
+    {
+        this.scope = scope;
+        this.storeFingerprint = storeFingerprint;
+        this.keyPasswordFingerprint = keyPasswordFingerprint;
+
+        final int prime = 31;
+        int result = 1;
+        result = prime * result + ( ( scope == null ) ? 0 : scope.hashCode() );
+        result = prime * result + ( ( storeFingerprint == null ) ? 0 : storeFingerprint.hashCode() );
+        result = prime * result + ( ( keyPasswordFingerprint == null ) ? 0 : keyPasswordFingerprint.hashCode() );
+        this.hashCode = result;
+    }
+
+    AuthScope getScope()
+    {
+        return scope;
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return hashCode;
+    }
+
+    @Override
+    public boolean equals( final Object obj )
+    {
+        if ( this == obj )
+        {
+            return true;
+        }
+        if ( obj == null || getClass() != obj.getClass() )
+        {
+            return false;
+        }
+
+        final SSLFactoryKey other = (SSLFactoryKey) obj;
+        return eq( scope, other.scope ) && eq( storeFingerprint, other.storeFingerprint )
+            && eq( keyPasswordFingerprint, other.keyPasswordFingerprint );
+    }
+
+    private static boolean eq( final Object a, final Object b )
+    {
+        return a == null ? b == null : a.equals( b );
+    }
+
+    @Override
+    public String toString()
+    {
+        return "SSLFactoryKey [" + scope + ", store=" + storeFingerprint + "]";
+    }
+
+}
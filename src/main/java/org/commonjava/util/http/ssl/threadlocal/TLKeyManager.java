@@ -1,34 +1,21 @@
 package org.commonjava.util.http.ssl.threadlocal;
 
 import static org.commonjava.util.http.ssl.SSLUtils.getAlias;
-import static org.commonjava.util.http.ssl.SSLUtils.toAuthScope;
 
-import java.net.InetSocketAddress;
 import java.net.Socket;
-import java.security.KeyStore;
-import java.security.KeyStoreException;
-import java.security.NoSuchAlgorithmException;
 import java.security.Principal;
 import java.security.PrivateKey;
-import java.security.UnrecoverableKeyException;
-import java.security.cert.Certificate;
 import java.security.cert.X509Certificate;
 import java.util.Arrays;
-import java.util.Collections;
-import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.Set;
 
 import javax.net.ssl.X509KeyManager;
 
-import org.apache.http.auth.AuthScope;
-import org.commonjava.util.logging.Logger;
-
 public class TLKeyManager
     implements X509KeyManager
 {
 
-    private final Logger logger = new Logger( getClass() );
-
     private final ThreadLocalCredentialsProvider credProvider;
 
     private final X509KeyManager defaultManager;
@@ -42,20 +29,11 @@ public class TLKeyManager
     @Override
     public String chooseClientAlias( final String[] keyTypes, final Principal[] issuers, final Socket socket )
     {
-        final InetSocketAddress sa = (InetSocketAddress) socket.getRemoteSocketAddress();
-        final String alias = getAlias( sa, true );
-
-        final KeyStore ks = credProvider.getKeyStore();
-        try
+        final String alias = getAlias( socket, true );
+        if ( alias != null && credProvider.getCredentialIndex()
+                                          .containsKeyStoreAlias( alias ) )
         {
-            if ( ks.containsAlias( alias ) )
-            {
-                return alias;
-            }
-        }
-        catch ( final KeyStoreException e )
-        {
-            logger.error( "Failed to check for alias in keystore: %s. Reason: %s", e, alias, e.getMessage() );
+            return alias;
         }
 
         return defaultManager.chooseClientAlias( keyTypes, issuers, socket );
@@ -64,20 +42,11 @@ public class TLKeyManager
     @Override
     public String chooseServerAlias( final String keyType, final Principal[] issuers, final Socket socket )
     {
-        final InetSocketAddress sa = (InetSocketAddress) socket.getRemoteSocketAddress();
-        final String alias = getAlias( sa, true );
-
-        final KeyStore ts = credProvider.getTrustStore();
-        try
+        final String alias = getAlias( socket, true );
+        if ( alias != null && credProvider.getCredentialIndex()
+                                          .containsTrustStoreAlias( alias ) )
         {
-            if ( ts.containsAlias( alias ) )
-            {
-                return alias;
-            }
-        }
-        catch ( final KeyStoreException e )
-        {
-            logger.error( "Failed to check for alias in truststore: %s. Reason: %s", e, alias, e.getMessage() );
+            return alias;
         }
 
         return defaultManager.chooseServerAlias( keyType, issuers, socket );
@@ -86,34 +55,11 @@ public class TLKeyManager
     @Override
     public X509Certificate[] getCertificateChain( final String alias )
     {
-        final AuthScope scope = toAuthScope( alias );
-        if ( scope != null )
+        final X509Certificate[] chain = credProvider.getCredentialIndex()
+                                                    .getCertificateChain( alias );
+        if ( chain != null )
         {
-            final KeyStore ks = credProvider.getKeyStore();
-            if ( ks != null )
-            {
-                Certificate[] chain = null;
-                try
-                {
-                    chain = ks.getCertificateChain( alias );
-                }
-                catch ( final KeyStoreException e )
-                {
-                    logger.error( "Failed to retrieve X.509 certificate chain for: %s. Reason: %s", e, alias,
-                                  e.getMessage() );
-                }
-
-                if ( chain != null )
-                {
-                    final X509Certificate[] result = new X509Certificate[chain.length];
-                    for ( int i = 0; i < chain.length; i++ )
-                    {
-                        result[i] = (X509Certificate) chain[i];
-                    }
-
-                    return result;
-                }
-            }
+            return chain;
         }
 
         return defaultManager.getCertificateChain( alias );
@@ -122,44 +68,18 @@ public class TLKeyManager
     @Override
     public String[] getClientAliases( final String keyType, final Principal[] issuers )
     {
-        final Set<String> aliases = new HashSet<String>();
-
-        final KeyStore ks = credProvider.getKeyStore();
-        try
-        {
-            // TODO: filter by issuers?
-            aliases.addAll( Collections.list( ks.aliases() ) );
-        }
-        catch ( final KeyStoreException e )
-        {
-            logger.error( "Cannot get list of aliases from thread-local keystore: %s", e, e.getMessage() );
-        }
-
-        aliases.addAll( Arrays.asList( defaultManager.getClientAliases( keyType, issuers ) ) );
-
-        return aliases.isEmpty() ? null : aliases.toArray( new String[] {} );
+        return merge( credProvider.getCredentialIndex()
+                                  .getKeyAliases( issuers ), defaultManager.getClientAliases( keyType, issuers ) );
     }
 
     @Override
     public PrivateKey getPrivateKey( final String alias )
     {
-        final KeyStore ks = credProvider.getKeyStore();
-        final String pass = credProvider.getKeyPassword( toAuthScope( alias ) );
-        try
-        {
-            return (PrivateKey) ks.getKey( alias, pass.toCharArray() );
-        }
-        catch ( final UnrecoverableKeyException e )
-        {
-            logger.error( "Failed to retrieve private key: %s from thread-local keystore: %s", e, alias, e.getMessage() );
-        }
-        catch ( final KeyStoreException e )
-        {
-            logger.error( "Failed to retrieve private key: %s from thread-local keystore: %s", e, alias, e.getMessage() );
-        }
-        catch ( final NoSuchAlgorithmException e )
+        final PrivateKey key = credProvider.getCredentialIndex()
+                                           .getPrivateKey( alias );
+        if ( key != null )
         {
-            logger.error( "Failed to retrieve private key: %s from thread-local keystore: %s", e, alias, e.getMessage() );
+            return key;
         }
 
         return defaultManager.getPrivateKey( alias );
@@ -168,21 +88,25 @@ public class TLKeyManager
     @Override
     public String[] getServerAliases( final String keyType, final Principal[] issuers )
     {
-        final Set<String> aliases = new HashSet<String>();
+        return merge( credProvider.getCredentialIndex()
+                                  .getTrustStoreAliases(), defaultManager.getServerAliases( keyType, issuers ) );
+    }
 
-        final KeyStore ts = credProvider.getTrustStore();
-        try
+    private static String[] merge( final String[] local, final String[] defaults )
+    {
+        if ( defaults == null || defaults.length == 0 )
         {
-            // TODO: filter by issuers?
-            aliases.addAll( Collections.list( ts.aliases() ) );
+            return local.length == 0 ? null : local;
         }
-        catch ( final KeyStoreException e )
+
+        if ( local.length == 0 )
         {
-            logger.error( "Cannot get list of aliases from thread-local truststore: %s", e, e.getMessage() );
+            return defaults;
         }
 
-        aliases.addAll( Arrays.asList( defaultManager.getServerAliases( keyType, issuers ) ) );
+        final Set<String> aliases = new LinkedHashSet<String>( Arrays.asList( local ) );
+        aliases.addAll( Arrays.asList( defaults ) );
 
-        return aliases.isEmpty() ? null : aliases.toArray( new String[] {} );
+        return aliases.toArray( new String[aliases.size()] );
     }
 }
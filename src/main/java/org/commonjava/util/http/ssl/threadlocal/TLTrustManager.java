@@ -1,16 +1,16 @@
 package org.commonjava.util.http.ssl.threadlocal;
 
-import java.security.KeyStore;
-import java.security.KeyStoreException;
 import java.security.cert.CertificateException;
 import java.security.cert.X509Certificate;
 import java.util.Arrays;
-import java.util.Enumeration;
-import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.net.ssl.X509TrustManager;
 
+import org.commonjava.util.http.ssl.TrustDecisionCache;
+import org.commonjava.util.http.ssl.VersionedTrustManager;
 import org.commonjava.util.logging.Logger;
 
 public class TLTrustManager
@@ -23,38 +23,53 @@ public class TLTrustManager
 
     private final X509TrustManager defaultManager;
 
+    private volatile IssuerSnapshot issuers;
+
+    private static final AtomicLong INSTANCES = new AtomicLong();
+
+    private final TrustDecisionCache decisions;
+
+    private final String decisionContext = "tl-" + INSTANCES.incrementAndGet();
+
     public TLTrustManager( final ThreadLocalCredentialsProvider credProvider, final X509TrustManager defaultManager )
+    {
+        this( credProvider, defaultManager, null );
+    }
+
+    /**
+     * @param decisions optional cache of positive trust decisions; null disables caching.
+     */
+    public TLTrustManager( final ThreadLocalCredentialsProvider credProvider, final X509TrustManager defaultManager,
+                           final TrustDecisionCache decisions )
     {
         this.credProvider = credProvider;
         this.defaultManager = defaultManager;
+        this.decisions = decisions;
     }
 
     @Override
     public void checkClientTrusted( final X509Certificate[] chain, final String authType )
         throws CertificateException
     {
-        final KeyStore ks = credProvider.getKeyStore();
+        final CredentialContext ctx = credProvider.getContext();
+        final String key = decisionKey( ctx, chain, authType, "client" );
+        if ( key != null && decisions.isTrusted( key ) )
+        {
+            return;
+        }
+
+        final CredentialIndex index = ctx.getIndex();
         int idx = 0;
         boolean found = true;
         for ( final X509Certificate cert : chain )
         {
             final String alias = cert.getSubjectX500Principal()
                                      .getName();
-            try
+            if ( index.getKeyStoreCertificate( alias ) == null )
             {
-                if ( !ks.containsAlias( alias ) )
-                {
-                    found = false;
-                    logger.error( "Certificate not found: " + alias + " (at index: " + idx + " in chain)" );
-
-                    break;
-                }
-            }
-            catch ( final KeyStoreException e )
-            {
-                logger.error( "Failed to lookup certificate with alias: " + alias + " (at index: " + idx
-                    + " in chain.)", e );
                 found = false;
+                logger.error( "Certificate not found: " + alias + " (at index: " + idx + " in chain)" );
+
                 break;
             }
 
@@ -65,34 +80,36 @@ public class TLTrustManager
         {
             defaultManager.checkServerTrusted( chain, authType );
         }
+
+        if ( key != null )
+        {
+            decisions.markTrusted( key, chain );
+        }
     }
 
     @Override
     public void checkServerTrusted( final X509Certificate[] chain, final String authType )
         throws CertificateException
     {
-        final KeyStore ts = credProvider.getTrustStore();
+        final CredentialContext ctx = credProvider.getContext();
+        final String key = decisionKey( ctx, chain, authType, "server" );
+        if ( key != null && decisions.isTrusted( key ) )
+        {
+            return;
+        }
+
+        final CredentialIndex index = ctx.getIndex();
         int idx = 0;
         boolean found = true;
         for ( final X509Certificate cert : chain )
         {
             final String alias = cert.getSubjectX500Principal()
                                      .getName();
-            try
+            if ( index.getTrustStoreCertificate( alias ) == null )
             {
-                if ( !ts.containsAlias( alias ) )
-                {
-                    logger.error( "Certificate not found: " + alias + " (at index: " + idx
-                        + " in chain). Checking default trust manager." );
-
-                    found = false;
-                    break;
-                }
-            }
-            catch ( final KeyStoreException e )
-            {
-                logger.error( "Failed to lookup certificate with alias: " + alias + " (at index: " + idx
-                    + " in chain). Checking default trust manager.", e );
+                logger.error( "Certificate not found: " + alias + " (at index: " + idx
+                    + " in chain). Checking default trust manager." );
+
                 found = false;
                 break;
             }
@@ -104,47 +121,80 @@ public class TLTrustManager
         {
             defaultManager.checkServerTrusted( chain, authType );
         }
+
+        if ( key != null )
+        {
+            decisions.markTrusted( key, chain );
+        }
+    }
+
+    private String decisionKey( final CredentialContext ctx, final X509Certificate[] chain, final String authType,
+                                final String side )
+    {
+        if ( decisions == null )
+        {
+            return null;
+        }
+
+        return decisions.keyFor( chain, authType, decisionContext + ":" + side + ":"
+            + ctx.getStoreFingerprint() + ":" + defaultVersion() );
+    }
+
+    private long defaultVersion()
+    {
+        return defaultManager instanceof VersionedTrustManager ? ( (VersionedTrustManager) defaultManager ).getVersion()
+                        : 0;
+    }
+
+    public TrustDecisionCache getTrustDecisionCache()
+    {
+        return decisions;
     }
 
+    /**
+     * Merged issuers of the current thread's credentials and the default manager. The last merge is memoized, keyed
+     * by the (immutable) credential index and the default manager's version, so threads sharing a
+     * {@link CredentialBundle} don't rebuild it.
+     */
     @Override
     public X509Certificate[] getAcceptedIssuers()
     {
-        final Set<X509Certificate> allCerts = new HashSet<X509Certificate>();
-        KeyStore ks = credProvider.getKeyStore();
+        final CredentialIndex index = credProvider.getCredentialIndex();
+        final long version = defaultVersion();
 
-        Enumeration<String> en;
-        try
+        IssuerSnapshot snapshot = issuers;
+        if ( snapshot == null || snapshot.index != index || snapshot.version != version )
         {
-            en = ks.aliases();
-            while ( en.hasMoreElements() )
-            {
-                final String alias = en.nextElement();
-                allCerts.add( (X509Certificate) ks.getCertificate( alias ) );
-            }
-        }
-        catch ( final KeyStoreException e )
-        {
-            logger.error( "Failed to load aliases from keystore: %s", e, e.getMessage() );
-        }
+            final Set<X509Certificate> allCerts = new LinkedHashSet<X509Certificate>();
+            allCerts.addAll( Arrays.asList( index.getAcceptedIssuers() ) );
 
-        ks = credProvider.getTrustStore();
-        try
-        {
-            en = ks.aliases();
-            while ( en.hasMoreElements() )
+            final X509Certificate[] defaults = defaultManager.getAcceptedIssuers();
+            if ( defaults != null )
             {
-                final String alias = en.nextElement();
-                allCerts.add( (X509Certificate) ks.getCertificate( alias ) );
+                allCerts.addAll( Arrays.asList( defaults ) );
             }
-        }
-        catch ( final KeyStoreException e )
-        {
-            logger.error( "Failed to load aliases from truststore: %s", e, e.getMessage() );
+
+            snapshot = new IssuerSnapshot( index, version, allCerts.toArray( new X509Certificate[allCerts.size()] ) );
+            issuers = snapshot;
         }
 
-        allCerts.addAll( Arrays.asList( defaultManager.getAcceptedIssuers() ) );
+        return snapshot.certs.clone();
+    }
 
-        return allCerts.toArray( new X509Certificate[] {} );
+    private static final class IssuerSnapshot
+    {
+        private final CredentialIndex index;
+
+        private final long version;
+
+        private final X509Certificate[] certs;
+
+        IssuerSnapshot( final CredentialIndex index, final long version, final X509Certificate[] certs )
+        {
+            this.index = index;
+            this.version = version;
+            this.certs = certs;
+        }
     }
 
 }
@@ -15,19 +15,12 @@
  ******************************************************************************/
 package org.commonjava.util.http.ssl.threadlocal;
 
-import static org.commonjava.util.http.ssl.SSLUtils.newKeyStore;
-import static org.commonjava.util.http.ssl.SSLUtils.readCerts;
-import static org.commonjava.util.http.ssl.SSLUtils.readKeyAndCert;
-
-import java.io.IOException;
 import java.security.KeyStore;
-import java.security.KeyStoreException;
-import java.security.NoSuchAlgorithmException;
-import java.security.cert.CertificateException;
-import java.security.spec.InvalidKeySpecException;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
 
 import javax.enterprise.context.ApplicationScoped;
 
@@ -35,120 +28,174 @@ import org.apache.http.auth.AuthScope;
 import org.apache.http.auth.Credentials;
 import org.apache.http.client.CredentialsProvider;
 import org.commonjava.util.http.HTTPException;
+import org.commonjava.util.http.ssl.AliasCodec;
+import org.commonjava.util.http.ssl.BoundedCache;
 
 @ApplicationScoped
 public class ThreadLocalCredentialsProvider
     implements CredentialsProvider
 {
 
-    private final ThreadLocal<Map<AuthScope, Credentials>> credentials = new ThreadLocal<Map<AuthScope, Credentials>>();
+    public static final int DEFAULT_BUNDLE_CACHE_SIZE = 256;
 
-    private final ThreadLocal<Map<AuthScope, String>> keyPasswords = new ThreadLocal<Map<AuthScope, String>>();
+    public static final long DEFAULT_BUNDLE_CACHE_TTL_MILLIS = TimeUnit.HOURS.toMillis( 1 );
 
-    private final ThreadLocal<KeyStore> keystores = new ThreadLocal<KeyStore>();
+    private final ThreadLocal<CredentialContext> context = new ThreadLocal<CredentialContext>();
 
-    private final ThreadLocal<KeyStore> truststores = new ThreadLocal<KeyStore>();
+    private final BoundedCache<String, CredentialBundle> bundleCache;
 
-    public synchronized void bind( final Map<AuthScope, Credentials> creds )
+    public ThreadLocalCredentialsProvider()
     {
-        this.credentials.set( creds );
+        this( DEFAULT_BUNDLE_CACHE_SIZE, DEFAULT_BUNDLE_CACHE_TTL_MILLIS, TimeUnit.MILLISECONDS );
     }
 
-    public synchronized void bind( final AuthScope scope, final Credentials creds )
+    public ThreadLocalCredentialsProvider( final int maxCachedBundles, final long bundleTtl, final TimeUnit bundleTtlUnit )
     {
-        this.credentials.set( Collections.singletonMap( scope, creds ) );
+        this.bundleCache = new BoundedCache<String, CredentialBundle>( maxCachedBundles, bundleTtl, bundleTtlUnit );
     }
 
-    public synchronized void bindKeyCerts( final Map<AuthScope, SSLKeyCert> keycerts )
-        throws HTTPException
+    public void bind( final Map<AuthScope, Credentials> creds )
+    {
+        bind( getContext().withCredentials( creds ) );
+    }
+
+    public void bind( final AuthScope scope, final Credentials creds )
+    {
+        bind( getContext().withCredentials( scope, creds ) );
+    }
+
+    public void bind( final CredentialBundle bundle )
     {
-        final Map<AuthScope, String> keyPasswords = new HashMap<AuthScope, String>();
-        final KeyStore ks = newKeyStore();
-        final KeyStore ts = newKeyStore();
+        bind( getContext().withBundle( bundle ) );
+    }
 
-        for ( final Map.Entry<AuthScope, SSLKeyCert> entry : keycerts.entrySet() )
+    /**
+     * Bind the context to the current thread until {@link #clear()} is called. Prefer
+     * {@link #callWith(CredentialContext, CredentialContext.Action)}, which cannot leak the binding.
+     */
+    public void bind( final CredentialContext ctx )
+    {
+        if ( ctx == null || ctx.isEmpty() )
+        {
+            context.remove();
+        }
+        else
         {
-            final AuthScope scope = entry.getKey();
-            final SSLKeyCert kc = entry.getValue();
+            context.set( ctx );
+        }
+    }
 
-            try
-            {
-                readKeyAndCert( scope, kc.getKeyPem(), kc.getKeyPassword(), ks );
+    /**
+     * Run the action with the given credentials bound to the current thread, restoring whatever was bound before
+     * when it returns or throws. Calls may be nested.
+     */
+    public <T, E extends Exception> T callWith( final CredentialContext ctx,
+                                                final CredentialContext.Action<T, E> action )
+        throws E
+    {
+        final CredentialContext previous = context.get();
+        bind( ctx );
+        try
+        {
+            return action.call();
+        }
+        finally
+        {
+            bind( previous );
+        }
+    }
 
-                keyPasswords.put( scope, kc.getKeyPassword() );
-            }
-            catch ( final KeyStoreException e )
-            {
-                throw new HTTPException( "Failed to load client key / certificates for: %s. Reason: %s", e, scope,
-                                         e.getMessage() );
-            }
-            catch ( final NoSuchAlgorithmException e )
-            {
-                throw new HTTPException( "Failed to load client key / certificates for: %s. Reason: %s", e, scope,
-                                         e.getMessage() );
-            }
-            catch ( final CertificateException e )
-            {
-                throw new HTTPException( "Failed to load client key / certificates for: %s. Reason: %s", e, scope,
-                                         e.getMessage() );
-            }
-            catch ( final IOException e )
-            {
-                throw new HTTPException( "Failed to load client key / certificates for: %s. Reason: %s", e, scope,
-                                         e.getMessage() );
-            }
-            catch ( final InvalidKeySpecException e )
-            {
-                throw new HTTPException( "Failed to load client key / certificates for: %s. Reason: %s", e, scope,
-                                         e.getMessage() );
-            }
+    public void runWith( final CredentialContext ctx, final Runnable action )
+    {
+        final CredentialContext previous = context.get();
+        bind( ctx );
+        try
+        {
+            action.run();
+        }
+        finally
+        {
+            bind( previous );
+        }
+    }
 
-            try
-            {
-                readCerts( scope, kc.getCertPem(), ts );
-            }
-            catch ( final KeyStoreException e )
-            {
-                throw new HTTPException( "Failed to load server certificates for: %s. Reason: %s", e, scope,
-                                         e.getMessage() );
-            }
-            catch ( final NoSuchAlgorithmException e )
-            {
-                throw new HTTPException( "Failed to load server certificates for: %s. Reason: %s", e, scope,
-                                         e.getMessage() );
-            }
-            catch ( final CertificateException e )
+    /**
+     * Credentials bound to the current thread; {@link CredentialContext#EMPTY} (never null) if nothing is bound.
+     */
+    public CredentialContext getContext()
+    {
+        final CredentialContext ctx = context.get();
+        return ctx == null ? CredentialContext.EMPTY : ctx;
+    }
+
+    public void bindKeyCerts( final Map<AuthScope, SSLKeyCert> keycerts )
+        throws HTTPException
+    {
+        bind( getCredentialBundle( keycerts ) );
+    }
+
+    public void bindKeyCert( final AuthScope scope, final SSLKeyCert keycert )
+        throws HTTPException
+    {
+        bindKeyCerts( Collections.singletonMap( scope, keycert ) );
+    }
+
+    /**
+     * Return the parsed {@link CredentialBundle} for these key / certificate PEMs, parsing them only if no bundle with
+     * the same content is cached.
+     */
+    public CredentialBundle getCredentialBundle( final Map<AuthScope, SSLKeyCert> keycerts )
+        throws HTTPException
+    {
+        final String hash = CredentialBundle.contentHash( keycerts );
+        try
+        {
+            return bundleCache.get( hash, new Callable<CredentialBundle>()
             {
-                throw new HTTPException( "Failed to load server certificates for: %s. Reason: %s", e, scope,
-                                         e.getMessage() );
-            }
-            catch ( final IOException e )
+                @Override
+                public CredentialBundle call()
+                    throws HTTPException
+                {
+                    return CredentialBundle.build( hash, keycerts );
+                }
+            } );
+        }
+        catch ( final ExecutionException e )
+        {
+            final Throwable cause = e.getCause();
+            if ( cause instanceof HTTPException )
             {
-                throw new HTTPException( "Failed to load server certificates for: %s. Reason: %s", e, scope,
-                                         e.getMessage() );
+                throw (HTTPException) cause;
             }
 
+            throw new HTTPException( "Failed to load client key / server certificates: %s", cause,
+                                     cause.getMessage() );
         }
-
-        this.keyPasswords.set( keyPasswords );
-        this.keystores.set( ks );
-        this.truststores.set( ts );
     }
 
-    public synchronized void bindKeyCert( final AuthScope scope, final SSLKeyCert keycert )
+    /**
+     * Build a context from HTTP credentials and key / certificate PEMs (either may be null), reusing cached bundles.
+     */
+    public CredentialContext newContext( final Map<AuthScope, Credentials> creds,
+                                         final Map<AuthScope, SSLKeyCert> keycerts )
         throws HTTPException
     {
-        bindKeyCerts( Collections.singletonMap( scope, keycert ) );
+        return CredentialContext.of( creds, keycerts == null ? null : getCredentialBundle( keycerts ) );
+    }
+
+    public BoundedCache<String, CredentialBundle> getBundleCache()
+    {
+        return bundleCache;
     }
 
     @Override
     public void clear()
     {
-        credentials.set( null );
+        context.remove();
     }
 
     @Override
-    public synchronized void setCredentials( final AuthScope authscope, final Credentials creds )
+    public void setCredentials( final AuthScope authscope, final Credentials creds )
     {
         bind( authscope, creds );
     }
@@ -156,24 +203,84 @@ public class ThreadLocalCredentialsProvider
     @Override
     public Credentials getCredentials( final AuthScope authscope )
     {
-        final Map<AuthScope, Credentials> map = credentials.get();
-        return map == null ? null : map.get( authscope );
+        return getContext().getCredentials( authscope );
+    }
+
+    /**
+     * Credentials bound to the current thread, or null. Used to carry them over to requests that execute on other
+     * threads.
+     */
+    public Map<AuthScope, Credentials> getBoundCredentials()
+    {
+        return getContext().getCredentials();
+    }
+
+    public CredentialBundle getCredentialBundle()
+    {
+        return getContext().getBundle();
+    }
+
+    /**
+     * Index over the credentials bound to the current thread; empty (never null) if nothing is bound.
+     */
+    public CredentialIndex getCredentialIndex()
+    {
+        return getContext().getIndex();
+    }
+
+    /**
+     * Pool state token for a connection to the given scope: the bound bundle's store fingerprint if it holds a client
+     * key for that scope, otherwise null (the connection carries no thread-specific identity and can be shared).
+     */
+    public Object getConnectionStateToken( final AuthScope scope )
+    {
+        final CredentialBundle bundle = getContext().getBundle();
+        if ( bundle == null || scope == null )
+        {
+            return null;
+        }
+
+        return bundle.getIndex()
+                     .getPrivateKey( AliasCodec.encode( scope, true ) ) == null ? null : bundle.getStoreFingerprint();
+    }
+
+    /**
+     * Pool state token for a connection that authenticated with a client certificate from the bound bundle, or null
+     * if the current thread has no client keys bound.
+     */
+    public Object getConnectionStateToken()
+    {
+        final CredentialBundle bundle = getContext().getBundle();
+        if ( bundle == null || bundle.keyStore() == null )
+        {
+            return null;
+        }
+
+        return bundle.getStoreFingerprint();
     }
 
     public String getKeyPassword( final AuthScope scope )
     {
-        final Map<AuthScope, String> map = keyPasswords.get();
-        return map == null ? null : map.get( scope );
+        return getContext().getKeyPassword( scope );
     }
 
     public KeyStore getKeyStore()
     {
-        return keystores.get();
+        return getContext().getKeyStore();
     }
 
     public KeyStore getTrustStore()
     {
-        return truststores.get();
+        return getContext().getTrustStore();
+    }
+
+    /**
+     * Fingerprint of the keystore / truststore contents bound to the current thread, computed once when the bundle is
+     * built. Used to key cached SSL socket factories. Null if nothing is bound.
+     */
+    public String getStoreFingerprint()
+    {
+        return getContext().getStoreFingerprint();
     }
 
 }
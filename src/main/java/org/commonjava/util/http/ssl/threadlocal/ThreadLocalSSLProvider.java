@@ -16,6 +16,7 @@ import org.apache.http.conn.ssl.SSLSocketFactory;
 import org.apache.http.conn.ssl.X509HostnameVerifier;
 import org.commonjava.util.http.HTTPException;
 import org.commonjava.util.http.ssl.SSLProvider;
+import org.commonjava.util.http.ssl.TrustDecisionCache;
 
 public class ThreadLocalSSLProvider
     implements SSLProvider
@@ -27,6 +28,8 @@ public class ThreadLocalSSLProvider
     @Inject
     private X509HostnameVerifier verifier = SSLSocketFactory.BROWSER_COMPATIBLE_HOSTNAME_VERIFIER;
 
+    private TrustDecisionCache trustDecisions;
+
     public ThreadLocalSSLProvider()
     {
     }
@@ -37,6 +40,17 @@ public class ThreadLocalSSLProvider
         this.verifier = verifier;
     }
 
+    /**
+     * @param trustDecisions optional cache of positive server / client trust decisions; null disables caching.
+     */
+    public ThreadLocalSSLProvider( final ThreadLocalCredentialsProvider credProvider, final X509HostnameVerifier verifier,
+                                   final TrustDecisionCache trustDecisions )
+    {
+        this.credProvider = credProvider;
+        this.verifier = verifier;
+        this.trustDecisions = trustDecisions;
+    }
+
     @Override
     public SSLSocketFactory build()
         throws HTTPException
@@ -83,7 +97,7 @@ public class ThreadLocalSSLProvider
     public TrustManager getTrustManager()
         throws HTTPException
     {
-        return new TLTrustManager( credProvider, getDefaultTrustManager() );
+        return new TLTrustManager( credProvider, getDefaultTrustManager(), trustDecisions );
     }
 
 }
@@ -1,6 +1,7 @@
 package org.commonjava.util.http.ssl.threadlocal;
 
 import java.io.IOException;
+import java.net.InetSocketAddress;
 import java.net.Socket;
 import java.net.UnknownHostException;
 import java.security.KeyManagementException;
@@ -8,15 +9,20 @@ import java.security.KeyStore;
 import java.security.KeyStoreException;
 import java.security.NoSuchAlgorithmException;
 import java.security.UnrecoverableKeyException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
 
 import javax.inject.Inject;
 
 import org.apache.http.auth.AuthScope;
+import org.apache.http.conn.ConnectTimeoutException;
 import org.apache.http.conn.ssl.SSLSocketFactory;
 import org.apache.http.conn.ssl.TrustStrategy;
 import org.apache.http.conn.ssl.X509HostnameVerifier;
 import org.apache.http.params.HttpParams;
+import org.commonjava.util.http.HTTPException;
 import org.commonjava.util.http.client.HTTPClient;
+import org.commonjava.util.http.ssl.SSLUtils;
 import org.commonjava.util.logging.Logger;
 
 public class ThreadLocalSSLSocketFactory
@@ -31,18 +37,36 @@ public class ThreadLocalSSLSocketFactory
     @Inject
     private X509HostnameVerifier verifier = SSLSocketFactory.BROWSER_COMPATIBLE_HOSTNAME_VERIFIER;
 
+    private final SSLFactoryCache factoryCache;
+
     public ThreadLocalSSLSocketFactory( final X509HostnameVerifier verifier )
         throws KeyManagementException, UnrecoverableKeyException, NoSuchAlgorithmException, KeyStoreException
     {
         super( (TrustStrategy) null, verifier );
         this.verifier = verifier;
+        this.factoryCache = new SSLFactoryCache();
     }
 
     public ThreadLocalSSLSocketFactory( final ThreadLocalCredentialsProvider credProvider, final X509HostnameVerifier verifier )
         throws KeyManagementException, UnrecoverableKeyException, NoSuchAlgorithmException, KeyStoreException
+    {
+        this( credProvider, verifier, SSLFactoryCache.DEFAULT_MAX_SIZE, SSLFactoryCache.DEFAULT_TTL_MILLIS,
+              TimeUnit.MILLISECONDS );
+    }
+
+    public ThreadLocalSSLSocketFactory( final ThreadLocalCredentialsProvider credProvider,
+                                        final X509HostnameVerifier verifier, final int maxCachedFactories,
+                                        final long factoryTtl, final TimeUnit factoryTtlUnit )
+        throws KeyManagementException, UnrecoverableKeyException, NoSuchAlgorithmException, KeyStoreException
     {
         super( (TrustStrategy) null, verifier );
         this.credProvider = credProvider;
+        this.factoryCache = new SSLFactoryCache( maxCachedFactories, factoryTtl, factoryTtlUnit );
+    }
+
+    public SSLFactoryCache getFactoryCache()
+    {
+        return factoryCache;
     }
 
     @Override
@@ -67,60 +91,93 @@ public class ThreadLocalSSLSocketFactory
         return super.createSocket( params );
     }
 
-    private synchronized SSLSocketFactory getSSLFactory( final AuthScope scope )
+    /**
+     * Not synchronized: building a factory (key and trust store setup) for one set of credentials would otherwise hold
+     * up every other connection through this factory until it finished. Concurrent misses for the same credentials
+     * still build it only once (see {@link SSLFactoryCache}).
+     */
+    private SSLSocketFactory getSSLFactory( final AuthScope scope )
         throws IOException
     {
-        SSLSocketFactory factory = null; // TODO: cache these??
-        if ( factory == null )
+        final CredentialBundle bundle = credProvider.getCredentialBundle();
+        final KeyStore ks = bundle == null ? null : bundle.keyStore();
+        final KeyStore ts = bundle == null ? null : bundle.trustStore();
+        if ( ks == null && ts == null )
         {
-            final KeyStore ks = credProvider.getKeyStore();
-            final KeyStore ts = credProvider.getTrustStore();
-            final String kp = credProvider.getKeyPassword( scope );
+            return null;
+        }
 
-            if ( ks != null )
+        final String kp = credProvider.getKeyPassword( scope );
+        if ( ks != null )
+        {
+            if ( kp == null || kp.length() < 1 )
             {
-                if ( kp == null || kp.length() < 1 )
-                {
-                    logger.error( "Invalid configuration. %s cannot have an empty key password!", scope );
+                logger.error( "Invalid configuration. %s cannot have an empty key password!", scope );
 
-                    throw new IOException( scope + " is misconfigured!" );
-                }
+                throw new IOException( scope + " is misconfigured!" );
             }
+        }
 
-            if ( ks != null || ts != null )
+        String fingerprint = credProvider.getStoreFingerprint();
+        if ( fingerprint == null )
+        {
+            try
             {
-                try
-                {
-                    factory = new SSLSocketFactory( SSLSocketFactory.TLS, ks, kp, ts, null, null, verifier );
-                }
-                catch ( final KeyManagementException e )
-                {
-                    logger.error( "Invalid configuration. Cannot initialize SSL socket factory for: %s. Error: %s", e,
-                                  scope, e.getMessage() );
-                    throw new IOException( "Failed to initialize SSL connection for: " + scope );
-                }
-                catch ( final UnrecoverableKeyException e )
-                {
-                    logger.error( "Invalid configuration. Cannot initialize SSL socket factory for: %s. Error: %s", e,
-                                  scope, e.getMessage() );
-                    throw new IOException( "Failed to initialize SSL connection for: " + scope );
-                }
-                catch ( final NoSuchAlgorithmException e )
-                {
-                    logger.error( "Invalid configuration. Cannot initialize SSL socket factory for: %s. Error: %s", e,
-                                  scope, e.getMessage() );
-                    throw new IOException( "Failed to initialize SSL connection for: " + scope );
-                }
-                catch ( final KeyStoreException e )
-                {
-                    logger.error( "Invalid configuration. Cannot initialize SSL socket factory for: %s. Error: %s", e,
-                                  scope, e.getMessage() );
-                    throw new IOException( "Failed to initialize SSL connection for: " + scope );
-                }
+                fingerprint = SSLUtils.fingerprint( ks, ts );
+            }
+            catch ( final HTTPException e )
+            {
+                logger.error( "Cannot fingerprint bound key / trust stores for: %s. Error: %s", e, scope,
+                              e.getMessage() );
+                throw new IOException( "Failed to initialize SSL connection for: " + scope );
             }
         }
 
-        return factory;
+        final SSLFactoryKey key = new SSLFactoryKey( scope, fingerprint, SSLUtils.fingerprint( kp ) );
+
+        return factoryCache.getFactory( key, new Callable<SSLSocketFactory>()
+        {
+            @Override
+            public SSLSocketFactory call()
+                throws IOException
+            {
+                return buildSSLFactory( scope, ks, kp, ts );
+            }
+        } );
+    }
+
+    private SSLSocketFactory buildSSLFactory( final AuthScope scope, final KeyStore ks, final String kp,
+                                              final KeyStore ts )
+        throws IOException
+    {
+        try
+        {
+            return new SSLSocketFactory( SSLSocketFactory.TLS, ks, kp, ts, null, null, verifier );
+        }
+        catch ( final KeyManagementException e )
+        {
+            logger.error( "Invalid configuration. Cannot initialize SSL socket factory for: %s. Error: %s", e, scope,
+                          e.getMessage() );
+            throw new IOException( "Failed to initialize SSL connection for: " + scope );
+        }
+        catch ( final UnrecoverableKeyException e )
+        {
+            logger.error( "Invalid configuration. Cannot initialize SSL socket factory for: %s. Error: %s", e, scope,
+                          e.getMessage() );
+            throw new IOException( "Failed to initialize SSL connection for: " + scope );
+        }
+        catch ( final NoSuchAlgorithmException e )
+        {
+            logger.error( "Invalid configuration. Cannot initialize SSL socket factory for: %s. Error: %s", e, scope,
+                          e.getMessage() );
+            throw new IOException( "Failed to initialize SSL connection for: " + scope );
+        }
+        catch ( final KeyStoreException e )
+        {
+            logger.error( "Invalid configuration. Cannot initialize SSL socket factory for: %s. Error: %s", e, scope,
+                          e.getMessage() );
+            throw new IOException( "Failed to initialize SSL connection for: " + scope );
+        }
     }
 
     @Override
@@ -141,6 +198,29 @@ public class ThreadLocalSSLSocketFactory
         }
     }
 
+    /**
+     * Connect (and layer TLS onto) the socket with the same per-credential factory that created it. HttpClient 4.3+
+     * creates plain sockets in {@link #createSocket(HttpParams)} and layers TLS while connecting, which would otherwise
+     * use this factory's default context rather than the bound credentials.
+     */
+    @Override
+    public Socket connectSocket( final Socket socket, final InetSocketAddress remoteAddress,
+                                 final InetSocketAddress localAddress, final HttpParams params )
+        throws IOException, UnknownHostException, ConnectTimeoutException
+    {
+        final AuthScope scope = (AuthScope) params.getParameter( HTTPClient.AUTH_SCOPE_PARAM );
+        if ( scope != null )
+        {
+            final SSLSocketFactory fac = getSSLFactory( scope );
+            if ( fac != null )
+            {
+                return fac.connectSocket( socket, remoteAddress, localAddress, params );
+            }
+        }
+
+        return super.connectSocket( socket, remoteAddress, localAddress, params );
+    }
+
     @Override
     public Socket createLayeredSocket( final Socket socket, final String host, final int port, final HttpParams params )
         throws IOException, UnknownHostException
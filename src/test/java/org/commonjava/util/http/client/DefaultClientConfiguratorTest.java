@@ -0,0 +1,71 @@
+package org.commonjava.util.http.client;
+
+import static org.junit.Assert.assertEquals;
+
+import org.apache.http.HttpHost;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.conn.ssl.SSLSocketFactory;
+import org.apache.http.impl.conn.PoolingClientConnectionManager;
+import org.commonjava.util.http.ssl.SSLManager;
+import org.commonjava.util.http.ssl.threadlocal.ThreadLocalCredentialsProvider;
+import org.commonjava.util.http.ssl.threadlocal.ThreadLocalSSLProvider;
+import org.junit.Before;
+import org.junit.Test;
+
+public class DefaultClientConfiguratorTest
+{
+
+    private final HttpHost host = new HttpHost( "repo.example.com", -1, "https" );
+
+    private DefaultClientConfigurator configurator;
+
+    private PoolingClientConnectionManager ccm;
+
+    private HttpRoute route;
+
+    @Before
+    public void setUp()
+        throws Exception
+    {
+        configurator = new DefaultClientConfigurator( new ConnectionPoolConfig( 20, 5 ) );
+        configurator.setMaxPerHost( host, 3 );
+
+        final SSLManager sslManager =
+            new SSLManager( new ThreadLocalSSLProvider( new ThreadLocalCredentialsProvider(),
+                                                        SSLSocketFactory.BROWSER_COMPATIBLE_HOSTNAME_VERIFIER ) );
+        ccm = (PoolingClientConnectionManager) configurator.createConnectionManager( sslManager );
+        route = configurator.routeFor( host );
+    }
+
+    @Test
+    public void overridesApplyToNewConnectionManagers()
+    {
+        assertEquals( 3, ccm.getMaxPerRoute( route ) );
+        assertEquals( 5, ccm.getMaxPerRoute( configurator.routeFor( new HttpHost( "other.example.com", 443,
+                                                                                  "https" ) ) ) );
+    }
+
+    @Test
+    public void liveOverrideChanges()
+    {
+        configurator.setMaxPerHost( new HttpHost( "repo.example.com", 443, "https" ), 8 );
+
+        assertEquals( 8, ccm.getMaxPerRoute( route ) );
+        assertEquals( 8, configurator.getPoolConfig()
+                                     .getMaxForRoute( route ) );
+    }
+
+    @Test
+    public void removedOverrideFollowsLaterDefaultChanges()
+    {
+        configurator.removeMaxPerHost( host );
+        assertEquals( 5, ccm.getMaxPerRoute( route ) );
+
+        configurator.setDefaultMaxPerRoute( 7 );
+
+        assertEquals( 7, ccm.getMaxPerRoute( route ) );
+        assertEquals( 7, configurator.getPoolConfig()
+                                     .getMaxForRoute( route ) );
+    }
+
+}
@@ -0,0 +1,139 @@
+package org.commonjava.util.http.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+
+import org.apache.http.auth.AuthScope;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.protocol.ClientContext;
+import org.apache.http.conn.ssl.SSLSocketFactory;
+import org.apache.http.protocol.BasicHttpContext;
+import org.apache.http.protocol.HttpContext;
+import org.commonjava.util.http.ssl.SSLManager;
+import org.commonjava.util.http.ssl.TestCertificates;
+import org.commonjava.util.http.ssl.threadlocal.CredentialBundle;
+import org.commonjava.util.http.ssl.threadlocal.SSLKeyCert;
+import org.commonjava.util.http.ssl.threadlocal.ThreadLocalCredentialsProvider;
+import org.commonjava.util.http.ssl.threadlocal.ThreadLocalSSLProvider;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class HTTPClientTest
+{
+
+    private final AuthScope scope = new AuthScope( "repo.example.com", 443 );
+
+    private ThreadLocalCredentialsProvider credProvider;
+
+    private HTTPClient client;
+
+    private HttpGet request;
+
+    @Before
+    public void setUp()
+        throws Exception
+    {
+        credProvider = new ThreadLocalCredentialsProvider();
+        final SSLManager sslManager =
+            new SSLManager( new ThreadLocalSSLProvider( credProvider,
+                                                        SSLSocketFactory.BROWSER_COMPATIBLE_HOSTNAME_VERIFIER ) );
+        client = new HTTPClient( sslManager, new DefaultClientConfigurator(), credProvider, null );
+
+        request = new HttpGet( "https://repo.example.com/" );
+        request.getParams()
+               .setParameter( HTTPClient.AUTH_SCOPE_PARAM, scope );
+    }
+
+    @After
+    public void tearDown()
+    {
+        credProvider.clear();
+        client.shutdown();
+    }
+
+    /**
+     * HttpClient writes the connection's token back into the context, so a context reused after binding other
+     * credentials must not keep asking the pool for the first bundle's connections.
+     */
+    @Test
+    public void reusedContextFollowsBoundBundle()
+        throws Exception
+    {
+        final CredentialBundle first = bundle( "server-cert.pem" );
+        final CredentialBundle second = bundle( "ca.pem" );
+        assertFalse( first.getStoreFingerprint()
+                          .equals( second.getStoreFingerprint() ) );
+
+        final HttpContext context = new BasicHttpContext();
+
+        credProvider.bind( first );
+        execute( context );
+        assertEquals( first.getStoreFingerprint(), context.getAttribute( ClientContext.USER_TOKEN ) );
+
+        credProvider.bind( second );
+        execute( context );
+        assertEquals( second.getStoreFingerprint(), context.getAttribute( ClientContext.USER_TOKEN ) );
+
+        credProvider.clear();
+        execute( context );
+        assertNull( context.getAttribute( ClientContext.USER_TOKEN ) );
+    }
+
+    /**
+     * A token the user token handler wrote back after a request without a client key is also replaced later.
+     */
+    @Test
+    public void writtenBackTokenIsReplaced()
+        throws Exception
+    {
+        final HttpContext context = new BasicHttpContext();
+        assertTrue( client.applyStateToken( request, context ) );
+        context.setAttribute( ClientContext.USER_TOKEN, "handler-token" );
+        client.keepStateToken( context );
+
+        final CredentialBundle bundle = bundle( "ca.pem" );
+        credProvider.bind( bundle );
+        execute( context );
+
+        assertEquals( bundle.getStoreFingerprint(), context.getAttribute( ClientContext.USER_TOKEN ) );
+    }
+
+    @Test
+    public void callerTokenIsKept()
+        throws Exception
+    {
+        final HttpContext context = new BasicHttpContext();
+        context.setAttribute( ClientContext.USER_TOKEN, "caller-token" );
+
+        credProvider.bind( bundle( "ca.pem" ) );
+
+        assertFalse( client.applyStateToken( request, context ) );
+        assertEquals( "caller-token", context.getAttribute( ClientContext.USER_TOKEN ) );
+    }
+
+    /**
+     * Stands in for a request over the HTTP/1.1 client, which leaves a token it was given in the context.
+     */
+    private void execute( final HttpContext context )
+    {
+        if ( client.applyStateToken( request, context ) )
+        {
+            client.keepStateToken( context );
+        }
+    }
+
+    private CredentialBundle bundle( final String trustPem )
+        throws Exception
+    {
+        final SSLKeyCert kc = new SSLKeyCert( TestCertificates.pem( "client-keycert.pem" ),
+                                              TestCertificates.KEY_PASSWORD, TestCertificates.pem( trustPem ) );
+
+        return credProvider.getCredentialBundle( Collections.singletonMap( scope, kc ) );
+    }
+
+}
@@ -0,0 +1,265 @@
+package org.commonjava.util.http.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.Set;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.hc.core5.http.ContentType;
+import org.apache.hc.core5.http.EntityDetails;
+import org.apache.hc.core5.http.HttpException;
+import org.apache.hc.core5.http.HttpRequest;
+import org.apache.hc.core5.http.HttpStatus;
+import org.apache.hc.core5.http.Message;
+import org.apache.hc.core5.http.URIScheme;
+import org.apache.hc.core5.http.impl.bootstrap.HttpAsyncServer;
+import org.apache.hc.core5.http.nio.AsyncRequestConsumer;
+import org.apache.hc.core5.http.nio.AsyncServerRequestHandler;
+import org.apache.hc.core5.http.nio.entity.StringAsyncEntityConsumer;
+import org.apache.hc.core5.http.nio.support.BasicRequestConsumer;
+import org.apache.hc.core5.http.nio.support.BasicResponseProducer;
+import org.apache.hc.core5.http.protocol.HttpContext;
+import org.apache.hc.core5.http2.HttpVersionPolicy;
+import org.apache.hc.core5.http2.impl.nio.bootstrap.H2ServerBootstrap;
+import org.apache.hc.core5.http2.ssl.H2ServerTlsStrategy;
+import org.apache.hc.core5.io.CloseMode;
+import org.apache.http.HttpResponse;
+import org.apache.http.auth.AuthScope;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.params.ClientPNames;
+import org.apache.http.conn.ssl.SSLSocketFactory;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.params.AbstractHttpParams;
+import org.apache.http.params.CoreConnectionPNames;
+import org.apache.http.params.HttpParams;
+import org.apache.http.util.EntityUtils;
+import org.commonjava.util.http.ssl.SSLManager;
+import org.commonjava.util.http.ssl.TestCertificates;
+import org.commonjava.util.http.ssl.path.PathSSLProvider;
+import org.commonjava.util.http.ssl.path.PathSSLResourceLoader;
+import org.commonjava.util.http.ssl.threadlocal.SSLKeyCert;
+import org.commonjava.util.http.ssl.threadlocal.ThreadLocalCredentialsProvider;
+import org.junit.Test;
+
+public class Http2TransportTest
+{
+
+    @Test
+    public void supportsRequestsWithoutParams()
+    {
+        assertTrue( Http2Transport.supports( new HttpGet( "https://repo.example.com/" ) ) );
+    }
+
+    @Test
+    public void supportsScopeAndTimeouts()
+    {
+        final HttpGet request = new HttpGet( "https://repo.example.com/" );
+        request.getParams()
+               .setParameter( HTTPClient.AUTH_SCOPE_PARAM, new AuthScope( "repo.example.com", 443 ) )
+               .setIntParameter( CoreConnectionPNames.CONNECTION_TIMEOUT, 1000 )
+               .setIntParameter( CoreConnectionPNames.SO_TIMEOUT, 1000 );
+
+        assertTrue( Http2Transport.supports( request ) );
+    }
+
+    @Test
+    public void rejectsUnknownParams()
+    {
+        final HttpGet request = new HttpGet( "https://repo.example.com/" );
+        request.getParams()
+               .setBooleanParameter( ClientPNames.HANDLE_REDIRECTS, false );
+
+        assertFalse( Http2Transport.supports( request ) );
+    }
+
+    /**
+     * Params that can't list their names may hold anything, so they stay on HTTP/1.1.
+     */
+    @Test
+    public void rejectsParamsWithoutNames()
+    {
+        final HttpGet request = new HttpGet( "https://repo.example.com/" );
+        request.setParams( new AbstractHttpParams()
+        {
+            @Override
+            public Object getParameter( final String name )
+            {
+                return null;
+            }
+
+            @Override
+            public HttpParams setParameter( final String name, final Object value )
+            {
+                return this;
+            }
+
+            @Override
+            public HttpParams copy()
+            {
+                return this;
+            }
+
+            @Override
+            public boolean removeParameter( final String name )
+            {
+                return false;
+            }
+
+            @Override
+            public Set<String> getNames()
+            {
+                throw new UnsupportedOperationException();
+            }
+        } );
+
+        assertFalse( Http2Transport.supports( request ) );
+    }
+
+    @Test( timeout = 30000 )
+    public void roundTripOverHttp2()
+        throws Exception
+    {
+        final File dir = trustDir();
+        final HttpAsyncServer server = startServer();
+        final HTTPClient client = client( dir, new ThreadLocalCredentialsProvider() );
+        try
+        {
+            final HttpPost request = new HttpPost( "https://localhost:" + port( server ) + "/echo" );
+            request.setEntity( new StringEntity( "hello", "UTF-8" ) );
+
+            final HttpResponse response = client.execute( request );
+
+            assertEquals( 200, response.getStatusLine()
+                                       .getStatusCode() );
+            assertEquals( 2, response.getProtocolVersion()
+                                     .getMajor() );
+            assertEquals( "POST /echo hello", EntityUtils.toString( response.getEntity() ) );
+        }
+        finally
+        {
+            client.shutdown();
+            server.close( CloseMode.IMMEDIATE );
+            FileUtils.deleteDirectory( dir );
+        }
+    }
+
+    /**
+     * The bundle's trust and client keys only reach HTTP/1.1 connections, so binding one has to move the request off
+     * the shared HTTP/2 transport.
+     */
+    @Test( timeout = 30000 )
+    public void boundBundleForcesHttp11()
+        throws Exception
+    {
+        final File dir = trustDir();
+        final HttpAsyncServer server = startServer();
+        final ThreadLocalCredentialsProvider credProvider = new ThreadLocalCredentialsProvider();
+        final HTTPClient client = client( dir, credProvider );
+        try
+        {
+            final int port = port( server );
+            credProvider.bindKeyCerts( Collections.singletonMap( new AuthScope( "localhost", port ),
+                                                                 new SSLKeyCert( TestCertificates.pem( "ca.pem" ) ) ) );
+
+            final HttpResponse response = client.execute( new HttpGet( "https://localhost:" + port + "/echo" ) );
+
+            assertEquals( 1, response.getProtocolVersion()
+                                     .getMajor() );
+            assertEquals( "GET /echo ", EntityUtils.toString( response.getEntity() ) );
+        }
+        finally
+        {
+            credProvider.clear();
+            client.shutdown();
+            server.close( CloseMode.IMMEDIATE );
+            FileUtils.deleteDirectory( dir );
+        }
+    }
+
+    /**
+     * Trust directory holding the test CA, which signed the server's certificate.
+     */
+    private static File trustDir()
+        throws IOException
+    {
+        final File dir = Files.createTempDirectory( "h2-trust" )
+                              .toFile();
+        FileUtils.write( new File( new File( dir, "server" ), "ca.pem" ), TestCertificates.pem( "ca.pem" ), "UTF-8" );
+
+        return dir;
+    }
+
+    private static HTTPClient client( final File trustDir, final ThreadLocalCredentialsProvider credProvider )
+        throws Exception
+    {
+        final SSLManager sslManager =
+            new SSLManager( new PathSSLProvider( new PathSSLResourceLoader( trustDir.getPath() ),
+                                                 SSLSocketFactory.STRICT_HOSTNAME_VERIFIER ) );
+
+        return new HTTPClient( sslManager, new DefaultClientConfigurator().setHttp2Enabled( true ), credProvider,
+                               null );
+    }
+
+    /**
+     * Localhost TLS server that negotiates h2 or HTTP/1.1 via ALPN and answers with the request line and body.
+     */
+    private static HttpAsyncServer startServer()
+        throws Exception
+    {
+        final HttpAsyncServer server =
+            H2ServerBootstrap.bootstrap()
+                             .setTlsStrategy( new H2ServerTlsStrategy( TestCertificates.serverContext() ) )
+                             .setVersionPolicy( HttpVersionPolicy.NEGOTIATE )
+                             .register( "*", new AsyncServerRequestHandler<Message<HttpRequest, String>>()
+                             {
+                                 @Override
+                                 public AsyncRequestConsumer<Message<HttpRequest, String>> prepare(
+                                     final HttpRequest request, final EntityDetails entityDetails,
+                                     final HttpContext context )
+                                 {
+                                     return new BasicRequestConsumer<String>( new StringAsyncEntityConsumer() );
+                                 }
+
+                                 @Override
+                                 public void handle( final Message<HttpRequest, String> message,
+                                                     final ResponseTrigger responseTrigger,
+                                                     final HttpContext context )
+                                     throws HttpException, IOException
+                                 {
+                                     final HttpRequest request = message.getHead();
+                                     final String body = message.getBody();
+                                     final String echo = request.getMethod() + " " + request.getPath() + " "
+                                         + ( body == null ? "" : body );
+
+                                     final BasicResponseProducer response =
+                                         new BasicResponseProducer( HttpStatus.SC_OK, echo, ContentType.TEXT_PLAIN );
+
+                                     responseTrigger.submitResponse( response, context );
+                                 }
+                             } )
+                             .create();
+
+        server.start();
+        server.listen( new InetSocketAddress( "localhost", 0 ), URIScheme.HTTPS )
+              .get();
+
+        return server;
+    }
+
+    private static int port( final HttpAsyncServer server )
+    {
+        return ( (InetSocketAddress) server.getEndpoints()
+                                           .iterator()
+                                           .next()
+                                           .getAddress() ).getPort();
+    }
+
+}
@@ -0,0 +1,116 @@
+package org.commonjava.util.http.metrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.net.Socket;
+import java.security.KeyStore;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLHandshakeException;
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.SSLServerSocket;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.TrustManagerFactory;
+import javax.net.ssl.X509TrustManager;
+
+import org.apache.http.auth.AuthScope;
+import org.commonjava.util.http.ssl.SSLUtils;
+import org.commonjava.util.http.ssl.TestCertificates;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class MeteredTrustManagerTest
+{
+
+    private SSLServerSocket server;
+
+    private InMemoryHTTPMetrics metrics;
+
+    @Before
+    public void setUp()
+        throws Exception
+    {
+        server = TestCertificates.startServer();
+        metrics = new InMemoryHTTPMetrics();
+    }
+
+    @After
+    public void tearDown()
+        throws Exception
+    {
+        server.close();
+    }
+
+    @Test
+    public void endpointIdentificationAcceptsMatchingHost()
+        throws Exception
+    {
+        handshake( "localhost" ).close();
+
+        final TimingSnapshot checks = metrics.snapshot()
+                                             .getServerTrustChecks();
+        assertEquals( 1, checks.getCount() );
+        assertEquals( 0, checks.getFailures() );
+    }
+
+    /**
+     * The wrapped trust manager has to see the socket, or JSSE skips the hostname check for it.
+     */
+    @Test
+    public void endpointIdentificationRejectsOtherHost()
+        throws Exception
+    {
+        try
+        {
+            handshake( "wronghost.example" ).close();
+            fail( "The server certificate does not cover wronghost.example." );
+        }
+        catch ( final SSLHandshakeException e )
+        {
+            // expected
+        }
+
+        assertEquals( 1, metrics.snapshot()
+                                .getServerTrustChecks()
+                                .getFailures() );
+    }
+
+    private SSLSocket handshake( final String host )
+        throws Exception
+    {
+        final KeyStore ks = SSLUtils.newKeyStore();
+        SSLUtils.readCerts( new AuthScope( "localhost", server.getLocalPort() ), TestCertificates.pem( "ca.pem" ), ks );
+
+        final TrustManagerFactory tmf = TrustManagerFactory.getInstance( TrustManagerFactory.getDefaultAlgorithm() );
+        tmf.init( ks );
+
+        final TrustManager tm = new MeteredTrustManager( (X509TrustManager) tmf.getTrustManagers()[0], metrics );
+        final SSLContext ctx = SSLContext.getInstance( "TLS" );
+        ctx.init( null, new TrustManager[] { tm }, null );
+
+        final Socket plain = new Socket( "localhost", server.getLocalPort() );
+        final SSLSocket socket =
+            (SSLSocket) ctx.getSocketFactory()
+                           .createSocket( plain, host, server.getLocalPort(), true );
+
+        final SSLParameters params = socket.getSSLParameters();
+        params.setEndpointIdentificationAlgorithm( "HTTPS" );
+        socket.setSSLParameters( params );
+
+        try
+        {
+            socket.startHandshake();
+        }
+        catch ( final SSLHandshakeException e )
+        {
+            socket.close();
+            throw e;
+        }
+
+        return socket;
+    }
+
+}
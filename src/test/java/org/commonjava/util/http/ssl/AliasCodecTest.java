@@ -0,0 +1,71 @@
+package org.commonjava.util.http.ssl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import org.apache.http.auth.AuthScope;
+import org.junit.Test;
+
+public class AliasCodecTest
+{
+
+    @Test
+    public void roundTripClientAndServerAliases()
+    {
+        final AuthScope scope = new AuthScope( "repo.example.com", 8443 );
+
+        assertEquals( "client::repo.example.com:8443", AliasCodec.encode( scope, true ) );
+        assertEquals( "server::repo.example.com:8443", AliasCodec.encode( scope, false ) );
+
+        assertEquals( scope, AliasCodec.decode( AliasCodec.encode( scope, true ) ) );
+        assertEquals( scope, AliasCodec.decode( AliasCodec.encode( scope, false ) ) );
+    }
+
+    @Test
+    public void encodeHostPortMatchesEncodeScope()
+    {
+        assertEquals( AliasCodec.encode( new AuthScope( "localhost", 443 ), false ),
+                      AliasCodec.encode( "localhost", 443, false ) );
+    }
+
+    @Test
+    public void hostIsLowercased()
+    {
+        assertEquals( "client::repo.example.com:443", AliasCodec.encode( "Repo.Example.COM", 443, true ) );
+        assertEquals( AliasCodec.encode( new AuthScope( "Repo.Example.com", 443 ), false ),
+                      AliasCodec.encode( "Repo.Example.com", 443, false ) );
+    }
+
+    @Test
+    public void repeatLookupsReturnCachedInstances()
+    {
+        final AuthScope scope = new AuthScope( "cached.example.com", 443 );
+
+        assertSame( AliasCodec.encode( scope, true ), AliasCodec.encode( scope, true ) );
+        assertSame( AliasCodec.decode( "client::cached.example.com:443" ),
+                    AliasCodec.decode( "client::cached.example.com:443" ) );
+    }
+
+    @Test
+    public void hostKeepsColonsAfterPrefix()
+    {
+        final AuthScope scope = AliasCodec.decode( "server::fe80::1:443" );
+
+        assertEquals( "fe80::1", scope.getHost() );
+        assertEquals( 443, scope.getPort() );
+    }
+
+    @Test
+    public void nonScopeAliasesDecodeToNull()
+    {
+        assertNull( AliasCodec.decode( null ) );
+        assertNull( AliasCodec.decode( "cn=repo.example.com,o=example" ) );
+        assertNull( AliasCodec.decode( "client::repo.example.com" ) );
+        assertNull( AliasCodec.decode( "client::repo.example.com:" ) );
+        assertNull( AliasCodec.decode( "client::repo.example.com:44x3" ) );
+        assertNull( AliasCodec.decode( "client::repo.example.com:70000" ) );
+        assertNull( AliasCodec.decode( "::repo.example.com:443" ) );
+    }
+
+}
@@ -0,0 +1,305 @@
+package org.commonjava.util.http.ssl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class BoundedCacheTest
+{
+
+    private ExecutorService executor;
+
+    @Before
+    public void setUp()
+    {
+        executor = Executors.newCachedThreadPool();
+    }
+
+    @After
+    public void tearDown()
+    {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void evictsEntriesNotUsedSinceInsert()
+        throws Exception
+    {
+        final BoundedCache<String, String> cache = new BoundedCache<String, String>( 2, 1, TimeUnit.HOURS );
+        cache.put( "a", "A" );
+        cache.put( "b", "B" );
+
+        assertEquals( "A", cache.get( "a" ) );
+
+        cache.put( "c", "C" );
+
+        assertEquals( 2, cache.size() );
+        assertEquals( 1, cache.getEvictions() );
+        assertEquals( "A", cache.get( "a" ) );
+        assertNull( cache.get( "b" ) );
+        assertEquals( "C", cache.get( "c" ) );
+    }
+
+    @Test
+    public void staysBoundedUnderChurn()
+    {
+        final BoundedCache<Integer, Integer> cache = new BoundedCache<Integer, Integer>( 16, 1, TimeUnit.HOURS );
+        for ( int i = 0; i < 10000; i++ )
+        {
+            cache.put( i % 40, i );
+            cache.put( 7, i );
+        }
+
+        assertEquals( 16, cache.size() );
+    }
+
+    /**
+     * A used entry only gets one more pass, so reading everything between inserts must not keep the cache over size.
+     */
+    @Test
+    public void staysBoundedWhenEveryEntryIsRead()
+    {
+        final BoundedCache<Integer, Integer> cache = new BoundedCache<Integer, Integer>( 4, 1, TimeUnit.HOURS );
+        for ( int i = 0; i < 20; i++ )
+        {
+            cache.put( i, i );
+            for ( int j = 0; j <= i; j++ )
+            {
+                cache.get( j );
+            }
+
+            assertTrue( cache.toString(), cache.size() <= 4 );
+        }
+
+        assertEquals( 16, cache.getEvictions() );
+    }
+
+    @Test
+    public void expiresAfterTtl()
+        throws Exception
+    {
+        final BoundedCache<String, String> cache = new BoundedCache<String, String>( 4, 20, TimeUnit.MILLISECONDS );
+        cache.put( "a", "A" );
+        assertEquals( "A", cache.get( "a" ) );
+
+        Thread.sleep( 50 );
+
+        assertNull( cache.get( "a" ) );
+        assertEquals( 1, cache.getExpirations() );
+    }
+
+    @Test
+    public void explicitExpiryShortensTtl()
+        throws Exception
+    {
+        final BoundedCache<String, String> cache = new BoundedCache<String, String>( 4, 1, TimeUnit.HOURS );
+        cache.put( "a", "A", System.currentTimeMillis() + 20 );
+
+        Thread.sleep( 50 );
+
+        assertNull( cache.get( "a" ) );
+    }
+
+    @Test
+    public void hugeTtlDoesNotOverflow()
+        throws Exception
+    {
+        final BoundedCache<String, String> cache =
+            new BoundedCache<String, String>( 4, Long.MAX_VALUE, TimeUnit.MILLISECONDS );
+        cache.put( "a", "A" );
+
+        assertEquals( "B", cache.get( "b", value( "B" ) ) );
+        assertEquals( "A", cache.get( "a" ) );
+        assertEquals( "B", cache.get( "b" ) );
+    }
+
+    @Test( timeout = 10000 )
+    public void entriesBeingBuiltAreNotEvicted()
+        throws Exception
+    {
+        final BoundedCache<String, String> cache = new BoundedCache<String, String>( 1, 1, TimeUnit.HOURS );
+
+        final CountDownLatch building = new CountDownLatch( 1 );
+        final CountDownLatch release = new CountDownLatch( 1 );
+        final Future<String> slow = executor.submit( new Callable<String>()
+        {
+            @Override
+            public String call()
+                throws Exception
+            {
+                return cache.get( "slow", new Callable<String>()
+                {
+                    @Override
+                    public String call()
+                        throws InterruptedException
+                    {
+                        building.countDown();
+                        release.await();
+                        return "SLOW";
+                    }
+                } );
+            }
+        } );
+
+        building.await();
+        cache.put( "fast", "FAST" );
+        cache.put( "faster", "FASTER" );
+
+        release.countDown();
+        assertEquals( "SLOW", slow.get( 5, TimeUnit.SECONDS ) );
+
+        final AtomicInteger builds = new AtomicInteger();
+        assertEquals( "SLOW", cache.get( "slow", new Callable<String>()
+        {
+            @Override
+            public String call()
+            {
+                builds.incrementAndGet();
+                return "REBUILT";
+            }
+        } ) );
+        assertEquals( 0, builds.get() );
+    }
+
+    @Test( timeout = 10000 )
+    public void concurrentMissesBuildOnce()
+        throws Exception
+    {
+        final BoundedCache<String, String> cache = new BoundedCache<String, String>( 4, 1, TimeUnit.HOURS );
+        final AtomicInteger builds = new AtomicInteger();
+        final CountDownLatch start = new CountDownLatch( 1 );
+
+        final Callable<String> builder = new Callable<String>()
+        {
+            @Override
+            public String call()
+                throws InterruptedException
+            {
+                builds.incrementAndGet();
+                Thread.sleep( 50 );
+                return new String( "V" );
+            }
+        };
+
+        final Callable<String> lookup = new Callable<String>()
+        {
+            @Override
+            public String call()
+                throws Exception
+            {
+                start.await();
+                return cache.get( "k", builder );
+            }
+        };
+
+        final Future<String> first = executor.submit( lookup );
+        final Future<String> second = executor.submit( lookup );
+        start.countDown();
+
+        assertSame( first.get(), second.get() );
+        assertEquals( 1, builds.get() );
+    }
+
+    /**
+     * A slow build must not hold up lookups for other keys, as it did while the SSL factory lookup was synchronized.
+     */
+    @Test( timeout = 10000 )
+    public void slowBuildDoesNotBlockOtherKeys()
+        throws Exception
+    {
+        final BoundedCache<String, String> cache = new BoundedCache<String, String>( 4, 1, TimeUnit.HOURS );
+        cache.put( "cached", "CACHED" );
+
+        final CountDownLatch building = new CountDownLatch( 1 );
+        final CountDownLatch release = new CountDownLatch( 1 );
+        final Future<String> slow = executor.submit( new Callable<String>()
+        {
+            @Override
+            public String call()
+                throws Exception
+            {
+                return cache.get( "slow", new Callable<String>()
+                {
+                    @Override
+                    public String call()
+                        throws InterruptedException
+                    {
+                        building.countDown();
+                        release.await();
+                        return "SLOW";
+                    }
+                } );
+            }
+        } );
+
+        building.await();
+        try
+        {
+            assertEquals( "CACHED", cache.get( "cached", value( "REBUILT" ) ) );
+            assertEquals( "OTHER", cache.get( "other", value( "OTHER" ) ) );
+        }
+        finally
+        {
+            release.countDown();
+        }
+
+        assertEquals( "SLOW", slow.get( 5, TimeUnit.SECONDS ) );
+    }
+
+    @Test
+    public void failuresAreNotCached()
+        throws Exception
+    {
+        final BoundedCache<String, String> cache = new BoundedCache<String, String>( 4, 1, TimeUnit.HOURS );
+        try
+        {
+            cache.get( "k", new Callable<String>()
+            {
+                @Override
+                public String call()
+                    throws IOException
+                {
+                    throw new IOException( "boom" );
+                }
+            } );
+            fail( "Builder failure should surface." );
+        }
+        catch ( final ExecutionException e )
+        {
+            assertEquals( IOException.class, e.getCause()
+                                              .getClass() );
+        }
+
+        assertEquals( 0, cache.size() );
+        assertEquals( "V", cache.get( "k", value( "V" ) ) );
+    }
+
+    private static Callable<String> value( final String value )
+    {
+        return new Callable<String>()
+        {
+            @Override
+            public String call()
+            {
+                return value;
+            }
+        };
+    }
+
+}
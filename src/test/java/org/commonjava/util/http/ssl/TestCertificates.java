@@ -0,0 +1,106 @@
+package org.commonjava.util.http.ssl;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.Socket;
+import java.security.KeyStore;
+
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLServerSocket;
+import javax.net.ssl.SSLSocket;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.http.auth.AuthScope;
+
+/**
+ * PEM fixtures under /pem (a CA, a localhost server key / certificate signed by it, the server certificate alone, and
+ * a client key / certificate) plus a minimal TLS server that completes handshakes and writes one byte.
+ */
+public final class TestCertificates
+{
+
+    public static final String KEY_PASSWORD = "benchmark";
+
+    private TestCertificates()
+    {
+    }
+
+    public static String pem( final String name )
+        throws IOException
+    {
+        final InputStream in = TestCertificates.class.getResourceAsStream( "/pem/" + name );
+        if ( in == null )
+        {
+            throw new IOException( "Missing test fixture: /pem/" + name );
+        }
+
+        try
+        {
+            return IOUtils.toString( in, "UTF-8" );
+        }
+        finally
+        {
+            IOUtils.closeQuietly( in );
+        }
+    }
+
+    public static SSLContext serverContext()
+        throws Exception
+    {
+        final KeyStore ks = SSLUtils.newKeyStore();
+        SSLUtils.readKeyAndCert( new AuthScope( "localhost", AuthScope.ANY_PORT ), pem( "server-keycert.pem" ),
+                                 KEY_PASSWORD, ks );
+
+        final KeyManagerFactory kmf = KeyManagerFactory.getInstance( KeyManagerFactory.getDefaultAlgorithm() );
+        kmf.init( ks, KEY_PASSWORD.toCharArray() );
+
+        final SSLContext ctx = SSLContext.getInstance( "TLS" );
+        ctx.init( kmf.getKeyManagers(), null, null );
+
+        return ctx;
+    }
+
+    /**
+     * Start a localhost TLS server on an ephemeral port; close the returned socket to stop it.
+     */
+    public static SSLServerSocket startServer()
+        throws Exception
+    {
+        final SSLServerSocket server = (SSLServerSocket) serverContext().getServerSocketFactory()
+                                                                        .createServerSocket( 0 );
+
+        final Thread acceptor = new Thread( new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                while ( !server.isClosed() )
+                {
+                    Socket socket = null;
+                    try
+                    {
+                        socket = server.accept();
+                        ( (SSLSocket) socket ).startHandshake();
+                        socket.getOutputStream()
+                              .write( 1 );
+                    }
+                    catch ( final IOException e )
+                    {
+                        // handshake rejected by the client, or server closed
+                    }
+                    finally
+                    {
+                        IOUtils.closeQuietly( socket );
+                    }
+                }
+            }
+        }, "test-tls-server" );
+
+        acceptor.setDaemon( true );
+        acceptor.start();
+
+        return server;
+    }
+
+}
@@ -0,0 +1,169 @@
+package org.commonjava.util.http.ssl.path;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.JarOutputStream;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class CertificateIndexTest
+{
+
+    private File dir;
+
+    @Before
+    public void setUp()
+        throws Exception
+    {
+        dir = Files.createTempDirectory( "certindex" )
+                   .toFile();
+    }
+
+    @After
+    public void tearDown()
+        throws Exception
+    {
+        FileUtils.deleteDirectory( dir );
+    }
+
+    @Test
+    public void writeListsFilesInNameOrder()
+        throws Exception
+    {
+        final File certs = new File( dir, "server" );
+        FileUtils.write( new File( certs, "b.pem" ), "b", "UTF-8" );
+        FileUtils.write( new File( certs, "a.pem" ), "a", "UTF-8" );
+        FileUtils.write( new File( new File( certs, "sub" ), "c.pem" ), "c", "UTF-8" );
+
+        final File index = CertificateIndex.write( certs );
+        CertificateIndex.write( certs );
+
+        assertEquals( Arrays.asList( "a.pem", "b.pem" ), FileUtils.readLines( index, "UTF-8" ) );
+    }
+
+    /**
+     * With an index, only the listed entries are read, even if the jar holds others under the same path.
+     */
+    @Test
+    public void readUsesIndexWhenPresent()
+        throws Exception
+    {
+        final File jar = jar( "indexed.jar", "ssl/server/cert.index", "# generated\n\nb.pem\n a.pem \n",
+                              "ssl/server/a.pem", "a", "ssl/server/b.pem", "b", "ssl/server/unlisted.pem", "u" );
+
+        assertEquals( Arrays.asList( "ssl/server/b.pem", "ssl/server/a.pem" ), read( jar, "ssl/server" ) );
+    }
+
+    @Test
+    public void readScansWithoutIndex()
+        throws Exception
+    {
+        final File jar = jar( "scanned.jar", "ssl/server/a.pem", "a", "ssl/server-old/b.pem", "b", "ssl/client/c.pem",
+                              "c", "other.pem", "o" );
+
+        assertEquals( Collections.singletonList( "ssl/server/a.pem" ), read( jar, "ssl/server" ) );
+        assertEquals( Collections.singletonList( "ssl/server/a.pem" ), read( jar, "ssl/server/" ) );
+    }
+
+    @Test
+    public void jarIndexKeyChangesWhenJarIsReplaced()
+        throws Exception
+    {
+        final File jar = jar( "certs.jar", "ssl/server/a.pem", "a" );
+        final String key = PathSSLResourceLoader.jarIndexKey( jar, "ssl/server" );
+
+        assertEquals( key, PathSSLResourceLoader.jarIndexKey( jar, "ssl/server" ) );
+        assertFalse( key.equals( PathSSLResourceLoader.jarIndexKey( jar, "ssl/client" ) ) );
+
+        jar( "certs.jar", "ssl/server/a.pem", "a", "ssl/server/b.pem", "b" );
+
+        assertFalse( key.equals( PathSSLResourceLoader.jarIndexKey( jar, "ssl/server" ) ) );
+    }
+
+    @Test
+    public void cachedEntryNamesFollowReplacedJar()
+        throws Exception
+    {
+        final File jar = jar( "cached.jar", "ssl/server/a.pem", "a" );
+        assertEquals( Collections.singletonList( "ssl/server/a.pem" ), entryNames( jar ) );
+
+        jar( "cached.jar", "ssl/server/a.pem", "a", "ssl/server/b.pem", "b" );
+
+        assertEquals( Arrays.asList( "ssl/server/a.pem", "ssl/server/b.pem" ), entryNames( jar ) );
+    }
+
+    private static List<String> read( final File jar, final String basepath )
+        throws IOException
+    {
+        final JarFile jf = new JarFile( jar );
+        try
+        {
+            return CertificateIndex.read( jf, basepath );
+        }
+        finally
+        {
+            jf.close();
+        }
+    }
+
+    private static List<String> entryNames( final File jar )
+        throws Exception
+    {
+        final JarFile jf = new JarFile( jar );
+        try
+        {
+            return PathSSLResourceLoader.getJarEntryNames( jf, jar, "ssl/server" );
+        }
+        finally
+        {
+            jf.close();
+        }
+    }
+
+    /**
+     * Write a jar with the given entry name / content pairs. Rewriting an existing jar also moves its timestamp on, so
+     * it differs even where the file system's resolution is coarse.
+     */
+    private File jar( final String name, final String... entries )
+        throws IOException
+    {
+        final File jar = new File( dir, name );
+        final long previous = jar.exists() ? jar.lastModified() : 0;
+
+        final JarOutputStream out = new JarOutputStream( new FileOutputStream( jar ) );
+        try
+        {
+            for ( int i = 0; i < entries.length; i += 2 )
+            {
+                out.putNextEntry( new JarEntry( entries[i] ) );
+                out.write( entries[i + 1].getBytes( "UTF-8" ) );
+                out.closeEntry();
+            }
+        }
+        finally
+        {
+            out.close();
+        }
+
+        if ( previous > 0 )
+        {
+            jar.setLastModified( previous + 2000 );
+        }
+
+        return jar;
+    }
+
+}
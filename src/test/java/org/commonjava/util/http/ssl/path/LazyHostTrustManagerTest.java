@@ -0,0 +1,177 @@
+package org.commonjava.util.http.ssl.path;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.net.Socket;
+import java.nio.file.Files;
+import java.security.cert.CertificateException;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509Certificate;
+import java.util.Collections;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLException;
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.SSLServerSocket;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.TrustManager;
+
+import org.apache.commons.io.FileUtils;
+import org.commonjava.util.http.ssl.TestCertificates;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class LazyHostTrustManagerTest
+{
+
+    private File dir;
+
+    private SSLServerSocket server;
+
+    @Before
+    public void setUp()
+        throws Exception
+    {
+        dir = Files.createTempDirectory( "hosts" )
+                   .toFile();
+        server = TestCertificates.startServer();
+    }
+
+    @After
+    public void tearDown()
+        throws Exception
+    {
+        server.close();
+        FileUtils.deleteDirectory( dir );
+    }
+
+    @Test
+    public void hostFileTrustsItsHost()
+        throws Exception
+    {
+        final LazyHostTrustManager tm = lazy( "localhost_" + server.getLocalPort() + ".pem" );
+
+        handshake( tm, "localhost", false ).close();
+
+        assertEquals( 1, tm.getLoadedHosts() );
+    }
+
+    @Test
+    public void hostFileDoesNotApplyToOtherHosts()
+        throws Exception
+    {
+        final LazyHostTrustManager tm = lazy( "otherhost_" + server.getLocalPort() + ".pem" );
+
+        try
+        {
+            handshake( tm, "localhost", false ).close();
+            fail( "otherhost's certificates should not be trusted for localhost." );
+        }
+        catch ( final SSLException e )
+        {
+            // expected
+        }
+
+        assertEquals( 0, tm.getLoadedHosts() );
+    }
+
+    /**
+     * The host's certificates trust the chain, but it was issued for localhost, so endpoint identification has to
+     * reject it.
+     */
+    @Test
+    public void endpointIdentificationStillApplies()
+        throws Exception
+    {
+        final LazyHostTrustManager tm = lazy( "wronghost.example_" + server.getLocalPort() + ".pem" );
+
+        try
+        {
+            handshake( tm, "wronghost.example", true ).close();
+            fail( "The server certificate does not cover wronghost.example." );
+        }
+        catch ( final SSLException e )
+        {
+            // expected
+        }
+
+        assertEquals( 1, tm.getLoadedHosts() );
+    }
+
+    @Test
+    public void checksWithoutHostSkipHostFiles()
+        throws Exception
+    {
+        final LazyHostTrustManager tm = lazy( "localhost_" + server.getLocalPort() + ".pem" );
+
+        try
+        {
+            tm.checkServerTrusted( new X509Certificate[] { serverCertificate() }, "RSA" );
+            fail( "Host certificates should only apply when the host is known." );
+        }
+        catch ( final CertificateException e )
+        {
+            // expected
+        }
+
+        assertEquals( 0, tm.getLoadedHosts() );
+    }
+
+    private LazyHostTrustManager lazy( final String hostFile )
+        throws Exception
+    {
+        final File f = new File( dir, hostFile );
+        FileUtils.write( f, TestCertificates.pem( "ca.pem" ), "UTF-8" );
+
+        return new LazyHostTrustManager( new ReloadableTrustManager( ReloadableTrustManager.NO_TRUST ),
+                                         Collections.singletonList( f ), 4 );
+    }
+
+    /**
+     * Connect to the test server, presenting the given host name. Each call uses a fresh context so no session is
+     * resumed past the trust check.
+     */
+    private SSLSocket handshake( final LazyHostTrustManager tm, final String host, final boolean identify )
+        throws Exception
+    {
+        final SSLContext ctx = SSLContext.getInstance( "TLS" );
+        ctx.init( null, new TrustManager[] { tm }, null );
+
+        final Socket plain = new Socket( "localhost", server.getLocalPort() );
+        final SSLSocket socket = (SSLSocket) ctx.getSocketFactory()
+                                                .createSocket( plain, host, server.getLocalPort(), true );
+        if ( identify )
+        {
+            final SSLParameters params = socket.getSSLParameters();
+            params.setEndpointIdentificationAlgorithm( "HTTPS" );
+            socket.setSSLParameters( params );
+        }
+
+        try
+        {
+            socket.startHandshake();
+        }
+        catch ( final SSLException e )
+        {
+            socket.close();
+            throw e;
+        }
+
+        return socket;
+    }
+
+    private static X509Certificate serverCertificate()
+        throws Exception
+    {
+        final byte[] pem = TestCertificates.pem( "server-cert.pem" )
+                                           .getBytes( "UTF-8" );
+
+        return (X509Certificate) CertificateFactory.getInstance( "X.509" )
+                                                   .generateCertificate( new ByteArrayInputStream( pem ) );
+    }
+
+}
@@ -0,0 +1,166 @@
+package org.commonjava.util.http.ssl.path;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.net.Socket;
+import java.nio.file.Files;
+import java.security.KeyStore;
+import java.security.cert.CertificateException;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509Certificate;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLException;
+import javax.net.ssl.SSLServerSocket;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.TrustManagerFactory;
+import javax.net.ssl.X509TrustManager;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.http.auth.AuthScope;
+import org.commonjava.util.http.ssl.SSLUtils;
+import org.commonjava.util.http.ssl.TestCertificates;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ReloadableTrustManagerTest
+{
+
+    private File dir;
+
+    @Before
+    public void setUp()
+        throws Exception
+    {
+        dir = Files.createTempDirectory( "trust" )
+                   .toFile();
+    }
+
+    @After
+    public void tearDown()
+        throws Exception
+    {
+        FileUtils.deleteDirectory( dir );
+    }
+
+    @Test
+    public void swapReplacesTrustAndBumpsVersion()
+        throws Exception
+    {
+        final X509Certificate[] chain = { serverCertificate() };
+        final ReloadableTrustManager tm = new ReloadableTrustManager( ReloadableTrustManager.NO_TRUST );
+        try
+        {
+            tm.checkServerTrusted( chain, "RSA" );
+            fail( "Nothing is trusted before the swap." );
+        }
+        catch ( final CertificateException e )
+        {
+            // expected
+        }
+
+        tm.swap( trustManager( "ca.pem" ) );
+
+        tm.checkServerTrusted( chain, "RSA" );
+        assertEquals( 1, tm.getVersion() );
+        assertEquals( 1, tm.getAcceptedIssuers().length );
+    }
+
+    /**
+     * Contexts are built once and kept, so a swap has to reach handshakes on a context that already exists.
+     */
+    @Test
+    public void liveContextSeesSwap()
+        throws Exception
+    {
+        final ReloadableTrustManager tm = new ReloadableTrustManager( ReloadableTrustManager.NO_TRUST );
+        final SSLContext ctx = SSLContext.getInstance( "TLS" );
+        ctx.init( null, new TrustManager[] { tm }, null );
+
+        final SSLServerSocket server = TestCertificates.startServer();
+        try
+        {
+            try
+            {
+                handshake( ctx, server );
+                fail( "Nothing is trusted before the swap." );
+            }
+            catch ( final SSLException e )
+            {
+                // expected
+            }
+
+            tm.swap( trustManager( "ca.pem" ) );
+            handshake( ctx, server );
+        }
+        finally
+        {
+            server.close();
+        }
+    }
+
+    @Test
+    public void pathTrustHasOnlyLoadedCertificatesAndFollowsReloads()
+        throws Exception
+    {
+        final File server = new File( dir, "server" );
+        FileUtils.write( new File( server, "ca.pem" ), TestCertificates.pem( "ca.pem" ), "UTF-8" );
+
+        final PathSSLResourceLoader loader = new PathSSLResourceLoader( dir.getPath() );
+        final TrustConfig config = loader.getTrustConfig();
+        final X509TrustManager pathTm = config.getPathTrustManager();
+
+        assertEquals( 1, pathTm.getAcceptedIssuers().length );
+        assertTrue( config.getTrustManager()
+                          .getAcceptedIssuers().length > 1 );
+
+        FileUtils.write( new File( server, "server-cert.pem" ), TestCertificates.pem( "server-cert.pem" ), "UTF-8" );
+        loader.reloadTrustFiles( null );
+
+        assertEquals( 2, pathTm.getAcceptedIssuers().length );
+    }
+
+    private static void handshake( final SSLContext ctx, final SSLServerSocket server )
+        throws Exception
+    {
+        final Socket socket = ctx.getSocketFactory()
+                                 .createSocket( "localhost", server.getLocalPort() );
+        try
+        {
+            assertEquals( 1, socket.getInputStream()
+                                   .read() );
+        }
+        finally
+        {
+            socket.close();
+        }
+    }
+
+    private static X509TrustManager trustManager( final String pem )
+        throws Exception
+    {
+        final KeyStore ks = SSLUtils.newKeyStore();
+        SSLUtils.readCerts( new AuthScope( "localhost", AuthScope.ANY_PORT ), TestCertificates.pem( pem ), ks );
+
+        final TrustManagerFactory tmf = TrustManagerFactory.getInstance( TrustManagerFactory.getDefaultAlgorithm() );
+        tmf.init( ks );
+
+        return (X509TrustManager) tmf.getTrustManagers()[0];
+    }
+
+    private static X509Certificate serverCertificate()
+        throws Exception
+    {
+        final byte[] pem = TestCertificates.pem( "server-cert.pem" )
+                                           .getBytes( "UTF-8" );
+
+        return (X509Certificate) CertificateFactory.getInstance( "X.509" )
+                                                   .generateCertificate( new ByteArrayInputStream( pem ) );
+    }
+
+}
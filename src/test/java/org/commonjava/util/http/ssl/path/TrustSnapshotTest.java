@@ -0,0 +1,197 @@
+package org.commonjava.util.http.ssl.path;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.security.KeyStore;
+import java.security.cert.X509Certificate;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.http.auth.AuthScope;
+import org.commonjava.util.http.HTTPException;
+import org.commonjava.util.http.ssl.SSLUtils;
+import org.commonjava.util.http.ssl.TestCertificates;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TrustSnapshotTest
+{
+
+    private static final AuthScope SCOPE = new AuthScope( "localhost", AuthScope.ANY_PORT );
+
+    private File dir;
+
+    private File target;
+
+    private SortedMap<String, KeyStore> fileStores;
+
+    @Before
+    public void setUp()
+        throws Exception
+    {
+        dir = Files.createTempDirectory( "snapshot" )
+                   .toFile();
+        target = new File( dir, TrustSnapshot.FILE_NAME );
+
+        fileStores = new TreeMap<String, KeyStore>();
+        fileStores.put( "ca.pem", store( "ca.pem" ) );
+        fileStores.put( "server-cert.pem", store( "server-cert.pem" ) );
+    }
+
+    @After
+    public void tearDown()
+        throws Exception
+    {
+        FileUtils.deleteDirectory( dir );
+    }
+
+    @Test
+    public void readReturnsWhatWasWritten()
+        throws Exception
+    {
+        TrustSnapshot.write( target, "fingerprint", fileStores );
+        final TrustSnapshot snapshot = TrustSnapshot.read( target );
+
+        assertEquals( "fingerprint", snapshot.getSourceFingerprint() );
+        assertEquals( Arrays.asList( "ca.pem", "server-cert.pem" ), snapshot.getFileNames() );
+
+        final SortedMap<String, KeyStore> read = snapshot.toFileStores();
+        assertEquals( fileStores.keySet(), read.keySet() );
+        for ( final String name : fileStores.keySet() )
+        {
+            final KeyStore expected = fileStores.get( name );
+            final KeyStore actual = read.get( name );
+            assertEquals( new HashSet<String>( Collections.list( expected.aliases() ) ),
+                          new HashSet<String>( Collections.list( actual.aliases() ) ) );
+            for ( final String alias : Collections.list( expected.aliases() ) )
+            {
+                assertEquals( expected.getCertificate( alias ), actual.getCertificate( alias ) );
+            }
+        }
+
+        final String alias = SSLUtils.getAlias( SCOPE, false );
+        final X509Certificate server = (X509Certificate) fileStores.get( "server-cert.pem" )
+                                                                   .getCertificate( alias );
+        final List<X509Certificate> bySubject = snapshot.getCertificates( server.getSubjectX500Principal() );
+        assertFalse( bySubject.isEmpty() );
+        for ( final X509Certificate cert : bySubject )
+        {
+            assertEquals( server, cert );
+        }
+    }
+
+    /**
+     * Certificates are copied out at read time; decoding from a mapping of a file that was since truncated would
+     * fault.
+     */
+    @Test
+    public void certificatesSurviveReplacingTheFile()
+        throws Exception
+    {
+        TrustSnapshot.write( target, "fingerprint", fileStores );
+        final TrustSnapshot snapshot = TrustSnapshot.read( target );
+
+        new FileOutputStream( target ).close();
+
+        assertEquals( 2, snapshot.toFileStores()
+                                 .size() );
+    }
+
+    @Test
+    public void corruptedSnapshotIsRejected()
+        throws Exception
+    {
+        TrustSnapshot.write( target, "fingerprint", fileStores );
+
+        final RandomAccessFile raf = new RandomAccessFile( target, "rw" );
+        try
+        {
+            raf.seek( raf.length() / 2 );
+            final int b = raf.read();
+            raf.seek( raf.length() / 2 );
+            raf.write( b ^ 0xff );
+        }
+        finally
+        {
+            raf.close();
+        }
+
+        assertRejected();
+    }
+
+    @Test
+    public void truncatedSnapshotIsRejected()
+        throws Exception
+    {
+        TrustSnapshot.write( target, "fingerprint", fileStores );
+
+        final RandomAccessFile raf = new RandomAccessFile( target, "rw" );
+        try
+        {
+            raf.setLength( raf.length() / 2 );
+        }
+        finally
+        {
+            raf.close();
+        }
+
+        assertRejected();
+    }
+
+    @Test
+    public void otherFilesAreRejected()
+        throws Exception
+    {
+        FileUtils.write( target, TestCertificates.pem( "ca.pem" ), "UTF-8" );
+
+        assertRejected();
+    }
+
+    @Test
+    public void fingerprintTracksFileContents()
+        throws Exception
+    {
+        final File pem = new File( dir, "ca.pem" );
+        FileUtils.write( pem, TestCertificates.pem( "ca.pem" ), "UTF-8" );
+        final String before = TrustSnapshot.fingerprint( Collections.singletonList( pem ) );
+
+        FileUtils.write( pem, TestCertificates.pem( "server-cert.pem" ), "UTF-8" );
+
+        assertFalse( before.equals( TrustSnapshot.fingerprint( Collections.singletonList( pem ) ) ) );
+    }
+
+    private void assertRejected()
+    {
+        try
+        {
+            TrustSnapshot.read( target );
+            fail( "Damaged snapshot should be rejected." );
+        }
+        catch ( final HTTPException e )
+        {
+            // expected
+        }
+    }
+
+    private static KeyStore store( final String pem )
+        throws Exception
+    {
+        final KeyStore ks = SSLUtils.newKeyStore();
+        SSLUtils.readCerts( SCOPE, TestCertificates.pem( pem ), ks );
+
+        return ks;
+    }
+
+}
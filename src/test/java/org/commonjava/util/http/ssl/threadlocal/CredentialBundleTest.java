@@ -0,0 +1,135 @@
+package org.commonjava.util.http.ssl.threadlocal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.net.Socket;
+import java.security.KeyStore;
+import java.util.Collections;
+import java.util.Map;
+
+import javax.net.ssl.SSLServerSocket;
+
+import org.apache.http.auth.AuthScope;
+import org.commonjava.util.http.ssl.AliasCodec;
+import org.commonjava.util.http.ssl.TestCertificates;
+import org.junit.Test;
+
+public class CredentialBundleTest
+{
+
+    private final AuthScope scope = new AuthScope( "localhost", 8443 );
+
+    @Test
+    public void keyStoreGetterReturnsIndependentCopies()
+        throws Exception
+    {
+        final CredentialBundle bundle = CredentialBundle.build( keycerts() );
+        final String alias = AliasCodec.encode( scope, true );
+
+        final KeyStore copy = bundle.getKeyStore();
+        assertNotSame( bundle.keyStore(), copy );
+        assertNotNull( copy.getKey( alias, TestCertificates.KEY_PASSWORD.toCharArray() ) );
+
+        copy.deleteEntry( alias );
+
+        assertTrue( bundle.keyStore()
+                          .containsAlias( alias ) );
+        assertTrue( bundle.getKeyStore()
+                          .containsAlias( alias ) );
+    }
+
+    /**
+     * Peer hosts keep the case they were typed with, while keystores lowercase their aliases.
+     */
+    @Test
+    public void indexLookupsIgnoreHostCase()
+        throws Exception
+    {
+        final CredentialIndex index = CredentialBundle.build( keycerts() )
+                                                      .getIndex();
+        final String alias = AliasCodec.encode( "LocalHost", scope.getPort(), true );
+
+        assertTrue( index.containsKeyStoreAlias( alias ) );
+        assertNotNull( index.getPrivateKey( alias ) );
+        assertNotNull( index.getCertificateChain( alias ) );
+        assertTrue( index.containsKeyStoreAlias( "client::LOCALHOST:8443" ) );
+        assertNotNull( index.getPrivateKey( "client::LOCALHOST:8443" ) );
+    }
+
+    @Test
+    public void trustStoreGetterReturnsIndependentCopies()
+        throws Exception
+    {
+        final CredentialBundle bundle = CredentialBundle.build( keycerts() );
+        final int size = bundle.trustStore()
+                               .size();
+
+        final KeyStore copy = bundle.getTrustStore();
+        assertEquals( size, copy.size() );
+
+        copy.setCertificateEntry( "extra", bundle.getIndex()
+                                                 .getAcceptedIssuers()[0] );
+
+        assertEquals( size, bundle.trustStore()
+                                  .size() );
+        assertFalse( bundle.getTrustStore()
+                           .containsAlias( "extra" ) );
+    }
+
+    @Test
+    public void missingStoresStayNull()
+        throws Exception
+    {
+        final SSLKeyCert trust = new SSLKeyCert( TestCertificates.pem( "ca.pem" ) );
+        final CredentialBundle bundle = CredentialBundle.build( Collections.singletonMap( scope, trust ) );
+
+        assertNull( bundle.getKeyStore() );
+        assertNotNull( bundle.getTrustStore() );
+    }
+
+    @Test
+    public void sslContextTrustsBundleCertificates()
+        throws Exception
+    {
+        final SSLServerSocket server = TestCertificates.startServer();
+        try
+        {
+            final AuthScope serverScope = new AuthScope( "localhost", server.getLocalPort() );
+            final SSLKeyCert kc = new SSLKeyCert( TestCertificates.pem( "client-keycert.pem" ),
+                                                  TestCertificates.KEY_PASSWORD,
+                                                  TestCertificates.pem( "server-cert.pem" ) );
+            final CredentialBundle bundle = CredentialBundle.build( Collections.singletonMap( serverScope, kc ) );
+
+            final Socket socket = bundle.newSSLContext( serverScope )
+                                        .getSocketFactory()
+                                        .createSocket( "localhost", server.getLocalPort() );
+            try
+            {
+                assertEquals( 1, socket.getInputStream()
+                                       .read() );
+            }
+            finally
+            {
+                socket.close();
+            }
+        }
+        finally
+        {
+            server.close();
+        }
+    }
+
+    private Map<AuthScope, SSLKeyCert> keycerts()
+        throws Exception
+    {
+        return Collections.singletonMap( scope, new SSLKeyCert( TestCertificates.pem( "client-keycert.pem" ),
+                                                                TestCertificates.KEY_PASSWORD,
+                                                                TestCertificates.pem( "server-cert.pem" ) ) );
+    }
+
+}
@@ -0,0 +1,68 @@
+package org.commonjava.util.http.ssl.threadlocal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.http.auth.AuthScope;
+import org.apache.http.auth.Credentials;
+import org.apache.http.auth.UsernamePasswordCredentials;
+import org.junit.Test;
+
+public class CredentialContextTest
+{
+
+    private final AuthScope scope = new AuthScope( "repo.example.com", 443 );
+
+    private final AuthScope other = new AuthScope( "other.example.com", 443 );
+
+    @Test
+    public void callerChangesDoNotReachTheContext()
+    {
+        final Map<AuthScope, Credentials> creds = new HashMap<AuthScope, Credentials>();
+        creds.put( scope, new UsernamePasswordCredentials( "user", "secret" ) );
+
+        final CredentialContext ctx = CredentialContext.of( creds, null );
+
+        creds.put( other, new UsernamePasswordCredentials( "intruder", "secret" ) );
+        creds.remove( scope );
+
+        assertEquals( "user", ctx.getCredentials( scope )
+                                 .getUserPrincipal()
+                                 .getName() );
+        assertNull( ctx.getCredentials( other ) );
+        assertEquals( 1, ctx.getCredentials()
+                            .size() );
+    }
+
+    @Test
+    public void credentialsAreReadOnly()
+    {
+        final Map<AuthScope, Credentials> creds = new HashMap<AuthScope, Credentials>();
+        creds.put( scope, new UsernamePasswordCredentials( "user", "secret" ) );
+
+        try
+        {
+            CredentialContext.of( creds, null )
+                             .getCredentials()
+                             .clear();
+            fail( "Context credentials should be unmodifiable." );
+        }
+        catch ( final UnsupportedOperationException e )
+        {
+            // expected
+        }
+    }
+
+    @Test
+    public void emptyContexts()
+    {
+        assertSame( CredentialContext.EMPTY, CredentialContext.of( null, null ) );
+        assertSame( CredentialContext.EMPTY, CredentialContext.EMPTY.withBundle( null ) );
+    }
+
+}
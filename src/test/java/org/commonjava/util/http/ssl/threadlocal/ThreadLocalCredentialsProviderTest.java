@@ -0,0 +1,209 @@
+package org.commonjava.util.http.ssl.threadlocal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.auth.AuthScope;
+import org.apache.http.auth.Credentials;
+import org.apache.http.auth.UsernamePasswordCredentials;
+import org.commonjava.util.http.ssl.TestCertificates;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ThreadLocalCredentialsProviderTest
+{
+
+    private static final int THREADS = 16;
+
+    private static final int ITERATIONS = 2000;
+
+    private final AuthScope scope = new AuthScope( "repo.example.com", 443 );
+
+    private ThreadLocalCredentialsProvider provider;
+
+    private ExecutorService executor;
+
+    @Before
+    public void setUp()
+    {
+        provider = new ThreadLocalCredentialsProvider();
+        executor = Executors.newFixedThreadPool( THREADS );
+    }
+
+    @After
+    public void tearDown()
+    {
+        executor.shutdownNow();
+        provider.clear();
+    }
+
+    /**
+     * Many threads bind their own credentials and bundle on one shared provider, nest a second binding inside the
+     * first, and check after every step that they only ever see their own.
+     */
+    @Test( timeout = 60000 )
+    public void concurrentBindingsStayIsolated()
+        throws Exception
+    {
+        final CredentialBundle serverTrust = provider.getCredentialBundle( trust( "server-cert.pem" ) );
+        final CredentialBundle caTrust = provider.getCredentialBundle( trust( "ca.pem" ) );
+
+        final CountDownLatch start = new CountDownLatch( 1 );
+        final List<Future<Integer>> results = new ArrayList<Future<Integer>>();
+        for ( int t = 0; t < THREADS; t++ )
+        {
+            final String user = "user" + t;
+            final CredentialBundle bundle = t % 2 == 0 ? serverTrust : caTrust;
+            final CredentialBundle other = t % 2 == 0 ? caTrust : serverTrust;
+
+            results.add( executor.submit( new Callable<Integer>()
+            {
+                @Override
+                public Integer call()
+                    throws Exception
+                {
+                    start.await();
+
+                    final CredentialContext mine = CredentialContext.of( credentials( user ), bundle );
+                    final CredentialContext nested = CredentialContext.of( credentials( user + "-nested" ), other );
+
+                    int checks = 0;
+                    for ( int i = 0; i < ITERATIONS; i++ )
+                    {
+                        checks += provider.callWith( mine, new CredentialContext.Action<Integer, Exception>()
+                        {
+                            @Override
+                            public Integer call()
+                                throws Exception
+                            {
+                                assertBound( user, bundle );
+
+                                provider.runWith( nested, new Runnable()
+                                {
+                                    @Override
+                                    public void run()
+                                    {
+                                        assertBound( user + "-nested", other );
+                                        Thread.yield();
+                                    }
+                                } );
+
+                                assertBound( user, bundle );
+                                return 1;
+                            }
+                        } );
+
+                        assertTrue( provider.getContext()
+                                            .isEmpty() );
+                        assertNull( provider.getCredentials( scope ) );
+                    }
+
+                    return checks;
+                }
+            } ) );
+        }
+
+        start.countDown();
+        for ( final Future<Integer> result : results )
+        {
+            assertEquals( Integer.valueOf( ITERATIONS ), result.get( 60, TimeUnit.SECONDS ) );
+        }
+    }
+
+    @Test( timeout = 60000 )
+    public void concurrentBundleRequestsParseOnce()
+        throws Exception
+    {
+        final Map<AuthScope, SSLKeyCert> keycerts = trust( "server-cert.pem" );
+
+        final CountDownLatch start = new CountDownLatch( 1 );
+        final List<Future<CredentialBundle>> results = new ArrayList<Future<CredentialBundle>>();
+        for ( int t = 0; t < THREADS; t++ )
+        {
+            results.add( executor.submit( new Callable<CredentialBundle>()
+            {
+                @Override
+                public CredentialBundle call()
+                    throws Exception
+                {
+                    start.await();
+                    return provider.getCredentialBundle( keycerts );
+                }
+            } ) );
+        }
+
+        start.countDown();
+        final CredentialBundle first = results.get( 0 )
+                                              .get( 60, TimeUnit.SECONDS );
+        assertNotNull( first );
+        for ( final Future<CredentialBundle> result : results )
+        {
+            assertSame( first, result.get( 60, TimeUnit.SECONDS ) );
+        }
+
+        assertEquals( 1, provider.getBundleCache()
+                                 .getMisses() );
+    }
+
+    @Test
+    public void callWithRestoresPreviousBindingOnFailure()
+    {
+        provider.bind( scope, new UsernamePasswordCredentials( "outer", "secret" ) );
+        try
+        {
+            provider.runWith( CredentialContext.of( credentials( "inner" ), null ), new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    throw new IllegalStateException( "boom" );
+                }
+            } );
+        }
+        catch ( final IllegalStateException e )
+        {
+            // expected
+        }
+
+        assertEquals( "outer", provider.getCredentials( scope )
+                                       .getUserPrincipal()
+                                       .getName() );
+    }
+
+    private void assertBound( final String user, final CredentialBundle bundle )
+    {
+        assertEquals( user, provider.getCredentials( scope )
+                                    .getUserPrincipal()
+                                    .getName() );
+        assertSame( bundle, provider.getCredentialBundle() );
+        assertEquals( bundle.getStoreFingerprint(), provider.getStoreFingerprint() );
+    }
+
+    private Map<AuthScope, Credentials> credentials( final String user )
+    {
+        return Collections.<AuthScope, Credentials> singletonMap( scope,
+                                                                  new UsernamePasswordCredentials( user, "secret" ) );
+    }
+
+    private Map<AuthScope, SSLKeyCert> trust( final String pem )
+        throws Exception
+    {
+        return Collections.singletonMap( scope, new SSLKeyCert( TestCertificates.pem( pem ) ) );
+    }
+
+}
@@ -0,0 +1,105 @@
+package org.commonjava.util.http.ssl.threadlocal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.Collections;
+
+import javax.net.ssl.SSLException;
+import javax.net.ssl.SSLServerSocket;
+
+import org.apache.http.auth.AuthScope;
+import org.apache.http.conn.ssl.SSLSocketFactory;
+import org.apache.http.params.BasicHttpParams;
+import org.apache.http.params.HttpParams;
+import org.commonjava.util.http.client.HTTPClient;
+import org.commonjava.util.http.ssl.TestCertificates;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ThreadLocalSSLSocketFactoryTest
+{
+
+    private SSLServerSocket server;
+
+    private ThreadLocalCredentialsProvider credProvider;
+
+    private ThreadLocalSSLSocketFactory factory;
+
+    @Before
+    public void setUp()
+        throws Exception
+    {
+        server = TestCertificates.startServer();
+        credProvider = new ThreadLocalCredentialsProvider();
+        factory =
+            new ThreadLocalSSLSocketFactory( credProvider, SSLSocketFactory.BROWSER_COMPATIBLE_HOSTNAME_VERIFIER );
+    }
+
+    @After
+    public void tearDown()
+        throws IOException
+    {
+        credProvider.clear();
+        server.close();
+    }
+
+    /**
+     * HttpClient 4.3+ creates a plain socket and layers TLS in connectSocket, so that is where the bound trust has to
+     * be applied.
+     */
+    @Test
+    public void connectSocketUsesBoundTrust()
+        throws Exception
+    {
+        final AuthScope scope = new AuthScope( "localhost", server.getLocalPort() );
+        final SSLKeyCert trust = new SSLKeyCert( TestCertificates.pem( "server-cert.pem" ) );
+        credProvider.bindKeyCerts( Collections.singletonMap( scope, trust ) );
+
+        final Socket socket = connect( scope );
+        try
+        {
+            assertEquals( 1, socket.getInputStream()
+                                   .read() );
+        }
+        finally
+        {
+            socket.close();
+        }
+
+        connect( scope ).close();
+        assertEquals( 1, factory.getFactoryCache()
+                                .getMisses() );
+    }
+
+    @Test
+    public void connectSocketWithoutBoundTrustUsesDefaultContext()
+        throws Exception
+    {
+        final AuthScope scope = new AuthScope( "localhost", server.getLocalPort() );
+        try
+        {
+            connect( scope ).close();
+            fail( "The test server's certificate is not in the default trust store." );
+        }
+        catch ( final SSLException e )
+        {
+            // expected
+        }
+    }
+
+    private Socket connect( final AuthScope scope )
+        throws IOException
+    {
+        final HttpParams params = new BasicHttpParams();
+        params.setParameter( HTTPClient.AUTH_SCOPE_PARAM, scope );
+
+        final Socket socket = factory.createSocket( params );
+        return factory.connectSocket( socket, new InetSocketAddress( scope.getHost(), scope.getPort() ), null, params );
+    }
+
+}